@@ -0,0 +1,22 @@
+package com.github.fippls.dupfinder;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks, or the ones matching the regular expression given as argument, with the GC profiler so that
+ * allocation rates are reported next to the timings.
+ * @author github.com/fippls
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "com\\.github\\.fippls\\.dupfinder\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+import com.github.fippls.dupfinder.hash.Hasher;
+import com.github.fippls.dupfinder.util.HashUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finishing a hash with {@link Hasher#finish()}, and formatting it for output.
+ * The same hasher is reset and fed before each call, the way pooled hashers are reused between files.
+ * @author github.com/fippls
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigestBenchmark {
+    private final byte[] data = new byte[4096];
+    private final Hasher hasher = HashAlgorithms.MD5.newHasher();
+    private long high;
+    private long low;
+
+    @Setup(Level.Invocation)
+    public void prepareHasher() {
+        hasher.reset();
+        hasher.update(data, 0, data.length);
+        high = System.nanoTime();
+        low = ~high;
+    }
+
+    @Benchmark
+    public long digest() {
+        hasher.finish();
+        return hasher.low();
+    }
+
+    @Benchmark
+    public String toHexString() {
+        return HashUtil.toHexString(high, low);
+    }
+}
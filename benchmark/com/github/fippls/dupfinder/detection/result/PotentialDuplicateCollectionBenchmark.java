@@ -0,0 +1,81 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grouping files by size with {@link PotentialDuplicateCollection#add(FileInfo)} and removing unique sizes with
+ * {@link PotentialDuplicateCollection#resolve(boolean)}, the first step of every scan.
+ * File sizes are drawn from a log-uniform distribution like on a typical disk, so most small sizes are shared and most
+ * large sizes are unique. The largest runs need a large heap, see the fork settings.
+ * @author github.com/fippls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx24g", "-Xms24g" })
+public class PotentialDuplicateCollectionBenchmark {
+    private static final int NUM_PATHS = 1024;
+
+    @Param({ "1000000", "10000000", "50000000" })
+    private int numFiles;
+
+    private FileInfo[] files;
+
+    @Setup(Level.Trial)
+    public void createFiles() {
+        var random = new Random(1);
+        // Paths don't affect grouping, so a few shared instances keep the heap for the files themselves:
+        var paths = new Path[NUM_PATHS];
+
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = Paths.get("/data/directory" + i / 32, "file" + i);
+        }
+
+        files = new FileInfo[numFiles];
+
+        for (int i = 0; i < numFiles; i++) {
+            long size = (long) Math.pow(2, 10 + random.nextDouble() * 24);
+            files[i] = new FileInfo(paths[i % NUM_PATHS], size, 0, null);
+        }
+    }
+
+    @Benchmark
+    public long addAndResolve() {
+        var collection = new PotentialDuplicateCollection("Benchmark");
+
+        for (FileInfo fileInfo : files) {
+            collection.add(fileInfo);
+        }
+
+        return collection.resolve(false).numTotalFiles();
+    }
+
+    @Benchmark
+    public long addOnly() {
+        var collection = new PotentialDuplicateCollection("Benchmark");
+
+        for (FileInfo fileInfo : files) {
+            collection.add(fileInfo);
+        }
+
+        return collection.checkSums().size();
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and hashes one file with {@link MD5SumFileReader#hash()}, for each read engine and buffer size.
+ * The file is in the page cache after the first read, so this measures the cost of reading and hashing rather than the
+ * disk. Use it to choose {@link Settings#readBufferSize} and {@link Settings#numBytesForShortMD5Check}.
+ * @author github.com/fippls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileReadBenchmark {
+    @Param({ "4096", "65536", "262144", "1048576" })
+    private int bufferSize;
+
+    @Param({ "STREAM", "CHANNEL", "MAPPED" })
+    private ReadEngine readEngine;
+
+    @Param({ "1048576", "67108864" })
+    private long fileSize;
+
+    private Path file;
+    private FileInfo fileInfo;
+    private HashStage headStage;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = Files.createTempFile("dupfinder-benchmark-", ".bin");
+        var data = new byte[1024 * 1024];
+        new Random(1).nextBytes(data);
+
+        try (var out = Files.newOutputStream(file)) {
+            for (long written = 0; written < fileSize; written += data.length) {
+                out.write(data, 0, (int) Math.min(data.length, fileSize - written));
+            }
+        }
+
+        Settings.readBufferSize = bufferSize;
+        Settings.readEngine = readEngine;
+        // Mapped reads for every full read, otherwise the small file would use the channel engine:
+        Settings.minFileSizeForMappedReads = 0;
+
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        fileInfo = new FileInfo(file, attributes);
+        headStage = HashStage.head(Settings.numBytesForShortMD5Check);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long fullMd5() {
+        new MD5SumFileReader(fileInfo, HashStage.full(), HashAlgorithms.MD5).hash();
+        return fileInfo.hashLow();
+    }
+
+    @Benchmark
+    public long headMd5() {
+        new MD5SumFileReader(fileInfo, headStage, HashAlgorithms.MD5).hash();
+        return fileInfo.hashLow();
+    }
+
+    @Benchmark
+    public long fullXxHash64() {
+        new MD5SumFileReader(fileInfo, HashStage.full(), HashAlgorithms.XXH64).hash();
+        return fileInfo.hashLow();
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.data.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Walks a generated directory tree with {@link FileVisitorProcessor}, sequentially and with
+ * {@link ParallelDirectoryWalker}. The tree is in the dentry cache after the first walk, so this measures the walker
+ * itself rather than the disk.
+ * @author github.com/fippls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileVisitorProcessorBenchmark {
+    @Param({ "100" })
+    private int numDirectories;
+
+    @Param({ "100" })
+    private int filesPerDirectory;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        Settings.showProgressUpdates = false;
+        Settings.minFileSize = 0;
+        root = Files.createTempDirectory("dupfinder-benchmark-");
+
+        for (int directory = 0; directory < numDirectories; directory++) {
+            var path = Files.createDirectories(root.resolve("level" + directory % 10).resolve("directory" + directory));
+
+            for (int file = 0; file < filesPerDirectory; file++) {
+                // Varying sizes, so that the files are spread over many size groups:
+                Files.write(path.resolve("file" + file), new byte[(directory * filesPerDirectory + file) % 4096]);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long sequential(Blackhole blackhole) throws IOException {
+        var processor = new FileVisitorProcessor(blackhole::consume, directory -> {});
+        Files.walkFileTree(root, processor);
+        return processor.getNumFilesAdded();
+    }
+
+    @Benchmark
+    public long parallel(Blackhole blackhole) {
+        var processor = new FileVisitorProcessor(blackhole::consume, directory -> {});
+        new ParallelDirectoryWalker(4, processor).walk(List.of(root));
+        return processor.getNumFilesAdded();
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.fippls.dupfinder.thread.task;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.ReadEngine;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The partial stage on many small files, one file per operation, the way {@link SimpleHashCallable} is called for
+ * millions of files. Run it with the GC profiler (as {@code BenchmarkRunner} does): {@code gc.alloc.rate.norm} is the
+ * number of bytes allocated per file. With pooled read buffers and hashers that is only the file info, the task and
+ * what opening the file takes, a few hundred bytes, instead of a new read buffer and message digest for every file.
+ * @author github.com/fippls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SimpleHashCallableBenchmark {
+    @Param({ "STREAM", "CHANNEL" })
+    private ReadEngine readEngine;
+
+    @Param({ "MD5", "XXH64" })
+    private String algorithm;
+
+    @Param({ "1000" })
+    private int numFiles;
+
+    @Param({ "16384" })
+    private int fileSize;
+
+    private Path directory;
+    private Path[] files;
+    private BasicFileAttributes[] attributes;
+    private HashStage headStage;
+
+    /**
+     * Each benchmark thread walks through the files on its own.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+    }
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        directory = Files.createTempDirectory("dupfinder-benchmark-");
+        files = new Path[numFiles];
+        attributes = new BasicFileAttributes[numFiles];
+        var random = new Random(1);
+        var data = new byte[fileSize];
+
+        for (int i = 0; i < numFiles; i++) {
+            random.nextBytes(data);
+            files[i] = Files.write(directory.resolve("file" + i), data);
+            attributes[i] = Files.readAttributes(files[i], BasicFileAttributes.class);
+        }
+
+        Settings.readEngine = readEngine;
+        Settings.partialHashAlgorithm = HashAlgorithms.of(algorithm);
+        headStage = HashStage.head(Settings.numBytesForShortMD5Check);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long hashNextFile(Cursor cursor) {
+        int index = cursor.next;
+        cursor.next = (index + 1) % numFiles;
+
+        // A new file info each time, a file that is already completely hashed would be skipped:
+        var fileInfo = new FileInfo(files[index], attributes[index]);
+        return new SimpleHashCallable(fileInfo, headStage).call().hashLow();
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.fippls.dupfinder.util;
+
+import com.github.fippls.dupfinder.data.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directory exclusion with {@link StringUtil#containsAny(Path, java.util.List)}, which runs for every directory walked.
+ * @author github.com/fippls
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilBenchmark {
+    private Path shallowPath;
+    private Path deepPath;
+    private Path excludedPath;
+
+    @Setup
+    public void createPaths() {
+        shallowPath = Paths.get("/home/user/Documents");
+        deepPath = Paths.get("/mnt/archive/projects/2019/customer/reports/quarterly/drafts/old/images");
+        excludedPath = Paths.get("/mnt/archive/System Volume Information/tracking");
+    }
+
+    @Benchmark
+    public boolean shallowNoMatch() {
+        return StringUtil.containsAny(shallowPath, Settings.directoriesToExclude);
+    }
+
+    @Benchmark
+    public boolean deepNoMatch() {
+        return StringUtil.containsAny(deepPath, Settings.directoriesToExclude);
+    }
+
+    @Benchmark
+    public boolean match() {
+        return StringUtil.containsAny(excludedPath, Settings.directoriesToExclude);
+    }
+}
@@ -1,17 +1,42 @@
 package com.github.fippls.dupfinder;
 
+import com.github.fippls.dupfinder.data.FullCheckMode;
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.ReadType;
+import com.github.fippls.dupfinder.data.ReportFormat;
 import com.github.fippls.dupfinder.data.Settings;
-import com.github.fippls.dupfinder.detection.FullHashChecker;
-import com.github.fippls.dupfinder.detection.SimpleHashChecker;
-import com.github.fippls.dupfinder.detection.output.FileSizeBasedDuplicationPrinter;
+import com.github.fippls.dupfinder.detection.ChunkAnalyzer;
+import com.github.fippls.dupfinder.detection.DuplicateFinderDaemon;
+import com.github.fippls.dupfinder.detection.HashStageRunner;
+import com.github.fippls.dupfinder.detection.PipelinedDuplicateFinder;
+import com.github.fippls.dupfinder.detection.output.DuplicationPrinters;
+import com.github.fippls.dupfinder.detection.output.StreamingDuplicationPrinter;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.distributed.Coordinator;
+import com.github.fippls.dupfinder.distributed.Worker;
+import com.github.fippls.dupfinder.file.HashCache;
 import com.github.fippls.dupfinder.file.PathWalker;
+import com.github.fippls.dupfinder.file.ReadEngine;
+import com.github.fippls.dupfinder.file.ScanJournal;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+import com.github.fippls.dupfinder.index.IndexExporter;
+import com.github.fippls.dupfinder.index.IndexMerger;
+import com.github.fippls.dupfinder.index.IndexUpdater;
+import com.github.fippls.dupfinder.metrics.MetricsExporter;
+import com.github.fippls.dupfinder.thread.IoScheduler;
 import com.github.fippls.dupfinder.thread.ThreadPool;
+import com.github.fippls.dupfinder.util.CommandLineParser;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
 import com.github.fippls.dupfinder.util.Log;
 import com.github.fippls.dupfinder.util.PathUtil;
 import com.github.fippls.dupfinder.util.PerformanceTimer;
 import com.github.fippls.dupfinder.util.StringUtil;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -33,50 +58,403 @@ import java.util.stream.Collectors;
  *   1.05 - Support different number of max file operations depending on large or small files
  *          For spinning disks, large performance gains to increase number of files when scanning small files,
  *          and decreasing number of files when scanning large files
+ *   1.06 - Persistent hash cache (--hash-cache FILE) so that repeated scans skip unchanged files
+ *          Selectable hash algorithms for the partial and full checks (--partial-hash, --full-hash)
+ *          FileChannel and memory-mapped read engines (--read-engine)
+ *          Configurable hash stages, such as head, tail and sampled parts of files before the full check (--stages)
+ *          Byte by byte lockstep comparison as alternative to the full hash check (--full-check COMPARE)
+ *          Parallel directory traversal (--walker-threads N)
+ *          Pipelined mode that hashes files while the directory trees are still being walked (--pipelined)
+ *          Hash tasks are created as earlier ones finish instead of all up front, results are collected as they finish
+ *          Separate read queues and limits for each device, so a slow device doesn't hold back the others (--device-reads)
+ *          Read limits can be tuned automatically during the run from measured throughput (--adaptive-reads)
+ *          Hard links and files reached through overlapping paths are read once and listed as links, not duplicates
+ *          No extra file system calls per file during the walk, file system operations are counted and logged
+ *          Compact file table for scans of millions of files (--compact)
+ *          Size grouping within a memory budget, spilling sorted runs to disk (--memory-budget, --spill-dir)
+ *          File reads on virtual threads on Java 21 or later (--virtual-threads)
+ *          Journal of the scan so that an interrupted scan can be resumed (--journal FILE, --resume)
+ *          Daemon mode that keeps the duplicates up to date as files change (--daemon, --reconcile-interval)
+ *          Metrics of every stage for Prometheus and as a JSON summary (--metrics-file, --metrics-port, --metrics-json)
+ *          Duplicates streamed to a JSON Lines, CSV or binary report as they are confirmed (--report, --report-format)
+ *          Only the groups that free the most space are displayed with --top N, kept in a bounded heap
+ *          Content-defined chunking analysis of how much data files share (--chunk-analysis, --chunk-size)
+ *          Distributed hashing by worker processes on other hosts (--coordinator PORT, --worker HOST:PORT)
+ *          Index of each host that can be merged offline to find duplicates across hosts (--export-index, --merge-index)
+ *          Read buffers and hashers are pooled, hashing a file allocates next to nothing
  *
  * @author github.com/fippls
  */
 public class DupFinder {
-    private static final String VERSION = "1.05";
+    private static final String VERSION = "1.06";
 
     public static void main(String[] args) {
-        System.out.println(version() + " (using " + Settings.threadPoolSize + " threads)");
-        System.out.println("   Maximum simultaneous file reads" +
+        var commandLineParser = createCommandLineParser();
+        List<String> pathArguments = List.of();
+
+        try {
+            pathArguments = commandLineParser.parse(args);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage(commandLineParser);
+            System.exit(1);
+        }
+
+        System.out.println(version() + " (using " + Settings.threadPoolSize + " threads" +
+                (ThreadPool.usesVirtualThreads() ? ", virtual threads for file reads)" : ")"));
+        System.out.println("   Maximum simultaneous file reads per device" +
                 "\n      for small files: " + Settings.maxSimultaneousFileReadsSimple +
                 "\n      for large files (over " + StringUtil.getFileSizeString(Settings.numBytesForShortMD5Check) +
                         "): " + Settings.maxSimultaneousFileReadsFull);
+        System.out.println("   Hash stages: " + Settings.hashStages);
+        System.out.println("   Hash algorithms: " + Settings.partialHashAlgorithm.name() + " (partial), " +
+                (Settings.fullCheckMode == FullCheckMode.COMPARE ? "byte comparison" : Settings.fullHashAlgorithm.name()) +
+                " (full), read engine: " + Settings.readEngine);
+
+        if (Settings.fullCheckMode == FullCheckMode.HASH && !Settings.fullHashAlgorithm.isCryptographic()) {
+            Log.error("Warning: ", Settings.fullHashAlgorithm.name(),
+                    " is not a cryptographic hash, hash collisions may be reported as duplicates");
+        }
+
+        if (Settings.compactFileTable && Settings.pipelined) {
+            Log.error("Warning: --compact has no effect together with --pipelined");
+        }
+
+        if (Settings.sizeGroupingMemoryBudget > 0 && (Settings.pipelined || Settings.compactFileTable)) {
+            Log.error("Warning: --memory-budget has no effect together with --pipelined, and replaces --compact");
+        }
+
+        if (Settings.journalFile != null && Settings.pipelined) {
+            Log.error("Warning: --journal has no effect together with --pipelined");
+        }
+
+        if (Settings.resumeFromJournal && Settings.journalFile == null) {
+            Log.error("Warning: --resume needs --journal FILE, starting a new scan");
+        }
+
+        if (Settings.daemon && (Settings.pipelined || Settings.journalFile != null || Settings.coordinatorPort != 0)) {
+            Log.error("Warning: --pipelined, --journal and --coordinator have no effect together with --daemon");
+        }
+
+        if (Settings.chunkAnalysis && (Settings.daemon || Settings.pipelined || Settings.journalFile != null)) {
+            Log.error("Warning: --daemon, --pipelined and --journal have no effect together with --chunk-analysis");
+        }
+
+        if (Settings.coordinatorPort != 0 && (Settings.pipelined || Settings.journalFile != null ||
+                Settings.fullCheckMode == FullCheckMode.COMPARE)) {
+            Log.error("Warning: --pipelined and --journal have no effect together with --coordinator, ",
+                    "and the full check hashes files instead of comparing them");
+        }
+
+        if (Settings.exportIndexFile != null &&
+                (Settings.daemon || Settings.chunkAnalysis || Settings.coordinatorPort != 0 || Settings.resumeFromJournal)) {
+            Log.error("Warning: --export-index needs a complete walk and local hashing, it has no effect together with ",
+                    "--daemon, --chunk-analysis, --coordinator and --resume");
+        }
+
         PerformanceTimer totalTime = new PerformanceTimer();
 
-        if (args.length == 0) {
-            System.out.println("Usage: " + DupFinder.class.getSimpleName() + " PATH1 {PATH2} {PATH3...}");
-            System.out.println("   Searches through all given paths, finding duplicated files and listing these");
+        if (Settings.coordinatorAddress != null) {
+            runWorker();
+            return;
+        }
+
+        if (Settings.hashRequestsFile != null && !Settings.mergeIndexes) {
+            updateIndex(pathArguments);
+            return;
+        }
+
+        if (pathArguments.isEmpty()) {
+            printUsage(commandLineParser);
             System.exit(1);
         }
 
-        var initialPaths = Arrays.stream(args)
+        var initialPaths = pathArguments.stream()
                 .map(PathUtil::of)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(Collectors.toList());
 
-        // Step 1: Identify all files that share the same file size (otherwise can't possible be duplicate)
-        var potentialDuplicates = new PathWalker(initialPaths).getApplicableFiles();
+        if (Settings.mergeIndexes) {
+            mergeIndexes(initialPaths);
+            return;
+        }
+
+        HashCache.load(Settings.hashCacheFile);
+        IndexExporter.open(Settings.resumeFromJournal ? null : Settings.exportIndexFile);
+        MetricsExporter.start();
 
-        // Step 2: Run a quick MD5 scan on the files above to see if there are any potential duplicates to leave out:
-        potentialDuplicates = new SimpleHashChecker().scan(potentialDuplicates);
+        if (Settings.chunkAnalysis) {
+            new ChunkAnalyzer(initialPaths).run();
+            ThreadPool.shutDown();
+            MetricsExporter.stop();
+            return;
+        }
+
+        if (Settings.daemon) {
+            runDaemon(initialPaths);
+            return;
+        }
 
-        // Step 3: Run a full MD5 scan on all remaining files to identify the actual duplicates:
-        var duplicates = new FullHashChecker().scan(potentialDuplicates);
+        if (!Settings.pipelined && Settings.coordinatorPort == 0) {
+            ScanJournal.open(Settings.journalFile, Settings.resumeFromJournal, initialPaths);
+        }
+
+        // Groups are streamed as the final stage confirms them, the pipelined and distributed modes print them at the end:
+        var streamingPrinter = Settings.pipelined || Settings.coordinatorPort != 0 ?
+                Optional.<StreamingDuplicationPrinter>empty() : DuplicationPrinters.streaming();
+        streamingPrinter.ifPresent(StreamingDuplicationPrinter::start);
+
+        PotentialDuplicateCollection duplicates;
+
+        if (Settings.coordinatorPort != 0) {
+            duplicates = findDuplicatesDistributed(initialPaths);
+        }
+        else if (Settings.pipelined) {
+            duplicates = new PipelinedDuplicateFinder(new PathWalker(initialPaths)).find();
+        }
+        else {
+            duplicates = findDuplicatesStepByStep(initialPaths, streamingPrinter.orElse(null));
+        }
 
         totalTime.stop();
         ThreadPool.shutDown();
+        ScanJournal.instance().close();
+        HashCache.instance().save(initialPaths);
+
+        if (Settings.coordinatorPort == 0) {
+            IndexExporter.instance().write();
+        }
+        MetricsExporter.stop();
+        Log.debug("File system operations: ", FileOperationStatistics.summary());
+
+        if (Settings.adaptiveReadLimits) {
+            Log.info("Read limits after tuning:");
+            IoScheduler.logReadLimits();
+        }
 
-        var duplicationPrinter = new FileSizeBasedDuplicationPrinter();
         Log.info("\nDone after ", StringUtil.doubleToString1Decimal(totalTime.seconds()),
                 " seconds, found ", duplicates.numDuplicatedFiles() + " duplicated files (",
                 StringUtil.getFileSizeString(duplicates.totalDuplicatedSize()), ')');
 
-        duplicationPrinter.printDuplicates(duplicates);
+        if (streamingPrinter.isPresent()) {
+            streamingPrinter.get().finish();
+        }
+        else {
+            DuplicationPrinters.create().printDuplicates(duplicates);
+        }
+    }
+
+    private static void runDaemon(List<Path> initialPaths) {
+        try {
+            new DuplicateFinderDaemon(initialPaths).run();
+        }
+        catch (IOException e) {
+            Log.error("Unable to watch for changes: ", e.getMessage());
+            System.exit(1);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.error("Interrupted, shutting down");
+        }
+        finally {
+            ThreadPool.shutDown();
+        }
+    }
+
+    private static void runWorker() {
+        try {
+            new Worker(Settings.coordinatorAddress).run();
+        }
+        catch (IOException e) {
+            Log.error("Lost connection to coordinator ", Settings.coordinatorAddress, ": ", e.getMessage());
+            System.exit(1);
+        }
+        finally {
+            ThreadPool.shutDown();
+        }
+    }
+
+    private static void updateIndex(List<String> pathArguments) {
+        if (Settings.exportIndexFile == null) {
+            Log.error("--hash-requests needs the index of this host with --export-index FILE, or --merge-index");
+            System.exit(1);
+        }
+
+        if (!pathArguments.isEmpty()) {
+            Log.error("Warning: only the requested files in the index are hashed, the paths are ignored");
+        }
+
+        HashCache.load(Settings.hashCacheFile);
+        new IndexUpdater(Settings.exportIndexFile, Settings.hashRequestsFile).run();
+        ThreadPool.shutDown();
+    }
+
+    private static void mergeIndexes(List<Path> indexFiles) {
+        var timer = new PerformanceTimer();
+        var duplicates = new IndexMerger(indexFiles).merge();
+        timer.stop();
+
+        Log.info("\nDone after ", StringUtil.doubleToString1Decimal(timer.seconds()),
+                " seconds, found ", duplicates.numDuplicatedFiles() + " duplicated files (",
+                StringUtil.getFileSizeString(duplicates.totalDuplicatedSize()), ')');
+        DuplicationPrinters.create().printDuplicates(duplicates);
+    }
+
+    private static PotentialDuplicateCollection findDuplicatesDistributed(List<Path> initialPaths) {
+        // Listen before the walk, so workers can connect while it's running:
+        try (var coordinator = new Coordinator(Settings.coordinatorPort)) {
+            return coordinator.scan(new PathWalker(initialPaths).getApplicableFiles());
+        }
+        catch (IOException e) {
+            Log.error("Unable to listen for workers on port ", Settings.coordinatorPort, ": ", e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static PotentialDuplicateCollection findDuplicatesStepByStep(List<Path> initialPaths,
+                                                                         StreamingDuplicationPrinter confirmedGroups) {
+        // Step 1: Identify all files that share the same file size (otherwise can't possible be duplicate)
+        var potentialDuplicates = ScanJournal.instance().restoredWalk().orElseGet(() -> {
+            var applicableFiles = new PathWalker(initialPaths).getApplicableFiles();
+            ScanJournal.instance().recordWalk(applicableFiles);
+            return applicableFiles;
+        });
+
+        // Step 2: Run quick hash scans on parts of the files above to see if there are any potential duplicates to leave out,
+        // step 3: Run a full hash scan on all remaining files to identify the actual duplicates:
+        return HashStageRunner.scan(potentialDuplicates, confirmedGroups);
+    }
+
+    private static CommandLineParser createCommandLineParser() {
+        return new CommandLineParser()
+                .option("--journal", "FILE", "Record the progress of the scan in FILE, so it can be resumed with --resume",
+                        value -> Settings.journalFile = Paths.get(value))
+                .flag("--resume", "Continue an interrupted scan from the file given with --journal",
+                        () -> Settings.resumeFromJournal = true)
+                .option("--hash-cache", "FILE", "Persist calculated hashes in FILE so unchanged files aren't read again",
+                        value -> Settings.hashCacheFile = Paths.get(value))
+                .option("--report", "FILE", "Write the duplicates to FILE as they are confirmed, instead of displaying them",
+                        value -> Settings.reportFile = Paths.get(value))
+                .option("--report-format", "FORMAT", "Format of --report, one of " +
+                        Arrays.toString(ReportFormat.values()) + " (default " + Settings.reportFormat + ')',
+                        value -> Settings.reportFormat = ReportFormat.valueOf(value.toUpperCase()))
+                .option("--top", "N", "Only display the N groups of duplicates that free the most space, largest first",
+                        value -> Settings.topDuplicateGroups = positiveInt(value))
+                .option("--metrics-file", "FILE", "Write metrics of every stage to FILE in the Prometheus text format, " +
+                        "every " + Settings.metricsIntervalSeconds + " seconds and at the end",
+                        value -> Settings.metricsFile = Paths.get(value))
+                .option("--metrics-port", "PORT", "Serve metrics for Prometheus on http://localhost:PORT/metrics",
+                        value -> Settings.metricsPort = positiveInt(value))
+                .option("--metrics-json", "FILE", "Write a JSON summary of all metrics to FILE at the end",
+                        value -> Settings.metricsJsonFile = Paths.get(value))
+                .option("--partial-hash", "ALGORITHM", "Hash algorithm for the partial check, one of " +
+                        HashAlgorithms.names() + " (default " + Settings.partialHashAlgorithm.name() + ')',
+                        value -> Settings.partialHashAlgorithm = HashAlgorithms.of(value))
+                .option("--full-hash", "ALGORITHM", "Hash algorithm for the full check, one of " +
+                        HashAlgorithms.names() + " (default " + Settings.fullHashAlgorithm.name() + ')',
+                        value -> Settings.fullHashAlgorithm = HashAlgorithms.of(value))
+                .option("--read-engine", "ENGINE", "How files are read, one of " +
+                        Arrays.toString(ReadEngine.values()) + " (default " + Settings.readEngine + ')',
+                        value -> Settings.readEngine = ReadEngine.valueOf(value.toUpperCase()))
+                .option("--stages", "STAGES", "Comma-separated hash stages before the full check, for example " +
+                        "head:4k,tail:64k,samples:8x64k,full (default head:" + Settings.numBytesForShortMD5Check + ",full)",
+                        value -> Settings.hashStages = HashStage.parseList(value))
+                .option("--full-check", "MODE", "How the final stage confirms duplicates, one of " +
+                        Arrays.toString(FullCheckMode.values()) + " (default " + Settings.fullCheckMode + ')',
+                        value -> Settings.fullCheckMode = FullCheckMode.valueOf(value.toUpperCase()))
+                .option("--walker-threads", "N", "Number of threads that walk the directory trees (default " +
+                        Settings.numWalkerThreads + ", use more for network mounts)",
+                        value -> Settings.numWalkerThreads = positiveInt(value))
+                .option("--device-reads", "PATH=SMALL,LARGE", "Simultaneous reads of small and large files for the " +
+                        "device PATH is on (default " + Settings.maxSimultaneousFileReadsSimple + ',' +
+                        Settings.maxSimultaneousFileReadsFull + " for every device), can be repeated",
+                        DupFinder::parseDeviceReads)
+                .option("--memory-budget", "SIZE", "Memory for walked files before they are spilled to disk in " +
+                        "sorted runs, for example 512m or 2g (default: no limit)",
+                        value -> Settings.sizeGroupingMemoryBudget = positiveLong(StringUtil.parseLongByteSize(value)))
+                .option("--spill-dir", "DIR", "Directory for runs spilled by --memory-budget (default: system temp directory)",
+                        value -> Settings.spillDirectory = Paths.get(value))
+                .flag("--adaptive-reads", "Tune the read limits of each device during the run from measured throughput",
+                        () -> Settings.adaptiveReadLimits = true)
+                .flag("--virtual-threads", "Read files on virtual threads (Java 21 or later), use with higher " +
+                        "--device-reads limits for high-latency network mounts",
+                        () -> Settings.virtualThreads = true)
+                .flag("--daemon", "Keep running and keep the duplicates up to date as files are created, modified " +
+                        "and deleted", () -> Settings.daemon = true)
+                .option("--reconcile-interval", "SECONDS", "How often --daemon walks all paths again to catch " +
+                        "missed changes (default " + Settings.reconciliationIntervalSeconds + ')',
+                        value -> Settings.reconciliationIntervalSeconds = positiveInt(value))
+                .flag("--chunk-analysis", "Report how much data files share in content-defined chunks instead of " +
+                        "finding duplicated files", () -> Settings.chunkAnalysis = true)
+                .option("--chunk-size", "SIZE", "Average chunk size of --chunk-analysis, a power of two (default " +
+                        StringUtil.getFileSizeString(Settings.averageChunkSize) + ')', DupFinder::parseChunkSize)
+                .option("--coordinator", "PORT", "Hand out the hashing to workers that connect to PORT, they have " +
+                        "to see the same paths", value -> Settings.coordinatorPort = positiveInt(value))
+                .option("--worker", "HOST:PORT", "Hash files for the coordinator at HOST:PORT, no paths needed",
+                        value -> Settings.coordinatorAddress = value)
+                .option("--export-index", "FILE", "Write all walked files and their hashes to FILE, to find duplicates " +
+                        "across hosts with --merge-index", value -> Settings.exportIndexFile = Paths.get(value))
+                .option("--host-name", "NAME", "Name of this host in --export-index (default: the host name)",
+                        value -> Settings.hostName = value)
+                .flag("--merge-index", "Find duplicates across the index files given as paths, without reading any files",
+                        () -> Settings.mergeIndexes = true)
+                .option("--hash-requests", "FILE", "With --merge-index: write the files that need hashing to FILE, " +
+                        "with --export-index and no paths: hash the files of this host in FILE and add them to the index",
+                        value -> Settings.hashRequestsFile = Paths.get(value))
+                .flag("--pipelined", "Hash files while the directory trees are still being walked",
+                        () -> Settings.pipelined = true)
+                .flag("--compact", "Keep walked files in a compact table, uses less memory for millions of files",
+                        () -> Settings.compactFileTable = true);
+    }
+
+    private static void parseDeviceReads(String value) {
+        var pathAndLimits = value.split("=", 2);
+        var limits = pathAndLimits.length == 2 ? pathAndLimits[1].split(",") : new String[0];
+
+        if (limits.length != ReadType.values().length) {
+            throw new IllegalArgumentException("expected PATH=SMALL,LARGE");
+        }
+
+        Settings.readLimitsPerDevice.put(Paths.get(pathAndLimits[0]),
+                new int[] { positiveInt(limits[0].trim()), positiveInt(limits[1].trim()) });
+    }
+
+    private static void parseChunkSize(String value) {
+        long size = StringUtil.parseLongByteSize(value);
+
+        if (size < 64 || size > 1 << 24 || Long.bitCount(size) != 1) {
+            throw new IllegalArgumentException("chunk size must be a power of two between 64 and 16m: " + value);
+        }
+
+        Settings.averageChunkSize = (int) size;
+    }
+
+    private static int positiveInt(String value) {
+        int result = Integer.parseInt(value);
+
+        if (result < 1) {
+            throw new IllegalArgumentException("must be at least 1");
+        }
+
+        return result;
+    }
+
+    private static long positiveLong(long value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("must be at least 1");
+        }
+
+        return value;
+    }
+
+    private static void printUsage(CommandLineParser commandLineParser) {
+        System.out.println("Usage: " + DupFinder.class.getSimpleName() + " {OPTIONS} PATH1 {PATH2} {PATH3...}");
+        System.out.println("   Searches through all given paths, finding duplicated files and listing these");
+        System.out.println("Options:");
+        commandLineParser.printOptions(System.out);
     }
 
     private static String version() {
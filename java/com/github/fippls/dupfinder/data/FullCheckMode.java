@@ -0,0 +1,15 @@
+package com.github.fippls.dupfinder.data;
+
+/**
+ * How the final stage decides which files are duplicates.
+ * @author github.com/fippls
+ */
+public enum FullCheckMode {
+    /** Hash every remaining file completely with {@link Settings#fullHashAlgorithm} */
+    HASH,
+    /**
+     * Read all files in a group chunk by chunk in lockstep and compare the bytes directly. Groups are split as soon as
+     * their contents differ and files that have become unique aren't read any further.
+     */
+    COMPARE
+}
@@ -0,0 +1,245 @@
+package com.github.fippls.dupfinder.data;
+
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes which parts of a file one hash stage reads.
+ * Files are grouped by size before hashing, and each stage keeps files with the same hash but different sizes apart, so
+ * all files that are compared in a stage have the same byte ranges read.
+ * @see Settings#hashStages
+ * @author github.com/fippls
+ */
+public class HashStage {
+    public enum Type {
+        /** The first bytes of the file */
+        HEAD,
+        /** The last bytes of the file */
+        TAIL,
+        /** A number of evenly spaced samples between the head and tail */
+        SAMPLES,
+        /** The entire file */
+        FULL
+    }
+
+    private static final HashStage FULL = new HashStage(Type.FULL, 1, 0);
+
+    private final Type type;
+    private final int numSamples;
+    private final int bytesPerSample;
+
+    private HashStage(Type type, int numSamples, int bytesPerSample) {
+        this.type = type;
+        this.numSamples = numSamples;
+        this.bytesPerSample = bytesPerSample;
+    }
+
+    public static HashStage head(int bytes) {
+        return new HashStage(Type.HEAD, 1, bytes);
+    }
+
+    public static HashStage tail(int bytes) {
+        return new HashStage(Type.TAIL, 1, bytes);
+    }
+
+    public static HashStage samples(int numSamples, int bytesPerSample) {
+        return new HashStage(Type.SAMPLES, numSamples, bytesPerSample);
+    }
+
+    public static HashStage full() {
+        return FULL;
+    }
+
+    /**
+     * Parses a comma-separated list of stages, such as "head:4k,tail:64k,samples:8x64k,full".
+     * A full stage is added at the end if it's missing, since that's the stage that confirms duplicates.
+     * @throws IllegalArgumentException If the list can't be parsed.
+     */
+    public static List<HashStage> parseList(String stages) {
+        var result = new ArrayList<HashStage>();
+
+        for (String stage : stages.split(",")) {
+            if (!result.isEmpty() && result.get(result.size() - 1).isFull()) {
+                throw new IllegalArgumentException("the full stage must be last");
+            }
+
+            result.add(parse(stage.trim()));
+        }
+
+        if (!result.get(result.size() - 1).isFull()) {
+            result.add(FULL);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses one stage: "head:SIZE", "tail:SIZE", "samples:COUNTxSIZE" or "full", where SIZE may end with k or m.
+     * @throws IllegalArgumentException If the stage can't be parsed.
+     */
+    public static HashStage parse(String stage) {
+        var parts = stage.toLowerCase().split(":", 2);
+
+        switch (parts[0]) {
+            case "full":
+                return FULL;
+
+            case "head":
+                return head(parseSize(sizeOf(parts)));
+
+            case "tail":
+                return tail(parseSize(sizeOf(parts)));
+
+            case "samples":
+                var countAndSize = sizeOf(parts).split("x", 2);
+
+                if (countAndSize.length != 2) {
+                    throw new IllegalArgumentException("expected samples:COUNTxSIZE, got " + stage);
+                }
+
+                return samples(positive(Integer.parseInt(countAndSize[0])), parseSize(countAndSize[1]));
+
+            default:
+                throw new IllegalArgumentException("unknown stage " + stage);
+        }
+    }
+
+    /**
+     * Parses a stage from its {@link HashStage#id()}.
+     * @throws IllegalArgumentException If the id can't be parsed.
+     */
+    public static HashStage fromId(String id) {
+        return parse(id.replaceFirst("-", ":"));
+    }
+
+    private static String sizeOf(String[] parts) {
+        if (parts.length != 2 || parts[1].isEmpty()) {
+            throw new IllegalArgumentException("missing size for stage " + parts[0]);
+        }
+
+        return parts[1];
+    }
+
+    private static int parseSize(String size) {
+        return positive(StringUtil.parseByteSize(size));
+    }
+
+    private static int positive(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("stage values must be positive");
+        }
+
+        return value;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public boolean isFull() {
+        return type == Type.FULL;
+    }
+
+    /**
+     * Byte ranges to read for a file of the given size, as offset/length pairs.
+     * Ranges are sorted and never overlap, if they would cover the entire file a single range for the file is returned.
+     */
+    public long[] ranges(long fileSize) {
+        if (type == Type.FULL || (long) numSamples * bytesPerSample >= fileSize) {
+            return new long[] { 0, fileSize };
+        }
+
+        switch (type) {
+            case HEAD:
+                return new long[] { 0, bytesPerSample };
+
+            case TAIL:
+                return new long[] { fileSize - bytesPerSample, bytesPerSample };
+
+            default:
+                return sampleRanges(fileSize);
+        }
+    }
+
+    /**
+     * The total number of bytes this stage reads from a file of the given size.
+     */
+    public long bytesCovered(long fileSize) {
+        var ranges = ranges(fileSize);
+        long total = 0;
+
+        for (int i = 1; i < ranges.length; i += 2) {
+            total += ranges[i];
+        }
+
+        return total;
+    }
+
+    /**
+     * The largest number of bytes read in one go, used to size read buffers.
+     */
+    public long maxRangeLength() {
+        return type == Type.FULL ? Long.MAX_VALUE : bytesPerSample;
+    }
+
+    /**
+     * Stable identifier, used as key in the hash cache.
+     */
+    public String id() {
+        switch (type) {
+            case FULL:
+                return "full";
+
+            case SAMPLES:
+                return "samples-" + numSamples + 'x' + bytesPerSample;
+
+            default:
+                return type.name().toLowerCase() + '-' + bytesPerSample;
+        }
+    }
+
+    /**
+     * Samples are evenly spaced between (but not including) the start and end of the file, overlaps are merged.
+     */
+    private long[] sampleRanges(long fileSize) {
+        var ranges = new long[numSamples * 2];
+        int numRanges = 0;
+        long lastEnd = -1;
+
+        for (int i = 0; i < numSamples; i++) {
+            long offset = (fileSize - bytesPerSample) * (i + 1) / (numSamples + 1);
+
+            if (numRanges > 0 && offset <= lastEnd) {
+                // Overlaps the previous sample, extend it instead:
+                long end = offset + bytesPerSample;
+                ranges[numRanges * 2 - 1] = end - ranges[numRanges * 2 - 2];
+                lastEnd = end;
+                continue;
+            }
+
+            ranges[numRanges * 2] = offset;
+            ranges[numRanges * 2 + 1] = bytesPerSample;
+            lastEnd = offset + bytesPerSample;
+            numRanges++;
+        }
+
+        return numRanges == numSamples ? ranges : Arrays.copyOf(ranges, numRanges * 2);
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case FULL:
+                return "full";
+
+            case SAMPLES:
+                return numSamples + " samples of " + StringUtil.getFileSizeString(bytesPerSample);
+
+            default:
+                return type.name().toLowerCase() + ' ' + StringUtil.getFileSizeString(bytesPerSample);
+        }
+    }
+}
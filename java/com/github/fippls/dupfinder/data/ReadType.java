@@ -0,0 +1,19 @@
+package com.github.fippls.dupfinder.data;
+
+/**
+ * Kind of file reads, each kind has its own concurrency limit per device.
+ * @author github.com/fippls
+ */
+public enum ReadType {
+    /** Partial hash stages, reading small parts of many files */
+    SMALL,
+    /** The full check, reading entire files */
+    LARGE;
+
+    /**
+     * Limit used for devices that have no limit of their own in {@link Settings#readLimitsPerDevice}.
+     */
+    public int defaultLimit() {
+        return this == SMALL ? Settings.maxSimultaneousFileReadsSimple : Settings.maxSimultaneousFileReadsFull;
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.fippls.dupfinder.data;
+
+/**
+ * File format of the duplicate report.
+ * @see Settings#reportFile
+ * @author github.com/fippls
+ */
+public enum ReportFormat {
+    /** One JSON object per group of duplicates and line */
+    JSONL,
+    /** One row per path, with a column that tells which group it belongs to */
+    CSV,
+    /** Compact binary records, see {@link com.github.fippls.dupfinder.detection.output.BinaryDuplicationPrinter} */
+    BINARY
+}
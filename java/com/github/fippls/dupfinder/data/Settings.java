@@ -1,6 +1,13 @@
 package com.github.fippls.dupfinder.data;
 
+import com.github.fippls.dupfinder.file.ReadEngine;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Global program settings.
@@ -9,10 +16,42 @@ import java.util.List;
 public class Settings {
 
     /**
-     * If symbolic links should be followed or not.
+     * If symbolic links to files should be included, as the file they point to. Costs an extra file system call for
+     * each link. Links to directories are never followed.
      */
     public static boolean followSymlinks = false;
 
+    /**
+     * Number of threads that list directories and fetch file attributes. More than one thread walks the directory
+     * trees in parallel, which helps a lot on network mounts where each file system call is a round trip.
+     */
+    public static int numWalkerThreads = 1;
+
+    /**
+     * Hash files while the directory trees are still being walked, instead of waiting for the walk to finish first.
+     * Keeps the disks busy during the walk, which mostly helps when there are a lot of files.
+     */
+    public static boolean pipelined = false;
+
+    /**
+     * Keep the walked files in a compact table with primitive columns instead of one object per file, only files that
+     * share their size with another file become objects. Uses a lot less memory for scans of millions of files.
+     * Has no effect in pipelined mode, where files are grouped as they are found.
+     */
+    public static boolean compactFileTable = false;
+
+    /**
+     * Memory (in bytes) that walked files may take up before they are sorted by size and spilled to a temporary file.
+     * The spilled runs are merged after the walk, so only files that share their size with another file are kept in
+     * memory. Zero keeps all walked files in memory. Has no effect in pipelined mode.
+     */
+    public static long sizeGroupingMemoryBudget = 0;
+
+    /**
+     * Directory for spilled runs, null to use the system temporary directory.
+     */
+    public static Path spillDirectory = null;
+
     /**
      * If every path-reader error should result in a message being printed.
      */
@@ -42,14 +81,69 @@ public class Settings {
      *
      *   Leave it rather high to include as many small files as possible in the short MD5 check to not have to re-check
      *   them later on during the full scan.
+     *
+     *   The cost of reading and hashing per size can be measured with FileReadBenchmark (see benchmark/).
      */
     public static int numBytesForShortMD5Check = 131_072;
 
+    /**
+     * Hash stages to run after files have been grouped by size, in order. Each stage only reads the files that are
+     * still potential duplicates after the previous one. Large files often share headers (VM images, video containers,
+     * databases) so adding tail and sample stages can avoid many full reads. The last stage is always the full check.
+     */
+    public static List<HashStage> hashStages = List.of(HashStage.head(numBytesForShortMD5Check), HashStage.full());
+
+    /**
+     * Hash algorithm for all stages except the full check. These stages only filter out files that can't be duplicates, so a fast
+     * non-cryptographic hash such as {@link HashAlgorithms#XXH64} works well here.
+     * If it's the same as {@link Settings#fullHashAlgorithm}, small files that were completely read don't need to be read
+     * again.
+     */
+    public static HashAlgorithm partialHashAlgorithm = HashAlgorithms.MD5;
+
+    /**
+     * Hash algorithm for the full check, this is what decides if files are duplicates so it should be cryptographic.
+     */
+    public static HashAlgorithm fullHashAlgorithm = HashAlgorithms.MD5;
+
+    /**
+     * How the final stage decides which files are duplicates.
+     */
+    public static FullCheckMode fullCheckMode = FullCheckMode.HASH;
+
+    /**
+     * Number of bytes read from each file at a time with {@link FullCheckMode#COMPARE}.
+     * One chunk per file in a group is kept in memory.
+     */
+    public static int lockstepChunkSize = 1024 * 1024;
+
+    /**
+     * Maximum number of files in a group that are compared in lockstep with {@link FullCheckMode#COMPARE}, since all
+     * of them are open at the same time. Larger groups are compared in batches of this many files.
+     */
+    public static int maxLockstepOpenFiles = 64;
+
     /**
      * Read buffer size for file reads.
      */
     public static int readBufferSize = numBytesForShortMD5Check * 2;
 
+    /**
+     * How files are read. The NIO engines avoid copying data through a heap buffer, which matters once hashing is
+     * CPU-bound on fast storage.
+     */
+    public static ReadEngine readEngine = ReadEngine.STREAM;
+
+    /**
+     * Files at least this large are memory-mapped during the full hash check when using {@link ReadEngine#MAPPED}.
+     */
+    public static long minFileSizeForMappedReads = 64_000_000;
+
+    /**
+     * Number of bytes mapped at a time with {@link ReadEngine#MAPPED}, a single mapping can't exceed 2 GB.
+     */
+    public static int mappedRegionSize = 256 * 1024 * 1024;
+
     /**
      * How often to print current task progress.
      */
@@ -71,26 +165,222 @@ public class Settings {
     public static int minimumCopyCount = 2;
 
     /**
-     * The maximum number of concurrent file read operations that can be active when doing the simple hash check.
+     * The maximum number of concurrent file read operations per device that can be active when doing the simple hash check.
      * If running via samba mounts, java can throw strange non-descriptive errors if this number is too high.
      * This number should generally be much larger than {@link Settings#maxSimultaneousFileReadsFull}.
      */
     public static int maxSimultaneousFileReadsSimple = 12;
 
     /**
-     * The maximum number of concurrent file read operations that can be active when doing the full hash check.
+     * The maximum number of concurrent file read operations per device that can be active when doing the full hash check.
      * If running via samba mounts, java can throw strange non-descriptive errors if this number is too high.
      */
     public static int maxSimultaneousFileReadsFull = 2;
 
     /**
-     * Number of processing threads.
+     * Maximum number of tasks that are submitted to the thread pool but not finished yet. New tasks are only created
+     * when earlier ones finish, which keeps memory usage flat no matter how many files are scanned.
+     */
+    public static int maxTasksInFlight = 256;
+
+    /**
+     * Simultaneous read limits for specific devices, replacing {@link Settings#maxSimultaneousFileReadsSimple} and
+     * {@link Settings#maxSimultaneousFileReadsFull} there. Maps any path on the device to the limits, indexed by
+     * {@link ReadType}. All other devices use the default limits, each device gets its own set of reads.
+     */
+    public static final Map<Path, int[]> readLimitsPerDevice = new LinkedHashMap<>();
+
+    /**
+     * Tune the read limits of every device during the run, from measured throughput. Starts from the configured limits,
+     * raises them while throughput improves and halves them on read errors or latency spikes.
+     */
+    public static boolean adaptiveReadLimits = false;
+
+    /**
+     * How often adaptive read limits are adjusted, throughput is measured over this period.
+     */
+    public static int readLimitAdjustmentMillis = 2000;
+
+    /**
+     * Adaptive read limits never go above this.
+     */
+    public static int maxAdaptiveReadLimit = 64;
+
+    /**
+     * Run each file read on a virtual thread of its own (Java 21 or later) instead of on the thread pool, so that
+     * hundreds of reads can wait on a high-latency network mount without a platform thread each. The number of reads in
+     * flight is still bounded by the read limits of each device.
+     */
+    public static boolean virtualThreads = false;
+
+    /**
+     * Number of processing threads. Scans that read from more than one device get this many threads per device.
      */
     @SuppressWarnings("ConstantConditions")
     public static int threadPoolSize = Math.min(
             Math.max(Settings.maxSimultaneousFileReadsSimple, Settings.maxSimultaneousFileReadsFull) + 1,
             Runtime.getRuntime().availableProcessors() + 1);
 
+    /**
+     * Keep running after the first scan, and keep the duplicates up to date by watching the paths for changes.
+     * Only size groups with changed files are checked again.
+     */
+    public static boolean daemon = false;
+
+    /**
+     * How often daemon mode walks all paths again, to catch changes that the file system didn't report (such as on
+     * network mounts, or when too many changes happened at once).
+     */
+    public static int reconciliationIntervalSeconds = 3600;
+
+    /**
+     * Daemon mode waits until no changes have been reported for this long before it checks the changed files.
+     */
+    public static long daemonSettleMilliseconds = 2000;
+
+    /**
+     * Instead of looking for duplicated files, cut all files into content-defined chunks and report how much data is
+     * shared between files, to find out if block-level deduplication is worth it.
+     */
+    public static boolean chunkAnalysis = false;
+
+    /**
+     * Average chunk size of the chunk analysis, a power of two. Smaller chunks find more shared data, but the chunk
+     * index takes more memory (about 32 bytes per unique chunk).
+     */
+    public static int averageChunkSize = 8 * 1024;
+
+    /**
+     * Smaller files are left out of the chunk analysis, they are mostly shared as whole files if at all.
+     */
+    public static long chunkAnalysisMinFileSize = 64 * 1024;
+
+    /**
+     * Number of file pairs that share the most data to list after the chunk analysis.
+     */
+    public static int chunkAnalysisTopPairs = 20;
+
+    /**
+     * Port where the coordinator listens for workers, the hash stages are then run on the workers instead of locally.
+     * 0 runs the hash stages locally.
+     */
+    public static int coordinatorPort = 0;
+
+    /**
+     * Host and port of the coordinator to hash files for, such as "server:7070". Set to null to run a normal scan.
+     */
+    public static String coordinatorAddress = null;
+
+    /**
+     * Work units handed out by the coordinator have at most this many files, unless a single group is larger.
+     */
+    public static int workUnitMaxFiles = 256;
+
+    /**
+     * A new work unit is started when this many bytes would be read for the files in the unit.
+     */
+    public static long workUnitMaxBytes = 1024L * 1024 * 1024;
+
+    /**
+     * Work units at each worker at the same time, so that a worker has the next unit when it finishes one.
+     */
+    public static int workUnitsPerWorker = 2;
+
+    /**
+     * How often a worker tells the coordinator that it's still alive while it hashes.
+     */
+    public static int workerHeartbeatSeconds = 10;
+
+    /**
+     * A worker that has sent nothing for this long is considered dead, and its work units are handed out again.
+     */
+    public static int workerTimeoutSeconds = 60;
+
+    /**
+     * Index of all walked files with the hashes calculated during the run, written at the end. Indexes of several hosts
+     * can be merged to find duplicates across hosts, see {@link Settings#mergeIndexes}. Keeps every walked file in memory
+     * until the end. Set to null to disable the index.
+     */
+    public static Path exportIndexFile = null;
+
+    /**
+     * Name of this host in the exported index, null to use the name of the host.
+     */
+    public static String hostName = null;
+
+    /**
+     * Treat the paths as index files from {@link Settings#exportIndexFile} and find duplicates across them, instead of
+     * walking directories.
+     */
+    public static boolean mergeIndexes = false;
+
+    /**
+     * When merging indexes, the entries that can't be told apart without more hashing are written to this file. Each host
+     * then hashes its own entries in it and adds them to its index, so the next merge gets further. Set to null to only
+     * report the duplicates that the indexes already confirm.
+     */
+    public static Path hashRequestsFile = null;
+
+    /**
+     * Journal where the result of the walk and each hashed file are recorded as the scan goes, so that an interrupted
+     * scan can be resumed (see {@link Settings#resumeFromJournal}). Set to null to disable the journal.
+     */
+    public static Path journalFile = null;
+
+    /**
+     * Continue from the results in the journal instead of starting over. Only works if the journal was written by a scan
+     * of the same paths with the same settings, otherwise the scan starts over.
+     */
+    public static boolean resumeFromJournal = false;
+
+    /**
+     * How often the journal is forced to disk while hashing, everything recorded after the last time is lost if the
+     * computer crashes. The journal is also forced to disk after the walk and after each hash stage.
+     */
+    public static long journalSyncMilliseconds = 5000;
+
+    /**
+     * Report file where groups of duplicates are written as soon as they are confirmed, in {@link Settings#reportFormat}.
+     * When set, the duplicates are not displayed (apart from {@link Settings#topDuplicateGroups}). Set to null to
+     * disable the report.
+     */
+    public static Path reportFile = null;
+
+    public static ReportFormat reportFormat = ReportFormat.JSONL;
+
+    /**
+     * Only display this many groups of duplicates, the ones that free the most space, largest first. Uses a bounded heap
+     * instead of sorting all groups. 0 displays all groups, sorted by size.
+     */
+    public static int topDuplicateGroups = 0;
+
+    /**
+     * Prometheus textfile with the metrics of each pipeline stage, rewritten every {@link Settings#metricsIntervalSeconds}
+     * while the program runs and once more at the end. Set to null to disable it.
+     */
+    public static Path metricsFile = null;
+
+    /**
+     * Port of an HTTP endpoint (/metrics) where Prometheus can scrape the metrics while the program runs, 0 to disable it.
+     */
+    public static int metricsPort = 0;
+
+    /**
+     * JSON summary of all metrics, written when the program is done. Set to null to disable it.
+     */
+    public static Path metricsJsonFile = null;
+
+    /**
+     * How often the metrics textfile is rewritten.
+     */
+    public static int metricsIntervalSeconds = 15;
+
+    /**
+     * File used to persist calculated hashes between runs, so that unchanged files don't have to be read again.
+     * Set to null to disable the cache.
+     */
+    public static Path hashCacheFile = null;
+
     /**
      * Insert this command before each file that is marked as safe to delete.
      */
@@ -1,69 +1,162 @@
 package com.github.fippls.dupfinder.detection;
 
-import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.detection.output.StreamingDuplicationPrinter;
+import com.github.fippls.dupfinder.detection.result.DigestMap;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
 import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
-import com.github.fippls.dupfinder.thread.ThreadPool;
+import com.github.fippls.dupfinder.file.Device;
+import com.github.fippls.dupfinder.file.ScanJournal;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.thread.TaskRunner;
 import com.github.fippls.dupfinder.thread.task.AbstractHashCallable;
-import com.github.fippls.dupfinder.util.IntervalTimer;
 import com.github.fippls.dupfinder.util.Log;
 import com.github.fippls.dupfinder.util.StringUtil;
-import com.github.fippls.dupfinder.util.TimerUtil;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Abstract implementation of something that calculates hash codes for files.
  * @author github.com/fippls
  */
 public abstract class AbstractHashChecker {
-    private static final ThreadPool THREAD_POOL = new ThreadPool();
     /** Display stats for file count/size reduction, not needed when final step is completed */
     protected final boolean optimizationStats;
     private final String name;
+    private final HashAlgorithm hashAlgorithm;
+    /** Identifies the hash stage and algorithm in the {@link ScanJournal} */
+    private final String journalStage;
     private final PotentialDuplicateCollection potentialDuplicateCollection;
 
-    protected AbstractHashChecker(String name, boolean optimizationStats) {
-        this.name = name;
+    protected AbstractHashChecker(String name, HashStage stage, HashAlgorithm hashAlgorithm, boolean optimizationStats) {
+        this.name = name + " (" + hashAlgorithm.name() + ')';
+        this.hashAlgorithm = hashAlgorithm;
+        this.journalStage = stage.id() + '-' + hashAlgorithm.name();
         this.optimizationStats = optimizationStats;
-        potentialDuplicateCollection = new PotentialDuplicateCollection(name);
+        potentialDuplicateCollection = new PotentialDuplicateCollection(this.name, hashAlgorithm);
     }
 
     public PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates) {
+        return scan(potentialDuplicates, null);
+    }
+
+    /**
+     * @param confirmedGroups Receives each group of files with the same hash as soon as all files of the group they came
+     *                        from are hashed, or null. Used in the final stage, where that means they are duplicates.
+     */
+    public PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates,
+                                             StreamingDuplicationPrinter confirmedGroups) {
         Log.info(name, " received ", potentialDuplicates.numTotalFiles(), " files to process: ",
                 StringUtil.getFileSizeString(potentialDuplicates.totalSize()));
 
-        potentialDuplicates
-                .mapAllFiles(this::createCallable)
-                .forEach(THREAD_POOL::addTask);
+        // Each device reads its own files, callables are created lazily when the device has a free slot.
+        // Files that were hashed before an interrupted run already have their result in the journal:
+        var journal = ScanJournal.instance();
+        var filesPerDevice = new LinkedHashMap<Device, List<FileInfo>>();
+        var inputGroups = confirmedGroups != null ? inputGroups(potentialDuplicates) : null;
+        long numRestored = 0;
 
-        final IntervalTimer timer = new IntervalTimer(Settings.millisecondsBetweenProgressUpdates);
-        final Runtime runtime = Runtime.getRuntime();
-        boolean finished = false;
+        for (FileInfo fileInfo : potentialDuplicates.mapAllFiles(fileInfo -> fileInfo).collect(Collectors.toList())) {
+            if (journal.restoreHash(fileInfo, journalStage)) {
+                potentialDuplicateCollection.add(fileInfo);
+                hashed(fileInfo, inputGroups, confirmedGroups);
+                numRestored++;
+            }
+            else {
+                filesPerDevice.computeIfAbsent(Device.of(fileInfo), __ -> new ArrayList<>()).add(fileInfo);
+            }
+        }
 
-        while (!finished) {
-            long numDone = THREAD_POOL.numDone();
+        if (numRestored > 0) {
+            Log.info("  ", numRestored, " files restored from the journal");
+        }
 
-            if (Settings.showProgressUpdates && timer.done()) {
-                long bytesProcessed = THREAD_POOL.totalNumBytesProcessedSinceLastCall();
-                var mbPerSecond = bytesProcessed / 1000.0 / Settings.millisecondsBetweenProgressUpdates;
+        var sources = new ArrayList<Iterator<AbstractHashCallable>>();
+        filesPerDevice.values().forEach(files -> sources.add(files.stream().map(this::createCallable).iterator()));
 
-                Log.info("  Task ", numDone, " / ", THREAD_POOL.getNumTasks(),
-                        " (free memory: ", StringUtil.getFileSizeString(runtime.freeMemory()), ')',
-                        ", speed: ", StringUtil.doubleToString1Decimal(mbPerSecond), " MB/s");
-                timer.reset();
-            }
+        new TaskRunner("Task", potentialDuplicates.numTotalFiles() - numRestored)
+                .runAllPerDevice(sources, fileInfo -> {
+                    journal.recordHash(fileInfo, journalStage);
+                    potentialDuplicateCollection.add(fileInfo);
+                    hashed(fileInfo, inputGroups, confirmedGroups);
+                });
 
-            finished = numDone >= THREAD_POOL.getNumTasks();
+        journal.sync();
 
-            if (!finished) {
-                TimerUtil.sleep(50);
-            }
+        if (confirmedGroups != null) {
+            // Groups where a task failed without a result never got their last file:
+            inputGroups.values().stream().distinct().forEach(inputGroup -> confirm(inputGroup, confirmedGroups));
         }
 
-        var results = THREAD_POOL.fetchResult();
-        results.forEach(potentialDuplicateCollection::add);
-
         return potentialDuplicateCollection.resolve(optimizationStats);
     }
 
     protected abstract AbstractHashCallable createCallable(FileInfo fileInfo);
+
+    /**
+     * Hands over the files with the same hash when the last file of their input group is hashed.
+     */
+    private void hashed(FileInfo fileInfo, Map<FileInfo, InputGroup> inputGroups,
+                        StreamingDuplicationPrinter confirmedGroups) {
+        if (confirmedGroups == null) {
+            return;
+        }
+
+        var inputGroup = inputGroups.remove(fileInfo);
+
+        if (inputGroup == null) {
+            return;
+        }
+
+        inputGroup.hashedFiles.add(fileInfo);
+
+        if (--inputGroup.numLeft == 0) {
+            confirm(inputGroup, confirmedGroups);
+        }
+    }
+
+    private void confirm(InputGroup inputGroup, StreamingDuplicationPrinter confirmedGroups) {
+        var groupsByHash = new DigestMap<List<FileInfo>>();
+
+        for (FileInfo file : inputGroup.hashedFiles) {
+            if (file.isValid()) {
+                groupsByHash.computeIfAbsent(file.hashHigh(), file.hashLow(), ArrayList::new).add(file);
+            }
+        }
+
+        for (List<FileInfo> group : groupsByHash.values()) {
+            if (group.size() > 1) {
+                confirmedGroups.printGroup(hashAlgorithm, group);
+            }
+        }
+    }
+
+    private static Map<FileInfo, InputGroup> inputGroups(PotentialDuplicateCollection potentialDuplicates) {
+        var result = new IdentityHashMap<FileInfo, InputGroup>();
+
+        for (List<FileInfo> files : potentialDuplicates.checkSums().values()) {
+            var inputGroup = new InputGroup(files.size());
+            files.forEach(fileInfo -> result.put(fileInfo, inputGroup));
+        }
+
+        return result;
+    }
+
+    /**
+     * Files that came out of the previous stage with the same hash, and how many of them are still being hashed.
+     */
+    private static class InputGroup {
+        private final List<FileInfo> hashedFiles = new ArrayList<>();
+        private int numLeft;
+
+        InputGroup(int numFiles) {
+            this.numLeft = numFiles;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.github.fippls.dupfinder.detection;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.ChunkIndex;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.Device;
+import com.github.fippls.dupfinder.file.PathWalker;
+import com.github.fippls.dupfinder.thread.TaskRunner;
+import com.github.fippls.dupfinder.thread.task.ChunkingCallable;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.PerformanceTimer;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how much space block-level deduplication would save, which also covers files that only share parts of their
+ * contents (VM images, rotated logs, versions of the same data set). All files above a minimum size are cut into
+ * content-defined chunks, and chunks that were seen before are counted as shared.
+ * Files are read by the same per-device read queues as the hash stages, and each file is chunked as it's read.
+ * @see Settings#chunkAnalysis
+ * @author github.com/fippls
+ */
+public class ChunkAnalyzer {
+    private final List<Path> paths;
+    private final ChunkIndex chunkIndex = new ChunkIndex();
+
+    public ChunkAnalyzer(List<Path> paths) {
+        this.paths = paths;
+    }
+
+    public void run() {
+        var files = new ArrayList<FileInfo>();
+
+        new PathWalker(paths).walk(fileInfo -> {
+            if (fileInfo.fileSize() >= Settings.chunkAnalysisMinFileSize) {
+                synchronized (files) {
+                    files.add(fileInfo);
+                }
+            }
+        });
+
+        long totalSize = files.stream().mapToLong(FileInfo::fileSize).sum();
+        Log.info("Chunk analysis received ", files.size(), " files to process: ", StringUtil.getFileSizeString(totalSize),
+                " (average chunk size ", StringUtil.getFileSizeString(Settings.averageChunkSize), ')');
+
+        // File ids are positions in the list, so each file is found again from the pairs in the index:
+        var idsPerDevice = new LinkedHashMap<Device, List<Integer>>();
+        IntStream.range(0, files.size()).forEach(id ->
+                idsPerDevice.computeIfAbsent(Device.of(files.get(id)), __ -> new ArrayList<>()).add(id));
+
+        var sources = new ArrayList<Iterator<ChunkingCallable>>();
+        idsPerDevice.values().forEach(ids -> sources.add(ids.stream()
+                .map(id -> new ChunkingCallable(files.get(id), id, chunkIndex))
+                .iterator()));
+
+        var timer = new PerformanceTimer();
+        new TaskRunner("File", files.size()).runAllPerDevice(sources, fileInfo -> { });
+        timer.stop();
+
+        printReport(files, timer.seconds());
+    }
+
+    private void printReport(List<FileInfo> files, double seconds) {
+        long totalBytes = chunkIndex.totalBytes();
+        long sharedBytes = totalBytes - chunkIndex.uniqueBytes();
+
+        Log.info("\nChunk analysis done after ", StringUtil.doubleToString1Decimal(seconds), " seconds");
+        Log.info("  Chunks: ", chunkIndex.numChunks(), " (", chunkIndex.numUniqueChunks(), " unique), average size ",
+                StringUtil.getFileSizeString(chunkIndex.numChunks() > 0 ? totalBytes / chunkIndex.numChunks() : 0));
+        Log.debug("  Chunk index: ", StringUtil.getFileSizeString(chunkIndex.allocatedBytes()));
+        Log.info("  Data read: ", StringUtil.getFileSizeString(totalBytes), ", stored once with block-level deduplication: ",
+                StringUtil.getFileSizeString(chunkIndex.uniqueBytes()));
+        Log.info("  Shared data that block-level deduplication would save: ", StringUtil.getFileSizeString(sharedBytes),
+                " (", StringUtil.doubleToString1Decimal(totalBytes > 0 ? 100.0 * sharedBytes / totalBytes : 0),
+                "% of the data)");
+
+        var topPairs = chunkIndex.topPairs(Settings.chunkAnalysisTopPairs);
+
+        if (topPairs.isEmpty()) {
+            return;
+        }
+
+        Log.info("\nFILE PAIRS THAT SHARE THE MOST DATA (", topPairs.size(), " of ", chunkIndex.numSharingPairs(),
+                " pairs):\n");
+
+        for (long[] pair : topPairs) {
+            var first = files.get((int) pair[0]);
+            var second = files.get((int) pair[1]);
+            Log.info("Shared: ", StringUtil.getFileSizeString(pair[2]), " (",
+                    StringUtil.doubleToString1Decimal(100.0 * pair[2] / Math.min(first.fileSize(), second.fileSize())),
+                    "% of the smaller file)");
+            Log.info("   ", StringUtil.quotePath(first.path()));
+            Log.info("   ", StringUtil.quotePath(second.path()));
+            Log.info();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.fippls.dupfinder.detection;
+
+import com.github.fippls.dupfinder.data.FullCheckMode;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.output.DuplicationPrinters;
+import com.github.fippls.dupfinder.detection.result.DuplicateIndex;
+import com.github.fippls.dupfinder.file.DirectoryWatcher;
+import com.github.fippls.dupfinder.file.HashCache;
+import com.github.fippls.dupfinder.file.PathWalker;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.PerformanceTimer;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps running after the first scan and keeps the duplicates up to date as files change.
+ * Changes are picked up from a {@link DirectoryWatcher}, and only size groups with changed files are checked again.
+ * Hashes of unchanged files are cached in memory, so checking a group again only reads the files that changed.
+ * All paths are walked again at regular intervals, and whenever events were lost, to catch changes that were missed.
+ * Changes in directories that can't be watched are only found by the walks at regular intervals.
+ * @see Settings#daemon
+ * @author github.com/fippls
+ */
+public class DuplicateFinderDaemon {
+    private final List<Path> paths;
+    private final DuplicateIndex index = new DuplicateIndex();
+    private final DirectoryWatcher watcher;
+
+    public DuplicateFinderDaemon(List<Path> paths) throws IOException {
+        this.paths = paths;
+        this.watcher = new DirectoryWatcher();
+    }
+
+    /**
+     * Runs until the program is stopped.
+     */
+    public void run() throws InterruptedException {
+        HashCache.enableInMemory();
+        walkAll();
+        long nextReconciliation = nextReconciliation();
+
+        while (true) {
+            var changedPaths = watcher.awaitChanges(
+                    Math.max(1, nextReconciliation - System.currentTimeMillis()), Settings.daemonSettleMilliseconds);
+
+            if (!changedPaths.isEmpty()) {
+                Log.info("\nChanges reported for ", changedPaths.size(), " paths");
+                changedPaths.forEach(this::update);
+            }
+
+            if (watcher.takeEventsLost() || System.currentTimeMillis() >= nextReconciliation) {
+                walkAll();
+                nextReconciliation = nextReconciliation();
+            }
+            else if (index.hasChanges()) {
+                checkChangedGroups();
+            }
+        }
+    }
+
+    /**
+     * Walks all paths, adds new and changed files and removes files that no longer exist.
+     */
+    private void walkAll() {
+        Log.info("\nWalking all paths to bring the index up to date...");
+        var existingPaths = new HashSet<Path>();
+
+        new PathWalker(paths).walk(fileInfo -> {
+            synchronized (existingPaths) {
+                existingPaths.add(fileInfo.path());
+                existingPaths.addAll(fileInfo.links());
+                index.add(fileInfo);
+            }
+        }, watcher::register);
+
+        int numRemoved = index.retainOnly(existingPaths);
+        Log.info("Index: ", index.numFiles(), " files (", numRemoved, " removed), watching ",
+                watcher.numWatchedDirectories(), " directories",
+                watcher.numUnwatchedDirectories() > 0 ? " (" + watcher.numUnwatchedDirectories() + " can't be watched)" : "");
+        checkChangedGroups();
+        HashCache.instance().save(paths);
+    }
+
+    /**
+     * Checks a path that was reported as changed, which can be a file or a directory that was created, modified or deleted.
+     */
+    private void update(Path path) {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            index.removeBelow(path);
+            return;
+        }
+
+        // Walking a single file just visits that file, a new directory is watched and walked:
+        new PathWalker(List.of(path), false).walk(index::add, watcher::register);
+    }
+
+    private void checkChangedGroups() {
+        if (!index.hasChanges()) {
+            return;
+        }
+
+        var timer = new PerformanceTimer();
+        var changedGroups = index.takeChangedGroups();
+
+        if (changedGroups.numTotalFiles() > 0) {
+            index.addDuplicates(HashStageRunner.scan(changedGroups));
+        }
+
+        timer.stop();
+        var duplicates = index.duplicates(
+                Settings.fullCheckMode == FullCheckMode.COMPARE ? null : Settings.fullHashAlgorithm);
+
+        DuplicationPrinters.create().printDuplicates(duplicates);
+        Log.info("\nUpdated after ", StringUtil.doubleToString1Decimal(timer.seconds()), " seconds (",
+                changedGroups.numTotalFiles(), " files checked), ", duplicates.numDuplicatedFiles(),
+                " duplicated files (", StringUtil.getFileSizeString(duplicates.totalDuplicatedSize()), ')');
+    }
+
+    private static long nextReconciliation() {
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Settings.reconciliationIntervalSeconds);
+    }
+}
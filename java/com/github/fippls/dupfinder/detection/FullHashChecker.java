@@ -1,16 +1,19 @@
 package com.github.fippls.dupfinder.detection;
 
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
 import com.github.fippls.dupfinder.thread.task.AbstractHashCallable;
 import com.github.fippls.dupfinder.thread.task.FullHashCallable;
 
 /**
- * Calculate MD5 sum of an entire file.
+ * Calculate hash sum of an entire file.
+ * @see Settings#fullHashAlgorithm Hash algorithm used by this class.
  * @author github.com/fippls
  */
 public class FullHashChecker extends AbstractHashChecker {
     public FullHashChecker() {
-        super("Full MD5 hash check", false);
+        super("Full hash check", HashStage.full(), Settings.fullHashAlgorithm, false);
     }
 
     @Override
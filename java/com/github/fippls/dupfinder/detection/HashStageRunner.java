@@ -0,0 +1,82 @@
+package com.github.fippls.dupfinder.detection;
+
+import com.github.fippls.dupfinder.data.FullCheckMode;
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.output.StreamingDuplicationPrinter;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.file.Device;
+import com.github.fippls.dupfinder.thread.TaskRunner;
+import com.github.fippls.dupfinder.thread.task.FullHashCallable;
+import com.github.fippls.dupfinder.thread.task.SimpleHashCallable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Runs all hash stages, one after the other, on files that have been grouped by size.
+ * @see Settings#hashStages
+ * @author github.com/fippls
+ */
+public class HashStageRunner {
+    private HashStageRunner() {
+        // Only static access
+    }
+
+    /**
+     * @return The files that are duplicates of each other, grouped by their final hash.
+     */
+    public static PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates) {
+        return scan(potentialDuplicates, null);
+    }
+
+    /**
+     * @param confirmedGroups Receives each group of duplicates as soon as the final stage has confirmed it, or null.
+     * @return The files that are duplicates of each other, grouped by their final hash.
+     */
+    public static PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates,
+                                                    StreamingDuplicationPrinter confirmedGroups) {
+        // Run quick hash scans on parts of the files first to see if there are any potential duplicates to leave out,
+        // then run a full hash scan on all remaining files to identify the actual duplicates:
+        for (HashStage stage : Settings.hashStages) {
+            if (stage.isFull() && Settings.fullCheckMode == FullCheckMode.COMPARE) {
+                potentialDuplicates = new LockstepComparisonChecker().scan(potentialDuplicates, confirmedGroups);
+                continue;
+            }
+
+            var checker = stage.isFull() ? new FullHashChecker() : new SimpleHashChecker(stage);
+            potentialDuplicates = checker.scan(potentialDuplicates, stage.isFull() ? confirmedGroups : null);
+        }
+
+        return potentialDuplicates;
+    }
+
+    /**
+     * Hashes a list of files for one stage, without grouping them, for example files that other hosts asked for.
+     * The hashes are set on the files themselves, files that couldn't be hashed get an error.
+     */
+    public static void hashAll(HashStage stage, List<FileInfo> files) {
+        var filesPerDevice = new LinkedHashMap<Device, List<FileInfo>>();
+        files.forEach(fileInfo -> filesPerDevice.computeIfAbsent(Device.of(fileInfo), __ -> new ArrayList<>()).add(fileInfo));
+
+        var sources = new ArrayList<Iterator<SimpleHashCallable>>();
+        filesPerDevice.values().forEach(deviceFiles -> sources.add(deviceFiles.stream()
+                .map(fileInfo -> stage.isFull() ? new FullHashCallable(fileInfo) : new SimpleHashCallable(fileInfo, stage))
+                .iterator()));
+
+        // Files without a result had a task that failed:
+        var hashedFiles = Collections.newSetFromMap(new IdentityHashMap<FileInfo, Boolean>());
+        new TaskRunner("Task", files.size()).runAllPerDevice(sources, hashedFiles::add);
+
+        for (FileInfo fileInfo : files) {
+            if (!hashedFiles.contains(fileInfo) && !fileInfo.hasError()) {
+                fileInfo.setError("hashing failed");
+            }
+        }
+    }
+}
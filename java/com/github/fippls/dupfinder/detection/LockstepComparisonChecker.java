@@ -0,0 +1,89 @@
+package com.github.fippls.dupfinder.detection;
+
+import com.github.fippls.dupfinder.detection.output.StreamingDuplicationPrinter;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.file.Device;
+import com.github.fippls.dupfinder.thread.TaskRunner;
+import com.github.fippls.dupfinder.thread.task.LockstepComparisonCallable;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Final check that compares the contents of all potential duplicates byte by byte instead of hashing them.
+ * Each group of potential duplicates is compared as one task, so files stop being read as soon as they are unique.
+ * @see com.github.fippls.dupfinder.data.FullCheckMode#COMPARE
+ * @author github.com/fippls
+ */
+public class LockstepComparisonChecker {
+    private static final String NAME = "Full byte comparison";
+
+    public PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates) {
+        return scan(potentialDuplicates, null);
+    }
+
+    /**
+     * @param confirmedGroups Receives each set of identical files as soon as its group has been compared, or null.
+     */
+    public PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates,
+                                             StreamingDuplicationPrinter confirmedGroups) {
+        Log.info(NAME, " received ", potentialDuplicates.numTotalFiles(), " files to process: ",
+                StringUtil.getFileSizeString(potentialDuplicates.totalSize()));
+
+        var duplicates = new PotentialDuplicateCollection(NAME);
+        var groups = splitBySize(potentialDuplicates.checkSums().values());
+        var groupsPerDevice = new LinkedHashMap<Device, List<List<FileInfo>>>();
+        groups.forEach(group -> groupsPerDevice.computeIfAbsent(Device.of(group.get(0)), __ -> new ArrayList<>()).add(group));
+
+        var sources = new ArrayList<Iterator<LockstepComparisonCallable>>();
+        groupsPerDevice.values().forEach(deviceGroups ->
+                sources.add(deviceGroups.stream().map(LockstepComparisonCallable::new).iterator()));
+
+        // Identical files have no hash, give each set of identical files its own group number instead:
+        long[] groupId = { 0 };
+
+        new TaskRunner("Group", groups.size()).runAllPerDevice(sources, identicalSets -> {
+            for (List<FileInfo> identicalFiles : identicalSets) {
+                groupId[0]++;
+
+                for (FileInfo fileInfo : identicalFiles) {
+                    fileInfo.setComparisonGroup(groupId[0]);
+                    duplicates.add(fileInfo);
+                }
+
+                if (confirmedGroups != null) {
+                    confirmedGroups.printGroup(null, identicalFiles);
+                }
+            }
+        });
+
+        return duplicates.resolve(false);
+    }
+
+    /**
+     * Only files of the same size can be identical. The hash stages already keep files of different sizes apart, this
+     * makes sure that every compared group has one size whichever collection it came from.
+     */
+    private static List<List<FileInfo>> splitBySize(Collection<List<FileInfo>> groups) {
+        var result = new ArrayList<List<FileInfo>>(groups.size());
+
+        for (List<FileInfo> group : groups) {
+            var filesBySize = new LinkedHashMap<Long, List<FileInfo>>();
+            group.forEach(fileInfo -> filesBySize.computeIfAbsent(fileInfo.fileSize(), __ -> new ArrayList<>()).add(fileInfo));
+
+            for (List<FileInfo> sameSize : filesBySize.values()) {
+                if (sameSize.size() >= 2) {
+                    result.add(sameSize);
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.fippls.dupfinder.detection;
+
+import com.github.fippls.dupfinder.data.FullCheckMode;
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.DigestMap;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.file.PathWalker;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.thread.TaskRunner;
+import com.github.fippls.dupfinder.thread.task.FullHashCallable;
+import com.github.fippls.dupfinder.thread.task.SimpleHashCallable;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the directory walk and the hash stages at the same time, instead of finishing each step before the next starts.
+ * A size group is hashed as soon as a second file of that size is found, and files move on to the next stage as soon as
+ * another file shares their hash. Files that arrive in a group that has already moved on are hashed on their own.
+ * @see Settings#pipelined
+ * @author github.com/fippls
+ */
+public class PipelinedDuplicateFinder {
+    private final PathWalker pathWalker;
+    /** Stages run in the pipeline, the full stage is left out when it's done by byte comparison */
+    private final List<HashStage> stages;
+    /** Level 0 groups files by size, level N by size and the hash of stage N-1 */
+    private final List<Level> levels = new ArrayList<>();
+    private final TaskRunner taskRunner = new TaskRunner("Task", TaskRunner.UNKNOWN);
+
+    public PipelinedDuplicateFinder(PathWalker pathWalker) {
+        this.pathWalker = pathWalker;
+        this.stages = new ArrayList<>(Settings.hashStages);
+
+        if (Settings.fullCheckMode == FullCheckMode.COMPARE) {
+            stages.remove(stages.size() - 1);
+        }
+
+        levels.add(new Level("File size-based check", null));
+
+        for (HashStage stage : stages) {
+            var hashAlgorithm = stage.isFull() ? Settings.fullHashAlgorithm : Settings.partialHashAlgorithm;
+            levels.add(new Level("Pipelined hash check, " + stage + " (" + hashAlgorithm.name() + ')', hashAlgorithm));
+        }
+    }
+
+    public PotentialDuplicateCollection find() {
+        pathWalker.walk(fileInfo -> add(0, fileInfo));
+        Log.info("File search done, waiting for ", taskRunner.numPending(), " remaining hash tasks...");
+        taskRunner.awaitCompletion();
+
+        for (Level level : levels.subList(1, levels.size())) {
+            Log.debug("  ", level.name, ": ", level.numFilesHashed.sum(), " files hashed, ",
+                    level.numPotentialDuplicates(), " still potential duplicates");
+        }
+
+        var potentialDuplicates = levels.get(levels.size() - 1).toCollection();
+
+        if (Settings.fullCheckMode == FullCheckMode.COMPARE) {
+            return new LockstepComparisonChecker().scan(potentialDuplicates);
+        }
+
+        return potentialDuplicates;
+    }
+
+    /**
+     * Adds a file to a level, and passes it on to the next stage if another file in the level has the same hash.
+     * Called from walker threads for level 0, the walker waits if too many tasks are in flight. The other levels are
+     * called with the result of a hash task, and their follow-up tasks are submitted without waiting.
+     */
+    private void add(int levelIndex, FileInfo fileInfo) {
+        if (!fileInfo.isValid()) {
+            return;
+        }
+
+        var level = levels.get(levelIndex);
+        List<FileInfo> filesForNextStage;
+
+        synchronized (level) {
+            var group = PotentialDuplicateCollection.groupOf(level.groups, fileInfo);
+            group.add(fileInfo);
+
+            if (levelIndex == levels.size() - 1 || group.size() < 2) {
+                return;
+            }
+
+            // The first file of the group has been waiting for company, send it along with the second one:
+            filesForNextStage = group.size() == 2 ? List.copyOf(group) : List.of(fileInfo);
+        }
+
+        for (FileInfo file : filesForNextStage) {
+            submit(levelIndex + 1, file);
+        }
+    }
+
+    private void submit(int levelIndex, FileInfo fileInfo) {
+        var stage = stages.get(levelIndex - 1);
+        var callable = stage.isFull() ? new FullHashCallable(fileInfo) : new SimpleHashCallable(fileInfo, stage);
+
+        if (levelIndex == 1) {
+            taskRunner.submit(callable, result -> addHashed(levelIndex, result));
+        }
+        else {
+            taskRunner.submitFollowUp(callable, result -> addHashed(levelIndex, result));
+        }
+    }
+
+    private void addHashed(int levelIndex, FileInfo fileInfo) {
+        levels.get(levelIndex).numFilesHashed.increment();
+        add(levelIndex, fileInfo);
+    }
+
+    /**
+     * Files grouped by size and the checksum of one stage.
+     */
+    private static class Level {
+        private final String name;
+        private final HashAlgorithm hashAlgorithm;
+        private final DigestMap<List<FileInfo>> groups = new DigestMap<>();
+        private final LongAdder numFilesHashed = new LongAdder();
+
+        Level(String name, HashAlgorithm hashAlgorithm) {
+            this.name = name;
+            this.hashAlgorithm = hashAlgorithm;
+        }
+
+        synchronized long numPotentialDuplicates() {
+            long total = 0;
+
+            for (List<FileInfo> group : groups.values()) {
+                total += group.size() < 2 ? 0 : group.size();
+            }
+
+            return total;
+        }
+
+        synchronized PotentialDuplicateCollection toCollection() {
+            var collection = new PotentialDuplicateCollection(name, hashAlgorithm);
+            groups.values().forEach(group -> group.forEach(collection::add));
+            return collection.resolve(false);
+        }
+    }
+}
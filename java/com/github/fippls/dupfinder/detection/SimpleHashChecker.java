@@ -1,21 +1,27 @@
 package com.github.fippls.dupfinder.detection;
 
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
 import com.github.fippls.dupfinder.thread.task.AbstractHashCallable;
 import com.github.fippls.dupfinder.thread.task.SimpleHashCallable;
 
 /**
- * Calculate MD5 for parts of a file (or the full file if it's smaller than the hash size).
- * @see com.github.fippls.dupfinder.data.Settings#numBytesForShortMD5Check Hash size used by this class.
+ * Calculate hash for parts of a file (or the full file if it's smaller than the parts to hash).
+ * @see Settings#hashStages Parts of the file used by each instance of this class.
+ * @see Settings#partialHashAlgorithm Hash algorithm used by this class.
  * @author github.com/fippls
  */
 public class SimpleHashChecker extends AbstractHashChecker {
-    public SimpleHashChecker() {
-        super("Simple MD5 hash check", true);
+    private final HashStage stage;
+
+    public SimpleHashChecker(HashStage stage) {
+        super("Simple hash check, " + stage, stage, Settings.partialHashAlgorithm, true);
+        this.stage = stage;
     }
 
     @Override
     protected AbstractHashCallable createCallable(FileInfo fileInfo) {
-        return new SimpleHashCallable(fileInfo);
+        return new SimpleHashCallable(fileInfo, stage);
     }
 }
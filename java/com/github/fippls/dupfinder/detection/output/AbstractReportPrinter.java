@@ -0,0 +1,120 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Streams groups of duplicates to a report file. The report is written to a temporary file first and moved in place
+ * when it's complete, so a report that is there is never half-written, also when it's rewritten in daemon mode.
+ * @see Settings#reportFile
+ * @author github.com/fippls
+ */
+abstract class AbstractReportPrinter implements StreamingDuplicationPrinter {
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final Path reportFile;
+    private final Path tempFile;
+    private OutputStream out;
+    private long numGroups;
+    private long totalSavings;
+
+    AbstractReportPrinter(Path reportFile) {
+        this.reportFile = reportFile;
+        this.tempFile = reportFile.resolveSibling(reportFile.getFileName() + ".tmp");
+    }
+
+    @Override
+    public void start() {
+        numGroups = 0;
+        totalSavings = 0;
+
+        try {
+            out = new BufferedOutputStream(Files.newOutputStream(tempFile), STREAM_BUFFER_SIZE);
+            writeHeader(out);
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    @Override
+    public void printGroup(HashAlgorithm algorithm, List<FileInfo> files) {
+        if (out == null || files.size() < Settings.minimumCopyCount) {
+            return;
+        }
+
+        numGroups++;
+        totalSavings += savings(files);
+
+        try {
+            writeGroup(out, numGroups, algorithm, files);
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            writeFooter(out);
+            out.close();
+            out = null;
+            Files.move(tempFile, reportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Log.info("Report: ", numGroups, " groups of duplicates written to ", reportFile, " (",
+                    StringUtil.getFileSizeString(totalSavings), " can be freed)");
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    protected abstract void writeHeader(OutputStream out) throws IOException;
+
+    /**
+     * @param groupId Number of the group in this report, starting at 1.
+     */
+    protected abstract void writeGroup(OutputStream out, long groupId, HashAlgorithm algorithm, List<FileInfo> files)
+            throws IOException;
+
+    protected abstract void writeFooter(OutputStream out) throws IOException;
+
+    /**
+     * Space that is freed by keeping only one of the files, hard links don't take any space of their own.
+     */
+    static long savings(List<FileInfo> files) {
+        return files.get(0).fileSize() * (files.size() - 1);
+    }
+
+    private void writeFailed(IOException e) {
+        Log.error("Unable to write report ", reportFile, ": ", e.getMessage());
+
+        try {
+            if (out != null) {
+                out.close();
+            }
+
+            Files.deleteIfExists(tempFile);
+        }
+        catch (IOException closeException) {
+            // Already reported the first error
+        }
+
+        out = null;
+    }
+}
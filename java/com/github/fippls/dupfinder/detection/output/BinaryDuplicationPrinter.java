@@ -0,0 +1,70 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes groups of duplicates as compact binary records, in the format of {@link DataOutputStream}:
+ * <pre>
+ *   int magic ("DFDR"), int version
+ *   for each group:
+ *     byte 1, UTF algorithm (empty if compared byte by byte), long hash high, long hash low, long file size,
+ *     int number of files, and for each file: UTF path, int number of links, UTF link for each link
+ *   byte 0 at the end, a report without it is incomplete
+ * </pre>
+ * @author github.com/fippls
+ */
+public class BinaryDuplicationPrinter extends AbstractReportPrinter {
+    private static final int MAGIC = 0x44464452;        // "DFDR"
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    private static final byte RECORD_GROUP = 1;
+    private static final byte RECORD_END = 0;
+
+    private DataOutputStream data;
+
+    public BinaryDuplicationPrinter(Path reportFile) {
+        super(reportFile);
+    }
+
+    @Override
+    protected void writeHeader(OutputStream out) throws IOException {
+        data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FILE_FORMAT_VERSION);
+    }
+
+    @Override
+    protected void writeGroup(OutputStream out, long groupId, HashAlgorithm algorithm, List<FileInfo> files)
+            throws IOException {
+        var first = files.get(0);
+        data.writeByte(RECORD_GROUP);
+        data.writeUTF(algorithm != null ? algorithm.name() : "");
+        data.writeLong(first.hashHigh());
+        data.writeLong(first.hashLow());
+        data.writeLong(first.fileSize());
+        data.writeInt(files.size());
+
+        for (FileInfo file : files) {
+            data.writeUTF(file.path().toString());
+            var links = file.links();
+            data.writeInt(links.size());
+
+            for (Path link : links) {
+                data.writeUTF(link.toString());
+            }
+        }
+    }
+
+    @Override
+    protected void writeFooter(OutputStream out) throws IOException {
+        data.writeByte(RECORD_END);
+        data.flush();
+    }
+}
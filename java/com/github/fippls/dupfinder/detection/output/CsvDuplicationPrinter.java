@@ -0,0 +1,60 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes one row per path, hard links get a row of their own with the path of the file they link to.
+ * Columns: group, algorithm, hash, file_size, path, hard_link_of. Values are quoted as described in RFC 4180.
+ * Hashes of algorithms with digests longer than 128 bits are their first 128 bits,
+ * see {@link HashAlgorithm#isTruncated()}.
+ * @author github.com/fippls
+ */
+public class CsvDuplicationPrinter extends AbstractReportPrinter {
+    public CsvDuplicationPrinter(Path reportFile) {
+        super(reportFile);
+    }
+
+    @Override
+    protected void writeHeader(OutputStream out) throws IOException {
+        out.write("group,algorithm,hash,file_size,path,hard_link_of\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected void writeGroup(OutputStream out, long groupId, HashAlgorithm algorithm, List<FileInfo> files)
+            throws IOException {
+        var prefix = groupId + "," + (algorithm != null ? algorithm.name() + ',' + files.get(0).hashString() : ",") +
+                ',' + files.get(0).fileSize() + ',';
+        var rows = new StringBuilder();
+
+        for (FileInfo file : files) {
+            var path = quote(file.path().toString());
+            rows.append(prefix).append(path).append(",\n");
+
+            for (Path link : file.links()) {
+                rows.append(prefix).append(quote(link.toString())).append(',').append(path).append('\n');
+            }
+        }
+
+        out.write(rows.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected void writeFooter(OutputStream out) {
+        // Nothing after the last row
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Creates the printers that were chosen in the settings.
+ * @author github.com/fippls
+ */
+public class DuplicationPrinters {
+    private DuplicationPrinters() {
+        // Util class
+    }
+
+    /**
+     * The report file and the top groups, whichever are enabled, empty if the duplicates are only displayed at the end.
+     * @see Settings#reportFile
+     * @see Settings#topDuplicateGroups
+     */
+    public static Optional<StreamingDuplicationPrinter> streaming() {
+        var printers = new ArrayList<StreamingDuplicationPrinter>();
+
+        if (Settings.reportFile != null) {
+            printers.add(reportPrinter());
+        }
+
+        if (Settings.topDuplicateGroups > 0) {
+            printers.add(new TopSavingsDuplicationPrinter(Settings.topDuplicateGroups));
+        }
+
+        if (printers.isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(printers.size() == 1 ? printers.get(0) : new CombinedPrinter(printers));
+    }
+
+    /**
+     * The streaming printers if any are enabled, otherwise all duplicates are displayed sorted by size.
+     */
+    public static FileDuplicationPrinter create() {
+        return streaming().map(FileDuplicationPrinter.class::cast).orElseGet(FileSizeBasedDuplicationPrinter::new);
+    }
+
+    private static StreamingDuplicationPrinter reportPrinter() {
+        switch (Settings.reportFormat) {
+            case CSV:
+                return new CsvDuplicationPrinter(Settings.reportFile);
+
+            case BINARY:
+                return new BinaryDuplicationPrinter(Settings.reportFile);
+
+            default:
+                return new JsonLinesDuplicationPrinter(Settings.reportFile);
+        }
+    }
+
+    private static class CombinedPrinter implements StreamingDuplicationPrinter {
+        private final List<StreamingDuplicationPrinter> printers;
+
+        CombinedPrinter(List<StreamingDuplicationPrinter> printers) {
+            this.printers = printers;
+        }
+
+        @Override
+        public void start() {
+            printers.forEach(StreamingDuplicationPrinter::start);
+        }
+
+        @Override
+        public void printGroup(HashAlgorithm algorithm, List<FileInfo> files) {
+            printers.forEach(printer -> printer.printGroup(algorithm, files));
+        }
+
+        @Override
+        public void finish() {
+            printers.forEach(StreamingDuplicationPrinter::finish);
+        }
+    }
+}
@@ -3,13 +3,14 @@ package com.github.fippls.dupfinder.detection.output;
 import com.github.fippls.dupfinder.data.Settings;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
 import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
 import com.github.fippls.dupfinder.util.Log;
 import com.github.fippls.dupfinder.util.StringUtil;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Display duplicated files according to total duplication size, largest files last.
@@ -27,32 +28,48 @@ public class FileSizeBasedDuplicationPrinter implements FileDuplicationPrinter {
 
         Log.info("\nDUPLICATED FILES FOUND (sorted by total duplication size):\n");
 
-        var sizeToHashes = new HashMap<Long, Map<String, List<FileInfo>>>();
+        var sizeToHashes = new HashMap<Long, List<List<FileInfo>>>();
 
-        for (var entry : checkSums.entrySet()) {
-            var sizeOfOneFile = entry.getValue().get(0).fileSize();
-            var sizeOfAllDuplicates = sizeOfOneFile * entry.getValue().size() - 1;
+        for (var files : checkSums.values()) {
+            var sizeOfOneFile = files.get(0).fileSize();
+            var sizeOfAllDuplicates = sizeOfOneFile * files.size() - 1;
 
             // The key in the map is the total size of the duplicated files:
             sizeToHashes.computeIfAbsent(sizeOfAllDuplicates,
-                    __ -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+                    __ -> new ArrayList<>()).add(files);
         }
 
+        var algorithm = duplicates.hashAlgorithm().orElse(null);
+
         sizeToHashes.keySet().stream()
                 .sorted(Comparator.naturalOrder())
                 .forEach(size -> sizeToHashes.get(size)
-                        .forEach(this::printDuplicates));
+                        .forEach(files -> printGroup(algorithm, files)));
     }
 
-    private void printDuplicates(String hash, List<FileInfo> files) {
+    /**
+     * Prints one group of duplicates, if it has at least {@link Settings#minimumCopyCount} files.
+     * @param algorithm Null if the files were compared byte by byte instead of hashed.
+     */
+    static void printGroup(HashAlgorithm algorithm, List<FileInfo> files) {
         var sizeOfOneFile = files.get(0).fileSize();
         var sizeOfAllDuplicates = sizeOfOneFile * (files.size() - 1);
 
         if (files.size() >= Settings.minimumCopyCount) {
-            Log.info("Files with MD5 hash ", hash, ", size per file: ", StringUtil.getFileSizeString(sizeOfOneFile),
+            var description = algorithm != null ? "Files with " + algorithm.name() + " hash " +
+                    (algorithm.isTruncated() ? "(first 128 bits) " : "") + files.get(0).hashString() :
+                    "Identical files";
+
+            Log.info(description, ", size per file: ", StringUtil.getFileSizeString(sizeOfOneFile),
                     ", total size of duplicates: ", StringUtil.getFileSizeString(sizeOfAllDuplicates));
 
-            files.forEach(file -> Log.info("   ", StringUtil.quotePath(file.path())));
+            for (FileInfo file : files) {
+                Log.info("   ", StringUtil.quotePath(file.path()));
+
+                // Hard links share the same data, removing them doesn't free any space:
+                file.links().forEach(link -> Log.info("      hard link: ", StringUtil.quotePath(link)));
+            }
+
             Log.info();
         }
     }
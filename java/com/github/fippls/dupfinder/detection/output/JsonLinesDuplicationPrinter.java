@@ -0,0 +1,86 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes one JSON object per group of duplicates and line, for example:
+ * {"group":1,"algorithm":"MD5","hash":"...","fileSize":1024,"savings":1024,"files":[{"path":"a","links":[]},...]}
+ * Groups that were compared byte by byte have no algorithm and hash.
+ * Hashes of algorithms with digests longer than 128 bits are their first 128 bits,
+ * see {@link HashAlgorithm#isTruncated()}.
+ * @author github.com/fippls
+ */
+public class JsonLinesDuplicationPrinter extends AbstractReportPrinter {
+    public JsonLinesDuplicationPrinter(Path reportFile) {
+        super(reportFile);
+    }
+
+    @Override
+    protected void writeHeader(OutputStream out) {
+        // Every line stands on its own
+    }
+
+    @Override
+    protected void writeGroup(OutputStream out, long groupId, HashAlgorithm algorithm, List<FileInfo> files)
+            throws IOException {
+        var line = new StringBuilder("{\"group\":").append(groupId);
+
+        if (algorithm != null) {
+            line.append(",\"algorithm\":");
+            appendString(line, algorithm.name());
+            line.append(",\"hash\":\"").append(files.get(0).hashString()).append('"');
+        }
+
+        line.append(",\"fileSize\":").append(files.get(0).fileSize())
+                .append(",\"savings\":").append(savings(files))
+                .append(",\"files\":[");
+
+        for (int i = 0; i < files.size(); i++) {
+            line.append(i > 0 ? ",{\"path\":" : "{\"path\":");
+            appendString(line, files.get(i).path().toString());
+            line.append(",\"links\":[");
+            var links = files.get(i).links();
+
+            for (int j = 0; j < links.size(); j++) {
+                line.append(j > 0 ? "," : "");
+                appendString(line, links.get(j).toString());
+            }
+
+            line.append("]}");
+        }
+
+        out.write(line.append("]}\n").toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected void writeFooter(OutputStream out) {
+        // Every line stands on its own
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                line.append(c);
+            }
+        }
+
+        line.append('"');
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+
+import java.util.List;
+
+/**
+ * Prints groups of duplicates one at a time, as soon as each group is confirmed, instead of all of them at the end.
+ * Nothing is copied or sorted, so memory use doesn't grow with the number of groups.
+ * Methods are called one at a time, but not always from the same thread.
+ * @author github.com/fippls
+ */
+public interface StreamingDuplicationPrinter extends FileDuplicationPrinter {
+    /**
+     * Called before the first group.
+     */
+    void start();
+
+    /**
+     * @param algorithm Null if the files were compared byte by byte instead of hashed.
+     * @param files Files that are identical, at least two.
+     */
+    void printGroup(HashAlgorithm algorithm, List<FileInfo> files);
+
+    /**
+     * Called after the last group.
+     */
+    void finish();
+
+    @Override
+    default void printDuplicates(PotentialDuplicateCollection duplicates) {
+        var algorithm = duplicates.hashAlgorithm().orElse(null);
+        start();
+
+        for (List<FileInfo> files : duplicates.checkSums().values()) {
+            printGroup(algorithm, files);
+        }
+
+        finish();
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.fippls.dupfinder.detection.output;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Displays only the groups of duplicates that free the most space, largest savings first.
+ * Groups are kept in a heap that never holds more than the requested number of groups, the group with the smallest
+ * savings is on top and is pushed out when a larger one comes along. So memory use doesn't depend on the number of
+ * groups, and nothing is sorted except the groups that are displayed.
+ * @see Settings#topDuplicateGroups
+ * @author github.com/fippls
+ */
+public class TopSavingsDuplicationPrinter implements StreamingDuplicationPrinter {
+    private static final Comparator<List<FileInfo>> BY_SAVINGS = Comparator.comparingLong(AbstractReportPrinter::savings);
+
+    private final int maxGroups;
+    private final PriorityQueue<List<FileInfo>> largestGroups;
+    private HashAlgorithm algorithm;
+    private long numGroups;
+
+    public TopSavingsDuplicationPrinter(int maxGroups) {
+        this.maxGroups = maxGroups;
+        this.largestGroups = new PriorityQueue<>(maxGroups, BY_SAVINGS);
+    }
+
+    @Override
+    public void start() {
+        largestGroups.clear();
+        numGroups = 0;
+    }
+
+    @Override
+    public void printGroup(HashAlgorithm algorithm, List<FileInfo> files) {
+        if (files.size() < Settings.minimumCopyCount) {
+            return;
+        }
+
+        this.algorithm = algorithm;
+        numGroups++;
+
+        if (largestGroups.size() < maxGroups) {
+            largestGroups.add(files);
+        }
+        else if (BY_SAVINGS.compare(files, largestGroups.peek()) > 0) {
+            largestGroups.poll();
+            largestGroups.add(files);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (largestGroups.isEmpty()) {
+            return;
+        }
+
+        Log.info("\nDUPLICATED FILES FOUND (", largestGroups.size(), " of ", numGroups,
+                " groups that free the most space, largest first):\n");
+
+        var groups = new ArrayList<List<FileInfo>>(largestGroups.size());
+
+        while (!largestGroups.isEmpty()) {
+            groups.add(largestGroups.poll());
+        }
+
+        Collections.reverse(groups);
+        groups.forEach(files -> FileSizeBasedDuplicationPrinter.printGroup(algorithm, files));
+    }
+}
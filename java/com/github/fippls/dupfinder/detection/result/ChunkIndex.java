@@ -0,0 +1,190 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Fingerprints of all chunks that were seen, to find out how much data would be stored only once with block-level
+ * deduplication. The table uses open addressing with primitive columns, about 32 bytes per unique chunk.
+ * A chunk that was seen before counts as shared between its file and the first file that had it, so the shared bytes
+ * per pair of files are a lower bound when a region is in more than two files. Chunks that repeat within one file are
+ * counted as savings, but not for any pair.
+ * Thread-safe. Chunks are added through a {@link Batch} for each file, so the index is locked once per batch instead of
+ * once per chunk.
+ * @author github.com/fippls
+ */
+public class ChunkIndex {
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    /** Length of the chunk in each slot, 0 for empty slots */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    /** Id of the first file that had the chunk */
+    private int[] owners = new int[INITIAL_CAPACITY];
+    private int numUniqueChunks = 0;
+
+    private long numChunks = 0;
+    private long totalBytes = 0;
+    private long uniqueBytes = 0;
+    /** Shared bytes by pair of file ids, the lower id in the high 32 bits */
+    private final Map<Long, Long> sharedBytesByPair = new HashMap<>();
+
+    /**
+     * Collects the chunks of one file, to be added with {@link Batch#flush()} once the file has been read.
+     */
+    public Batch batch(int fileId) {
+        return new Batch(fileId);
+    }
+
+    private synchronized void addAll(int fileId, long[] fingerprints, int[] lengths, int numChunks) {
+        for (int i = 0; i < numChunks; i++) {
+            add(fileId, fingerprints[i], lengths[i]);
+        }
+    }
+
+    private void add(int fileId, long fingerprint, int length) {
+        numChunks++;
+        totalBytes += length;
+        int slot = find(fingerprint, length);
+
+        if (lengths[slot] == 0) {
+            fingerprints[slot] = fingerprint;
+            lengths[slot] = length;
+            owners[slot] = fileId;
+            uniqueBytes += length;
+
+            if (++numUniqueChunks * 4L > fingerprints.length * 3L) {
+                grow();
+            }
+
+            return;
+        }
+
+        int owner = owners[slot];
+
+        if (owner != fileId) {
+            long pair = ((long) Math.min(owner, fileId) << 32) | Math.max(owner, fileId);
+            sharedBytesByPair.merge(pair, (long) length, Long::sum);
+        }
+    }
+
+    public synchronized long numChunks() {
+        return numChunks;
+    }
+
+    public synchronized int numUniqueChunks() {
+        return numUniqueChunks;
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Bytes that would be stored with block-level deduplication.
+     */
+    public synchronized long uniqueBytes() {
+        return uniqueBytes;
+    }
+
+    public synchronized long allocatedBytes() {
+        return fingerprints.length * (long) (Long.BYTES + 2 * Integer.BYTES);
+    }
+
+    /**
+     * The pairs of files that share the most bytes, the most first.
+     * @return File ids and shared bytes as {first file, second file, bytes}.
+     */
+    public synchronized List<long[]> topPairs(int maxPairs) {
+        var largestPairs = new PriorityQueue<long[]>(Comparator.comparingLong(pair -> pair[2]));
+
+        sharedBytesByPair.forEach((pair, bytes) -> {
+            if (largestPairs.size() < maxPairs) {
+                largestPairs.add(new long[] { pair >>> 32, pair & 0xffffffffL, bytes });
+            }
+            else if (bytes > largestPairs.peek()[2]) {
+                largestPairs.poll();
+                largestPairs.add(new long[] { pair >>> 32, pair & 0xffffffffL, bytes });
+            }
+        });
+
+        var result = new ArrayList<long[]>(largestPairs);
+        result.sort(Comparator.comparingLong((long[] pair) -> pair[2]).reversed());
+        return result;
+    }
+
+    public synchronized int numSharingPairs() {
+        return sharedBytesByPair.size();
+    }
+
+    /**
+     * Chunks of one file that are collected without locking the index. A full batch is added on its own, so a batch
+     * never takes more than about 50 kB however large the file is. Not thread-safe.
+     */
+    public class Batch {
+        private static final int MAX_CHUNKS = 4096;
+
+        private final int fileId;
+        private final long[] fingerprints = new long[MAX_CHUNKS];
+        private final int[] lengths = new int[MAX_CHUNKS];
+        private int numChunks = 0;
+
+        private Batch(int fileId) {
+            this.fileId = fileId;
+        }
+
+        public void add(long fingerprint, int length) {
+            if (numChunks == MAX_CHUNKS) {
+                flush();
+            }
+
+            fingerprints[numChunks] = fingerprint;
+            lengths[numChunks] = length;
+            numChunks++;
+        }
+
+        /**
+         * Adds the collected chunks to the index.
+         */
+        public void flush() {
+            addAll(fileId, fingerprints, lengths, numChunks);
+            numChunks = 0;
+        }
+    }
+
+    /**
+     * Slot of the chunk, or the empty slot where it belongs.
+     */
+    private int find(long fingerprint, int length) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+
+        while (lengths[slot] != 0 && (fingerprints[slot] != fingerprint || lengths[slot] != length)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void grow() {
+        var oldFingerprints = fingerprints;
+        var oldLengths = lengths;
+        var oldOwners = owners;
+        fingerprints = new long[oldFingerprints.length * 2];
+        lengths = new int[fingerprints.length];
+        owners = new int[fingerprints.length];
+
+        for (int i = 0; i < oldFingerprints.length; i++) {
+            if (oldLengths[i] != 0) {
+                int slot = find(oldFingerprints[i], oldLengths[i]);
+                fingerprints[slot] = oldFingerprints[i];
+                lengths[slot] = oldLengths[i];
+                owners[slot] = oldOwners[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Open-addressing hash map keyed by a 128-bit digest stored as two longs.
+ * Avoids creating key objects (strings or boxed values) for every file that is added.
+ * @author github.com/fippls
+ */
+public class DigestMap<V> {
+    private static final int INITIAL_CAPACITY = 64;
+    /** Grow when the table is more than half full, keeps probe sequences short */
+    private static final int MAX_FILL_SHIFT = 1;
+
+    private long[] highs;
+    private long[] lows;
+    private Object[] values;
+    private int size = 0;
+
+    public DigestMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public V get(long high, long low) {
+        int slot = findSlot(high, low);
+        return value(slot);
+    }
+
+    public V computeIfAbsent(long high, long low, Supplier<V> factory) {
+        int slot = findSlot(high, low);
+
+        if (values[slot] == null) {
+            var value = factory.get();
+            insert(slot, high, low, value);
+            return value;
+        }
+
+        return value(slot);
+    }
+
+    public void put(long high, long low, V value) {
+        int slot = findSlot(high, low);
+
+        if (values[slot] == null) {
+            insert(slot, high, low, value);
+        }
+        else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Removes all entries whose value matches the filter.
+     * @return The number of removed entries.
+     */
+    public int removeIf(Predicate<V> filter) {
+        var oldHighs = highs;
+        var oldLows = lows;
+        var oldValues = values;
+        int oldSize = size;
+
+        allocate(oldValues.length);
+        size = 0;
+
+        for (int i = 0; i < oldValues.length; i++) {
+            V value = cast(oldValues[i]);
+
+            if (value != null && !filter.test(value)) {
+                int slot = findSlot(oldHighs[i], oldLows[i]);
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+                values[slot] = value;
+                size++;
+            }
+        }
+
+        return oldSize - size;
+    }
+
+    public void forEach(EntryConsumer<V> consumer) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                consumer.accept(highs[i], lows[i], cast(values[i]));
+            }
+        }
+    }
+
+    /**
+     * Read-only view of all values, in no particular order.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void insert(int slot, long high, long low, V value) {
+        highs[slot] = high;
+        lows[slot] = low;
+        values[slot] = value;
+
+        if (++size > (values.length >>> MAX_FILL_SHIFT)) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        var oldHighs = highs;
+        var oldLows = lows;
+        var oldValues = values;
+
+        allocate(oldValues.length << 1);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = findSlot(oldHighs[i], oldLows[i]);
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        highs = new long[capacity];
+        lows = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Linear probing, returns the slot containing the key or the empty slot where it should be inserted.
+     */
+    private int findSlot(long high, long low) {
+        int mask = values.length - 1;
+        int slot = mix(high, low) & mask;
+
+        while (values[slot] != null && (highs[slot] != high || lows[slot] != low)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Digests are already well distributed, but the file size stage uses plain sizes so the bits need mixing.
+     */
+    private static int mix(long high, long low) {
+        long hash = high * 0x9E3779B97F4A7C15L + low;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private V value(int slot) {
+        return cast(values[slot]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(Object value) {
+        return (V) value;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long high, long low, V value);
+    }
+
+    private class ValueIterator implements Iterator<V> {
+        private int next = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            V value = value(next);
+            next = advance(next + 1);
+            return value;
+        }
+
+        private int advance(int from) {
+            int slot = from;
+
+            while (slot < values.length && values[slot] == null) {
+                slot++;
+            }
+
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Directory tree where each directory is stored as its parent directory ID plus its name, so shared path prefixes are
+ * only stored once. Top-level entries hold the complete path that the walk started from.
+ * Not thread-safe.
+ * @author github.com/fippls
+ */
+class DirectoryTrie {
+    private static final int NO_PARENT = -1;
+
+    private final NameStore names;
+    private int[] parents = new int[1024];
+    private long[] namePositions = new long[1024];
+    private int size = 0;
+    /** Only used while adding, cleared by {@link DirectoryTrie#finishAdding()} */
+    private Map<Path, Integer> ids = new HashMap<>();
+
+    DirectoryTrie(NameStore names) {
+        this.names = names;
+    }
+
+    /**
+     * ID for a directory, the directory and its parents are added if they are new.
+     */
+    int id(Path directory) {
+        var id = ids.get(directory);
+
+        if (id != null) {
+            return id;
+        }
+
+        var parent = directory.getParent();
+        var fileName = directory.getFileName();
+        int newId;
+
+        if (parent == null || fileName == null) {
+            newId = add(NO_PARENT, directory.toString());
+        }
+        else {
+            newId = add(id(parent), fileName.toString());
+        }
+
+        ids.put(directory, newId);
+        return newId;
+    }
+
+    Path path(int id) {
+        int parent = parents[id];
+        var name = names.get(namePositions[id]);
+        return parent == NO_PARENT ? Paths.get(name) : path(parent).resolve(name);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Drops the lookup map, after this only {@link DirectoryTrie#path(int)} can be used.
+     */
+    void finishAdding() {
+        ids = null;
+    }
+
+    long allocatedBytes() {
+        return parents.length * (long) Integer.BYTES + namePositions.length * (long) Long.BYTES;
+    }
+
+    private int add(int parent, String name) {
+        if (size == parents.length) {
+            parents = Arrays.copyOf(parents, size * 2);
+            namePositions = Arrays.copyOf(namePositions, size * 2);
+        }
+
+        parents[size] = parent;
+        namePositions[size] = names.add(name);
+        return size++;
+    }
+}
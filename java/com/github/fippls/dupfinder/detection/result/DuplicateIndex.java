@@ -0,0 +1,249 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import com.github.fippls.dupfinder.file.HashCache;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * All files below the watched paths grouped by size, together with the duplicates that were found in each size group.
+ * Size groups that change are marked, so only those have to be checked for duplicates again.
+ * Not thread-safe.
+ * @author github.com/fippls
+ */
+public class DuplicateIndex {
+    /** Map from every known path, including hard links, to the file. Sorted, so the paths below a directory are together */
+    private final NavigableMap<Path, FileInfo> files = new TreeMap<>();
+    private final Map<Object, FileInfo> filesByKey = new HashMap<>();
+    private final Map<Long, List<FileInfo>> filesBySize = new HashMap<>();
+    /** Duplicates in each size group, as the file groups that came out of the last hash stage */
+    private final Map<Long, List<List<FileInfo>>> duplicatesBySize = new HashMap<>();
+    private final Set<Long> changedSizes = new HashSet<>();
+
+    /**
+     * Adds a file and its links, or updates it if the path is already known.
+     * @return False if the file was already known and hasn't changed.
+     */
+    public boolean add(FileInfo fileInfo) {
+        boolean changed = addPath(fileInfo.path(), fileInfo);
+
+        for (Path link : fileInfo.links()) {
+            changed |= addPath(link, fileInfo);
+        }
+
+        return changed;
+    }
+
+    /**
+     * Removes a file, or all files below a directory.
+     * @return The number of removed paths.
+     */
+    public int removeBelow(Path path) {
+        var removedPaths = new ArrayList<Path>();
+        var prefix = path.toString();
+
+        // Paths that start with the same characters are next to each other, the paths below the directory among them:
+        for (Path known : files.tailMap(path, true).keySet()) {
+            if (!known.toString().startsWith(prefix)) {
+                break;
+            }
+
+            if (known.startsWith(path)) {
+                removedPaths.add(known);
+            }
+        }
+
+        removedPaths.forEach(this::remove);
+        return removedPaths.size();
+    }
+
+    /**
+     * Removes all files that aren't in the set, for example after walking all paths again.
+     * @return The number of removed paths.
+     */
+    public int retainOnly(Set<Path> existingPaths) {
+        var removedPaths = new ArrayList<Path>();
+
+        for (Path known : files.keySet()) {
+            if (!existingPaths.contains(known)) {
+                removedPaths.add(known);
+            }
+        }
+
+        removedPaths.forEach(this::remove);
+        return removedPaths.size();
+    }
+
+    public boolean hasChanges() {
+        return !changedSizes.isEmpty();
+    }
+
+    /**
+     * Takes all changed size groups with at least two files, to be checked for duplicates. The duplicates that were found
+     * in these groups before are dropped, and should be replaced with {@link DuplicateIndex#addDuplicates}.
+     * The files are copies, so hashing them doesn't affect the index.
+     */
+    public PotentialDuplicateCollection takeChangedGroups() {
+        var collection = new PotentialDuplicateCollection("File size-based check");
+
+        for (long size : changedSizes) {
+            duplicatesBySize.remove(size);
+            var group = filesBySize.get(size);
+
+            if (group != null && group.size() > 1) {
+                group.forEach(fileInfo -> collection.add(copy(fileInfo)));
+            }
+        }
+
+        changedSizes.clear();
+        return collection.resolve(false);
+    }
+
+    /**
+     * Stores the result of checking changed size groups.
+     */
+    public void addDuplicates(PotentialDuplicateCollection duplicates) {
+        for (List<FileInfo> group : duplicates.checkSums().values()) {
+            duplicatesBySize.computeIfAbsent(group.get(0).fileSize(), __ -> new ArrayList<>()).add(group);
+        }
+    }
+
+    /**
+     * All current duplicates.
+     * @param hashAlgorithm Algorithm of the last hash stage, or null if the files were compared byte by byte.
+     */
+    public PotentialDuplicateCollection duplicates(HashAlgorithm hashAlgorithm) {
+        var collection = new PotentialDuplicateCollection("Duplicates", hashAlgorithm);
+        long groupId = 0;
+
+        for (List<List<FileInfo>> groups : duplicatesBySize.values()) {
+            for (List<FileInfo> group : groups) {
+                groupId++;
+
+                for (FileInfo fileInfo : group) {
+                    // Comparison group numbers start over in each check, so they are numbered again to keep them apart:
+                    if (hashAlgorithm == null) {
+                        fileInfo.setComparisonGroup(groupId);
+                    }
+
+                    collection.add(fileInfo);
+                }
+            }
+        }
+
+        return collection;
+    }
+
+    public int numFiles() {
+        return files.size();
+    }
+
+    private boolean addPath(Path path, FileInfo fileInfo) {
+        var known = files.get(path);
+
+        if (known != null && isUnchanged(known, fileInfo)) {
+            return false;
+        }
+
+        if (known != null) {
+            remove(path);
+        }
+
+        var sameFile = fileInfo.fileKey() != null ? filesByKey.get(fileInfo.fileKey()) : null;
+
+        if (sameFile != null && isUnchanged(sameFile, fileInfo)) {
+            // Another path to a file that is already known, it's never read on its own:
+            sameFile.addLink(path);
+            files.put(path, sameFile);
+            changedSizes.add(sameFile.fileSize());
+            return true;
+        }
+
+        var newFile = new FileInfo(path, fileInfo.fileSize(), fileInfo.lastModified(), fileInfo.fileKey());
+        files.put(path, newFile);
+        filesBySize.computeIfAbsent(newFile.fileSize(), __ -> new ArrayList<>()).add(newFile);
+        changedSizes.add(newFile.fileSize());
+
+        if (newFile.fileKey() != null) {
+            filesByKey.put(newFile.fileKey(), newFile);
+        }
+
+        if (sameFile != null) {
+            // The file has changed, which goes for all paths that lead to it:
+            removeFile(sameFile);
+            paths(sameFile).forEach(other -> addPath(other, newFile));
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes one path, if it was the file itself and there are links to it, one of the links takes over.
+     */
+    private void remove(Path path) {
+        var fileInfo = files.get(path);
+
+        if (fileInfo == null) {
+            return;
+        }
+
+        if (!fileInfo.path().equals(path)) {
+            files.remove(path);
+            fileInfo.removeLink(path);
+            changedSizes.add(fileInfo.fileSize());
+            return;
+        }
+
+        removeFile(fileInfo);
+        HashCache.instance().forget(path);
+
+        for (Path link : fileInfo.links()) {
+            addPath(link, fileInfo);
+        }
+    }
+
+    /**
+     * Removes a file together with all paths that lead to it.
+     */
+    private void removeFile(FileInfo fileInfo) {
+        paths(fileInfo).forEach(files::remove);
+        changedSizes.add(fileInfo.fileSize());
+
+        var group = filesBySize.get(fileInfo.fileSize());
+        group.remove(fileInfo);
+
+        if (group.isEmpty()) {
+            filesBySize.remove(fileInfo.fileSize());
+        }
+
+        if (fileInfo.fileKey() != null && filesByKey.get(fileInfo.fileKey()) == fileInfo) {
+            filesByKey.remove(fileInfo.fileKey());
+        }
+    }
+
+    private static List<Path> paths(FileInfo fileInfo) {
+        var paths = new ArrayList<Path>(fileInfo.links());
+        paths.add(0, fileInfo.path());
+        return paths;
+    }
+
+    private static boolean isUnchanged(FileInfo known, FileInfo fileInfo) {
+        return known.fileSize() == fileInfo.fileSize() &&
+                known.lastModified() == fileInfo.lastModified() &&
+                (known.fileKey() == null ? fileInfo.fileKey() == null : known.fileKey().equals(fileInfo.fileKey()));
+    }
+
+    private static FileInfo copy(FileInfo fileInfo) {
+        var copy = new FileInfo(fileInfo.path(), fileInfo.fileSize(), fileInfo.lastModified(), fileInfo.fileKey());
+        fileInfo.links().forEach(copy::addLink);
+        return copy;
+    }
+}
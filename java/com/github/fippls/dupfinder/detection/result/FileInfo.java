@@ -1,10 +1,13 @@
 package com.github.fippls.dupfinder.detection.result;
 
 import com.github.fippls.dupfinder.data.Settings;
-import com.github.fippls.dupfinder.util.PathUtil;
+import com.github.fippls.dupfinder.util.HashUtil;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Info about one file
@@ -13,9 +16,16 @@ import java.nio.file.Path;
 public class FileInfo {
     private final Path path;
     private final long fileSize;
+    private final long lastModified;
+    /** Unique file identifier (such as device and inode), or null if not supported by the file system */
+    private final Object fileKey;
 
-    /** Current hashcode, will change over the course of the program execution */
-    private String hash;
+    /**
+     * Current hash value as two longs, will change over the course of the program execution.
+     * Initially the high part is zero and the low part is the file size.
+     */
+    private long hashHigh;
+    private long hashLow;
 
     /**
      * If the file has been completely hashed, this is set to true.
@@ -23,35 +33,95 @@ public class FileInfo {
      */
     private boolean isCompletelyHashed = false;
 
+    /** Other paths to the same file (hard links or overlapping paths), null if there are none */
+    private List<Path> links;
+
     /** Set if some kind of I/O error happened when processing the file */
     private String errorMessage;
 
-    public FileInfo(Path path) {
+    public FileInfo(Path path, BasicFileAttributes attributes) {
+        this(path, attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+    }
+
+    public FileInfo(Path path, long fileSize, long lastModified, Object fileKey) {
         this.path = path;
-        this.fileSize = PathUtil.getFileSize(path);
-        this.hash = Long.toString(fileSize).intern();
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+        this.hashHigh = 0;
+        this.hashLow = fileSize;
+    }
+
+    public long hashHigh() {
+        return hashHigh;
+    }
+
+    public long hashLow() {
+        return hashLow;
     }
 
-    public String hash() {
-        return hash;
+    /**
+     * The current hash as a hex string, only intended for output since it creates a new string each time.
+     */
+    public String hashString() {
+        return HashUtil.toHexString(hashHigh, hashLow);
     }
 
     public boolean isValid() {
         return errorMessage == null &&
-                fileSize != PathUtil.SIZE_ERROR &&
                 fileSize >= Settings.minFileSize &&
                 fileSize <= Settings.maxFileSize;
     }
 
-    public void setHash(UndigestedMd5 md5) {
-        this.hash = md5.digest().intern();
-        this.isCompletelyHashed = md5.totalBytesRead() >= fileSize;
+    /**
+     * @param bytesHashed Number of bytes that the hash was calculated from.
+     */
+    public void setHash(long hashHigh, long hashLow, long bytesHashed) {
+        this.hashHigh = hashHigh;
+        this.hashLow = hashLow;
+        this.isCompletelyHashed = bytesHashed >= fileSize;
+    }
+
+    /**
+     * Use a previously calculated hash instead of reading the file.
+     * @param bytesHashed Number of bytes that the hash was calculated from.
+     */
+    public void setCachedHash(long hashHigh, long hashLow, long bytesHashed) {
+        setHash(hashHigh, hashLow, bytesHashed);
+    }
+
+    /**
+     * Files that have been compared byte by byte have no hash, instead each set of identical files gets a number.
+     */
+    public void setComparisonGroup(long groupId) {
+        this.hashHigh = 0;
+        this.hashLow = groupId;
+        this.isCompletelyHashed = true;
     }
 
     public long fileSize() {
         return fileSize;
     }
 
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public Object fileKey() {
+        return fileKey;
+    }
+
+    public boolean hasError() {
+        return errorMessage != null;
+    }
+
+    /**
+     * Null unless the file had an error.
+     */
+    public String errorMessage() {
+        return errorMessage;
+    }
+
     /**
      * If the short MD5 check has already checked the entire file, no need to check it again.
      */
@@ -67,10 +137,42 @@ public class FileInfo {
         return path;
     }
 
+    /**
+     * Register another path that leads to this same file, it's never read on its own.
+     * @return False if the path was already known, for example when it's reached through overlapping roots.
+     */
+    public synchronized boolean addLink(Path link) {
+        if (isSamePath(path, link) || (links != null && links.stream().anyMatch(known -> isSamePath(known, link)))) {
+            return false;
+        }
+
+        if (links == null) {
+            links = new ArrayList<>(1);
+        }
+
+        links.add(link);
+        return true;
+    }
+
+    /**
+     * @return False if the path wasn't a link to this file.
+     */
+    public synchronized boolean removeLink(Path link) {
+        return links != null && links.remove(link);
+    }
+
+    public synchronized List<Path> links() {
+        return links == null ? List.of() : List.copyOf(links);
+    }
+
     public void setError(String errorMessage) {
         this.errorMessage = errorMessage.intern();
     }
 
+    private static boolean isSamePath(Path first, Path second) {
+        return first.equals(second) || first.toAbsolutePath().normalize().equals(second.toAbsolutePath().normalize());
+    }
+
     @Override
     public String toString() {
         return path.toString();
@@ -0,0 +1,155 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compact store for all files found by the walk, as an alternative to keeping a {@link FileInfo} per file.
+ * File data is kept in primitive columns indexed by file ID, and paths are kept as directory ID plus name in a
+ * {@link DirectoryTrie}. Only files that share their size with another file are turned into {@link FileInfo} objects
+ * by {@link FileTable#addSizeGroupsTo(PotentialDuplicateCollection)}, which usually is a small part of all files.
+ * Thread-safe for adding.
+ * @see com.github.fippls.dupfinder.data.Settings#compactFileTable
+ * @author github.com/fippls
+ */
+public class FileTable {
+    /** Unix file keys look like "(dev=803,ino=1234)", stored as two longs and recreated in the same format */
+    private static final Pattern UNIX_FILE_KEY = Pattern.compile("\\(dev=([0-9a-f]+),ino=([0-9]+)\\)");
+    private static final byte HAS_FILE_KEY = 1;
+
+    private final NameStore names = new NameStore();
+    private final DirectoryTrie directories = new DirectoryTrie(names);
+
+    private long[] sizes = new long[1024];
+    private long[] lastModified = new long[1024];
+    private long[] devices = new long[1024];
+    private long[] inodes = new long[1024];
+    private long[] namePositions = new long[1024];
+    private int[] directoryIds = new int[1024];
+    private byte[] flags = new byte[1024];
+    private int size = 0;
+
+    public synchronized void add(FileInfo fileInfo) {
+        if (size == sizes.length) {
+            grow();
+        }
+
+        var path = fileInfo.path();
+        sizes[size] = fileInfo.fileSize();
+        lastModified[size] = fileInfo.lastModified();
+        directoryIds[size] = directories.id(path.getParent() != null ? path.getParent() : path.toAbsolutePath().getParent());
+        namePositions[size] = names.add(path.getFileName().toString());
+
+        var fileKey = fileInfo.fileKey() != null ? UNIX_FILE_KEY.matcher(fileInfo.fileKey().toString()) : null;
+
+        if (fileKey != null && fileKey.matches()) {
+            devices[size] = Long.parseUnsignedLong(fileKey.group(1), 16);
+            inodes[size] = Long.parseUnsignedLong(fileKey.group(2));
+            flags[size] = HAS_FILE_KEY;
+        }
+
+        size++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Collects all files that share their size with at least one other file. Hard links to the same file are collapsed
+     * into one {@link FileInfo} here, since they always have the same size.
+     * Adding files is not possible afterwards.
+     */
+    public synchronized void addSizeGroupsTo(PotentialDuplicateCollection collection) {
+        directories.finishAdding();
+        Log.debug("Compact file table: ", size, " files in ", directories.size(), " directories, using about ",
+                StringUtil.getFileSizeString(allocatedBytes()));
+
+        // Sorting a copy of the sizes finds all sizes that occur more than once without creating a group per file:
+        var sortedSizes = Arrays.copyOf(sizes, size);
+        Arrays.sort(sortedSizes);
+
+        var sharedSizes = new DigestMap<List<FileInfo>>();
+
+        for (int i = 1; i < sortedSizes.length; i++) {
+            if (sortedSizes[i] == sortedSizes[i - 1]) {
+                sharedSizes.put(0, sortedSizes[i], new ArrayList<>());
+            }
+        }
+
+        for (int id = 0; id < size; id++) {
+            var group = sharedSizes.get(0, sizes[id]);
+
+            if (group != null) {
+                group.add(fileInfo(id));
+            }
+        }
+
+        long numHardLinks = 0;
+
+        for (List<FileInfo> group : sharedSizes.values()) {
+            numHardLinks += addWithoutLinks(group, collection);
+        }
+
+        if (numHardLinks > 0) {
+            Log.info("    Hard links: ", numHardLinks,
+                    " paths lead to files that were already found, these are only read once and are not duplicates");
+        }
+
+        Log.debug("  Files that share their size with another file: ", collection.numTotalFiles(), " of ", size, " (",
+                StringUtil.getFileSizeString(collection.totalSize()), ')');
+    }
+
+    /**
+     * Files are matched by the string form of their file key, since the group can mix files that still have the key
+     * from the walk with files whose key was recreated as a string, by this table or from a spilled run.
+     * @return The number of files that were links to another file in the group.
+     */
+    static long addWithoutLinks(List<FileInfo> group, PotentialDuplicateCollection collection) {
+        var filesByKey = new HashMap<String, FileInfo>();
+        long numLinks = 0;
+
+        for (FileInfo fileInfo : group) {
+            var fileKey = fileInfo.fileKey();
+            var knownFile = fileKey != null ? filesByKey.putIfAbsent(fileKey.toString(), fileInfo) : null;
+
+            if (knownFile == null) {
+                collection.add(fileInfo);
+            }
+            else if (knownFile.addLink(fileInfo.path())) {
+                numLinks++;
+            }
+        }
+
+        return numLinks;
+    }
+
+    private FileInfo fileInfo(int id) {
+        var path = directories.path(directoryIds[id]).resolve(names.get(namePositions[id]));
+        var fileKey = flags[id] == HAS_FILE_KEY ?
+                "(dev=" + Long.toHexString(devices[id]) + ",ino=" + Long.toUnsignedString(inodes[id]) + ')' : null;
+
+        return new FileInfo(path, sizes[id], lastModified[id], fileKey);
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+        sizes = Arrays.copyOf(sizes, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        devices = Arrays.copyOf(devices, capacity);
+        inodes = Arrays.copyOf(inodes, capacity);
+        namePositions = Arrays.copyOf(namePositions, capacity);
+        directoryIds = Arrays.copyOf(directoryIds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private long allocatedBytes() {
+        return sizes.length * (5L * Long.BYTES + Integer.BYTES + 1) + names.allocatedBytes() + directories.allocatedBytes();
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only storage of file and directory names as UTF-8 bytes in large pages, instead of one object per name.
+ * A name is referred to by its position, a long since the total can exceed 2 GB. Names can be at most 64 kB.
+ * @author github.com/fippls
+ */
+class NameStore {
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private byte[] currentPage;
+    private int pageOffset = PAGE_SIZE;
+
+    /**
+     * @return The position of the name.
+     */
+    long add(String name) {
+        var bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        int headerSize = length < 0x80 ? 1 : 3;
+
+        if (pageOffset + headerSize + length > PAGE_SIZE) {
+            // Names never span pages, file systems limit names to a few hundred bytes:
+            currentPage = new byte[PAGE_SIZE];
+            pages.add(currentPage);
+            pageOffset = 0;
+        }
+
+        long position = ((long) (pages.size() - 1) << PAGE_SHIFT) + pageOffset;
+
+        if (headerSize == 1) {
+            currentPage[pageOffset++] = (byte) length;
+        }
+        else {
+            currentPage[pageOffset++] = (byte) 0x80;
+            currentPage[pageOffset++] = (byte) (length >>> 8);
+            currentPage[pageOffset++] = (byte) length;
+        }
+
+        System.arraycopy(bytes, 0, currentPage, pageOffset, length);
+        pageOffset += length;
+        return position;
+    }
+
+    String get(long position) {
+        var page = pages.get((int) (position >>> PAGE_SHIFT));
+        int offset = (int) (position & (PAGE_SIZE - 1));
+        int length = page[offset] & 0xFF;
+
+        if (length == 0x80) {
+            length = ((page[offset + 1] & 0xFF) << 8) | (page[offset + 2] & 0xFF);
+            offset += 3;
+        }
+        else {
+            offset++;
+        }
+
+        return new String(page, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Allocated bytes, for memory statistics.
+     */
+    long allocatedBytes() {
+        return (long) pages.size() * PAGE_SIZE;
+    }
+}
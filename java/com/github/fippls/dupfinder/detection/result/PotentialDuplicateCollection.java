@@ -1,36 +1,67 @@
 package com.github.fippls.dupfinder.detection.result;
 
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.metrics.Metrics;
 import com.github.fippls.dupfinder.util.Log;
 import com.github.fippls.dupfinder.util.PerformanceTimer;
 import com.github.fippls.dupfinder.util.StringUtil;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Contains a map of checksums to file paths, to list files that could be duplicated.
+ * Files are grouped by size and checksum together, since partial hashes of files with different sizes can be equal
+ * although the files can't be duplicates.
  * @author github.com/fippls
  */
 public class PotentialDuplicateCollection {
+    /** Odd, so that the key is different for every size that a group with the same checksum can have */
+    private static final long SIZE_KEY_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
     private final PerformanceTimer timer;
 
-    /** Map from generic hash to a list of files with that hashcode */
-    private final Map<String, List<FileInfo>> checkSums = new HashMap<>();
+    /** Map from size and generic hash to a list of files with that size and hashcode */
+    private final DigestMap<List<FileInfo>> checkSums = new DigestMap<>();
     /** Name of the method to create this checksum collection */
     private final String name;
+    /** Algorithm that the checksums were calculated with, null if they are file sizes */
+    private final HashAlgorithm hashAlgorithm;
 
     public PotentialDuplicateCollection(String name) {
+        this(name, null);
+    }
+
+    public PotentialDuplicateCollection(String name, HashAlgorithm hashAlgorithm) {
         this.timer = new PerformanceTimer();
         this.name = name;
+        this.hashAlgorithm = hashAlgorithm;
     }
 
     public void add(FileInfo fileInfo) {
-        checkSums.computeIfAbsent(fileInfo.hash(), __ -> new ArrayList<>()).add(fileInfo);
+        groupOf(checkSums, fileInfo).add(fileInfo);
+    }
+
+    /**
+     * Finds or creates the group of a file among groups of files with the same size and checksum. The size is mixed
+     * into the key, in the rare case that the key is taken by a group with another size the following keys are tried.
+     * Only the size of the group is checked, since the checksums of its files change when a later stage hashes them.
+     */
+    public static List<FileInfo> groupOf(DigestMap<List<FileInfo>> groups, FileInfo fileInfo) {
+        long keyHigh = fileInfo.hashHigh() + fileInfo.fileSize() * SIZE_KEY_MULTIPLIER;
+
+        while (true) {
+            var files = groups.computeIfAbsent(keyHigh, fileInfo.hashLow(), ArrayList::new);
+
+            if (files.isEmpty() || files.get(0).fileSize() == fileInfo.fileSize()) {
+                return files;
+            }
+
+            keyHigh++;
+        }
     }
 
     /**
@@ -38,23 +69,17 @@ public class PotentialDuplicateCollection {
      */
     public PotentialDuplicateCollection resolve(boolean optimizationStats) {
         // Remove all files that had errors before we do anything:
-        checkSums.values().stream()
-                .flatMap(List::stream)
-                .filter(fi -> !fi.isValid())
-                .collect(Collectors.toList())
-                    .forEach(fi -> checkSums.remove(fi.hash()));
+        checkSums.values().forEach(infos -> infos.removeIf(fi -> !fi.isValid()));
 
         // First up we need to optimize and remove all files that have no duplicates
         long preOptimizeFileCount = numTotalFiles();
         long preOptimizeFileSize = totalSize();
-        checkSums.keySet().stream()
-                .filter(hash -> checkSums.get(hash).size() < 2)
-                .collect(Collectors.toList())
-                    .forEach(checkSums::remove);
+        checkSums.removeIf(infos -> infos.size() < 2);
 
         long postOptimizeFileCount = numTotalFiles();
         long postOptimizeFileSize = totalSize();
         timer.stop();
+        recordMetrics(preOptimizeFileCount, preOptimizeFileSize, postOptimizeFileCount, postOptimizeFileSize);
 
         Log.debug(name, " done after ", StringUtil.doubleToString1Decimal(timer.seconds()), " seconds");
 
@@ -67,6 +92,23 @@ public class PotentialDuplicateCollection {
         return this;
     }
 
+    private void recordMetrics(long filesIn, long bytesIn, long filesOut, long bytesOut) {
+        var filesInCounter = Metrics.counter("stage_files_in_total", "Files checked in each stage", "stage", name);
+        var filesOutCounter = Metrics.counter("stage_files_out_total",
+                "Files that were still potential duplicates after each stage", "stage", name);
+        filesInCounter.add(filesIn);
+        filesOutCounter.add(filesOut);
+        Metrics.counter("stage_bytes_in_total", "Size of the files checked in each stage", "stage", name).add(bytesIn);
+        Metrics.counter("stage_bytes_out_total", "Size of the files that were still potential duplicates after each stage",
+                "stage", name).add(bytesOut);
+
+        double seconds = timer.seconds();
+        Metrics.gauge("stage_duration_seconds", "Duration of the last run of each stage", () -> seconds, "stage", name);
+        Metrics.gauge("stage_file_reduction_ratio", "Share of the checked files that each stage left out",
+                () -> filesInCounter.get() == 0 ? 0 : 1 - (double) filesOutCounter.get() / filesInCounter.get(),
+                "stage", name);
+    }
+
     public <T> Stream<T> mapAllFiles(Function<FileInfo, T> mapper) {
         return checkSums.values().stream()
                 .flatMap(List::stream)
@@ -112,10 +154,14 @@ public class PotentialDuplicateCollection {
         return total;
     }
 
-    public Map<String, List<FileInfo>> checkSums() {
+    public DigestMap<List<FileInfo>> checkSums() {
         return checkSums;
     }
 
+    public Optional<HashAlgorithm> hashAlgorithm() {
+        return Optional.ofNullable(hashAlgorithm);
+    }
+
     private String showReduction(String type, long start, long end, Function<Long, String> parser) {
         return type + ": " + parser.apply(start) + " -> " + parser.apply(end) + " (" + StringUtil.reductionPercentage(start, end) + " reduction)";
     }
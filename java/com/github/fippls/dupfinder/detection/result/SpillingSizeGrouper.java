@@ -0,0 +1,274 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Groups walked files by size within a memory budget. Files are buffered until the budget is used up, then the buffer is
+ * sorted by size and path and written to a temporary run file. When the walk is done, all runs are merged and only
+ * files that share their size with another file are kept in memory.
+ * Thread-safe for adding.
+ * @see com.github.fippls.dupfinder.data.Settings#sizeGroupingMemoryBudget
+ * @author github.com/fippls
+ */
+public class SpillingSizeGrouper {
+    /** Rough heap size of a {@link FileInfo} and its path, not counting the characters of the path */
+    private static final int FILE_INFO_OVERHEAD_BYTES = 200;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final Comparator<FileInfo> SIZE_AND_PATH =
+            Comparator.comparingLong(FileInfo::fileSize).thenComparing(FileInfo::path);
+
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final List<Path> runFiles = new ArrayList<>();
+    private List<FileInfo> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+    private long numFiles = 0;
+
+    /**
+     * @param spillDirectory Where run files are written, or null for the default temporary directory.
+     */
+    public SpillingSizeGrouper(long memoryBudget, Path spillDirectory) {
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory != null ? spillDirectory : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    public synchronized void add(FileInfo fileInfo) {
+        buffer.add(fileInfo);
+        bufferedBytes += FILE_INFO_OVERHEAD_BYTES + 2L * fileInfo.path().toString().length();
+        numFiles++;
+
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Merges all runs and adds the files that share their size with at least one other file. Hard links to the same
+     * file are collapsed into one {@link FileInfo} here, since they always have the same size.
+     * Run files are deleted afterwards.
+     */
+    public synchronized void addSizeGroupsTo(PotentialDuplicateCollection collection) {
+        buffer.sort(SIZE_AND_PATH);
+        var runs = new PriorityQueue<Run>(Comparator.comparingLong(Run::size));
+        long numHardLinks = 0;
+
+        try {
+            addIfNotEmpty(runs, new BufferRun(buffer.iterator()));
+
+            for (Path runFile : runFiles) {
+                addIfNotEmpty(runs, new FileRun(runFile));
+            }
+
+            Log.debug("Merging ", runFiles.size(), " spilled runs and ", buffer.size(), " buffered files (",
+                    numFiles, " files in total)");
+
+            var group = new ArrayList<FileInfo>();
+
+            while (!runs.isEmpty()) {
+                long size = runs.peek().size();
+                group.clear();
+
+                while (!runs.isEmpty() && runs.peek().size() == size) {
+                    var run = runs.poll();
+                    group.add(run.take());
+                    addIfNotEmpty(runs, run);
+                }
+
+                if (group.size() > 1) {
+                    numHardLinks += FileTable.addWithoutLinks(group, collection);
+                }
+            }
+        }
+        catch (IOException e) {
+            fail("Unable to read spilled run", e);
+        }
+        finally {
+            runs.forEach(Run::closeQuietly);
+            deleteRunFiles();
+            buffer = new ArrayList<>();
+        }
+
+        if (numHardLinks > 0) {
+            Log.info("    Hard links: ", numHardLinks,
+                    " paths lead to files that were already found, these are only read once and are not duplicates");
+        }
+
+        Log.debug("  Files that share their size with another file: ", collection.numTotalFiles(), " of ", numFiles,
+                " (", StringUtil.getFileSizeString(collection.totalSize()), ')');
+    }
+
+    private void spill() {
+        buffer.sort(SIZE_AND_PATH);
+
+        try {
+            var runFile = Files.createTempFile(spillDirectory, "dupfinder-run-", ".tmp");
+            runFile.toFile().deleteOnExit();
+            runFiles.add(runFile);
+
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile), STREAM_BUFFER_SIZE))) {
+                out.writeInt(buffer.size());
+
+                for (FileInfo fileInfo : buffer) {
+                    out.writeLong(fileInfo.fileSize());
+                    out.writeLong(fileInfo.lastModified());
+                    writeString(out, fileInfo.fileKey() != null ? fileInfo.fileKey().toString() : "");
+                    writeString(out, fileInfo.path().toString());
+                }
+            }
+
+            Log.debug("Spilled ", buffer.size(), " files to ", runFile, " (run ", runFiles.size(), ')');
+        }
+        catch (IOException e) {
+            fail("Unable to spill files to " + spillDirectory, e);
+        }
+
+        // A new list, since clear() keeps the large backing array:
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    private void deleteRunFiles() {
+        for (Path runFile : runFiles) {
+            try {
+                Files.deleteIfExists(runFile);
+            }
+            catch (IOException e) {
+                Log.error("Unable to delete spilled run ", runFile, ": ", e.getMessage());
+            }
+        }
+
+        runFiles.clear();
+    }
+
+    /**
+     * Files that are left out would make the result wrong without any sign of it, so there's no way to continue.
+     */
+    private static void fail(String message, IOException e) {
+        Log.error(message, ": ", e.getMessage(), ". Shutting down.");
+        System.exit(-6);
+    }
+
+    private static void addIfNotEmpty(PriorityQueue<Run> runs, Run run) throws IOException {
+        if (run.advance()) {
+            runs.add(run);
+        }
+        else {
+            run.closeQuietly();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Not writeUTF, since that is limited to 64 kB
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Files sorted by size, with one file taken at a time.
+     */
+    private abstract static class Run implements Closeable {
+        private FileInfo current;
+
+        /**
+         * Moves to the next file.
+         * @return False if there are no files left.
+         */
+        boolean advance() throws IOException {
+            current = read();
+            return current != null;
+        }
+
+        long size() {
+            return current.fileSize();
+        }
+
+        FileInfo take() {
+            return current;
+        }
+
+        void closeQuietly() {
+            try {
+                close();
+            }
+            catch (IOException e) {
+                Log.error("Unable to close spilled run: ", e.getMessage());
+            }
+        }
+
+        /**
+         * @return The next file, or null if there are no files left.
+         */
+        protected abstract FileInfo read() throws IOException;
+    }
+
+    private static class BufferRun extends Run {
+        private final Iterator<FileInfo> files;
+
+        BufferRun(Iterator<FileInfo> files) {
+            this.files = files;
+        }
+
+        @Override
+        protected FileInfo read() {
+            return files.hasNext() ? files.next() : null;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+
+    private static class FileRun extends Run {
+        private final DataInputStream in;
+        private int numLeft;
+
+        FileRun(Path runFile) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFile), STREAM_BUFFER_SIZE));
+            this.numLeft = in.readInt();
+        }
+
+        @Override
+        protected FileInfo read() throws IOException {
+            if (numLeft == 0) {
+                return null;
+            }
+
+            numLeft--;
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            var fileKey = readString(in);
+            var path = Paths.get(readString(in));
+            return new FileInfo(path, fileSize, lastModified, fileKey.isEmpty() ? null : fileKey);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.github.fippls.dupfinder.distributed;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.util.IntervalTimer;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the hash stages on {@link Worker} processes on other hosts, instead of reading all files from this one.
+ * Each stage is split into work units of whole size or hash groups, which are handed out to the connected workers.
+ * Groups that are larger than a unit are spread over several units, so that they are hashed by several workers.
+ * The hashes that come back are merged into the result of the stage here, so the duplicates are found exactly as if
+ * the files had been hashed locally. When a worker disconnects, stops sending heartbeats or stops receiving, the work
+ * units it had are handed out again. Workers may connect and leave at any time, the stages wait until a worker is available.
+ * @see Settings#coordinatorPort
+ * @author github.com/fippls
+ */
+public class Coordinator implements Closeable {
+    private final ServerSocket serverSocket;
+    private final BlockingDeque<WorkUnit> queue = new LinkedBlockingDeque<>();
+    private final List<Thread> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger numWorkers = new AtomicInteger();
+    /** Closes the sockets of workers that don't take what is sent to them, a blocked write has no timeout of its own */
+    private final ScheduledExecutorService writeWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "write watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object stageLock = new Object();
+    private volatile boolean isClosed = false;
+
+    /** Result of the stage that is running, guarded by stageLock */
+    private PotentialDuplicateCollection stageResult;
+    private long numUnitsLeft;
+    private long nextUnitId = 0;
+
+    public Coordinator(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        var acceptThread = new Thread(this::acceptWorkers, "coordinator");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        Log.info("Coordinator: waiting for workers on port ", port);
+    }
+
+    /**
+     * Runs all hash stages on the workers.
+     * @return The files that are duplicates of each other, grouped by their final hash.
+     */
+    public PotentialDuplicateCollection scan(PotentialDuplicateCollection potentialDuplicates) {
+        for (HashStage stage : Settings.hashStages) {
+            potentialDuplicates = runStage(potentialDuplicates, stage);
+        }
+
+        return potentialDuplicates;
+    }
+
+    /**
+     * Tells the workers that there is no more work, and waits a moment for them to disconnect.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+
+        try {
+            serverSocket.close();
+
+            for (Thread connection : connections) {
+                connection.join(TimeUnit.SECONDS.toMillis(Settings.workerHeartbeatSeconds));
+            }
+
+            writeWatchdog.shutdownNow();
+        }
+        catch (IOException e) {
+            Log.error("Unable to stop listening for workers: ", e.getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PotentialDuplicateCollection runStage(PotentialDuplicateCollection potentialDuplicates, HashStage stage) {
+        var algorithm = stage.isFull() ? Settings.fullHashAlgorithm : Settings.partialHashAlgorithm;
+        var name = "Distributed hash check, " + stage + " (" + algorithm.name() + ')';
+        Log.info(name, " received ", potentialDuplicates.numTotalFiles(), " files to process: ",
+                StringUtil.getFileSizeString(potentialDuplicates.totalSize()));
+
+        var units = createUnits(potentialDuplicates, stage, algorithm, new PotentialDuplicateCollection(name, algorithm));
+        var timer = new IntervalTimer(Settings.millisecondsBetweenProgressUpdates);
+
+        synchronized (stageLock) {
+            numUnitsLeft = units.size();
+            queue.addAll(units);
+
+            while (numUnitsLeft > 0) {
+                try {
+                    stageLock.wait(Settings.millisecondsBetweenProgressUpdates);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Log.error("Interrupted while waiting for workers");
+                    break;
+                }
+
+                if (Settings.showProgressUpdates && timer.done()) {
+                    Log.info("  Work units: ", units.size() - numUnitsLeft, " / ", units.size(), " done, ",
+                            numWorkers.get(), " workers connected");
+                }
+            }
+
+            return stageResult.resolve(!stage.isFull());
+        }
+    }
+
+    /**
+     * Splits the files into work units, groups are only split when they are larger than a unit. The parts of a split
+     * group are hashed by different workers, and grouped again when the results are merged into the stage result.
+     * Files that were already hashed completely with the same algorithm in the previous stage are kept as they are.
+     */
+    List<WorkUnit> createUnits(PotentialDuplicateCollection potentialDuplicates, HashStage stage,
+                               HashAlgorithm algorithm, PotentialDuplicateCollection result) {
+        var previousAlgorithm = potentialDuplicates.hashAlgorithm().orElse(null);
+        var units = new ArrayList<WorkUnit>();
+        var files = new ArrayList<FileInfo>();
+        long bytes = 0;
+
+        for (List<FileInfo> group : potentialDuplicates.checkSums().values()) {
+            long groupBytes = group.stream().mapToLong(fileInfo -> stage.bytesCovered(fileInfo.fileSize())).sum();
+
+            // A group that doesn't fit in the rest of the unit starts a new one:
+            if (!files.isEmpty() && (files.size() + group.size() > Settings.workUnitMaxFiles ||
+                    bytes + groupBytes > Settings.workUnitMaxBytes)) {
+                units.add(new WorkUnit(nextUnitId++, stage, files));
+                files = new ArrayList<>();
+                bytes = 0;
+            }
+
+            for (FileInfo fileInfo : group) {
+                if (fileInfo.isCompletelyHashed() && previousAlgorithm == algorithm) {
+                    result.add(fileInfo);
+                    continue;
+                }
+
+                // Only a group that is larger than a unit on its own fills it up:
+                if (!files.isEmpty() && (files.size() >= Settings.workUnitMaxFiles || bytes >= Settings.workUnitMaxBytes)) {
+                    units.add(new WorkUnit(nextUnitId++, stage, files));
+                    files = new ArrayList<>();
+                    bytes = 0;
+                }
+
+                files.add(fileInfo);
+                bytes += stage.bytesCovered(fileInfo.fileSize());
+            }
+        }
+
+        if (!files.isEmpty()) {
+            units.add(new WorkUnit(nextUnitId++, stage, files));
+        }
+
+        synchronized (stageLock) {
+            stageResult = result;
+        }
+
+        return units;
+    }
+
+    private void completed(WorkUnit unit) {
+        synchronized (stageLock) {
+            unit.files().forEach(stageResult::add);
+            numUnitsLeft--;
+            stageLock.notifyAll();
+        }
+    }
+
+    private void acceptWorkers() {
+        while (!isClosed) {
+            try {
+                var socket = serverSocket.accept();
+                var connection = new Thread(() -> serve(socket), "worker " + socket.getRemoteSocketAddress());
+                connection.setDaemon(true);
+                connections.add(connection);
+                connection.start();
+            }
+            catch (IOException e) {
+                if (!isClosed) {
+                    Log.error("Unable to accept worker: ", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands out work units to one worker, and keeps a few of them at the worker so it never waits for the next one.
+     */
+    private void serve(Socket socket) {
+        var outstanding = new ArrayDeque<WorkUnit>();
+        var workerName = socket.getRemoteSocketAddress().toString();
+        boolean isConnected = false;
+
+        try (socket;
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            // A worker that sends nothing for this long is considered dead, it sends heartbeats while it works:
+            socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(Settings.workerTimeoutSeconds));
+            WorkProtocol.readHeader(in);
+            workerName = in.readUTF();
+            withWriteDeadline(socket, () -> {
+                WorkProtocol.writeHeader(out);
+                out.writeUTF(Settings.partialHashAlgorithm.name());
+                out.writeUTF(Settings.fullHashAlgorithm.name());
+                out.writeUTF(Settings.readEngine.name());
+                out.flush();
+            });
+
+            isConnected = true;
+            Log.info("Coordinator: worker ", workerName, " connected (", numWorkers.incrementAndGet(), " workers)");
+            serveWorkUnits(socket, in, out, outstanding);
+
+            withWriteDeadline(socket, () -> {
+                out.writeByte(WorkProtocol.DONE);
+                out.flush();
+            });
+        }
+        catch (IOException | InterruptedException e) {
+            // The worker simply hung up if there is no message:
+            var reason = e.getMessage() != null ? " (" + e.getMessage() + ')' : "";
+
+            if (!outstanding.isEmpty()) {
+                Log.error("Coordinator: lost worker ", workerName, reason, ", handing out its ",
+                        outstanding.size(), " work units again");
+            }
+            else if (!isClosed) {
+                Log.error("Coordinator: lost worker ", workerName, reason);
+            }
+
+            // In front of the queue, they have waited long enough:
+            outstanding.descendingIterator().forEachRemaining(queue::addFirst);
+        }
+        finally {
+            if (isConnected) {
+                numWorkers.decrementAndGet();
+            }
+
+            connections.remove(Thread.currentThread());
+        }
+    }
+
+    private void serveWorkUnits(Socket socket, DataInputStream in, DataOutputStream out, Deque<WorkUnit> outstanding)
+            throws IOException, InterruptedException {
+        while (!isClosed || !outstanding.isEmpty()) {
+            while (outstanding.size() < Settings.workUnitsPerWorker) {
+                var unit = outstanding.isEmpty() ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+
+                if (unit == null) {
+                    break;
+                }
+
+                // Outstanding before it's written, so it's handed out again if the write fails halfway:
+                outstanding.add(unit);
+                withWriteDeadline(socket, () -> unit.write(out));
+            }
+
+            if (outstanding.isEmpty()) {
+                continue;
+            }
+
+            withWriteDeadline(socket, out::flush);
+            byte messageType = in.readByte();
+
+            if (messageType == WorkProtocol.HEARTBEAT) {
+                continue;
+            }
+
+            if (messageType != WorkProtocol.RESULT) {
+                throw new IOException("unknown message type " + messageType);
+            }
+
+            // Workers hash their units in the order they got them:
+            var unit = outstanding.peek();
+
+            if (in.readLong() != unit.id()) {
+                throw new IOException("result for another work unit than " + unit.id());
+            }
+
+            unit.readResults(in);
+            outstanding.poll();
+            completed(unit);
+        }
+    }
+
+    /**
+     * Runs a write to a worker, and closes the socket if it hasn't finished within the worker timeout. A worker that
+     * has stopped reading fills up the socket buffers and would block the write forever, closing the socket makes the
+     * write fail so that the work units of the worker are handed out again.
+     */
+    private void withWriteDeadline(Socket socket, WriteAction write) throws IOException {
+        var timeout = writeWatchdog.schedule(() -> {
+            Log.error("Coordinator: worker ", socket.getRemoteSocketAddress(), " hasn't received anything for ",
+                    Settings.workerTimeoutSeconds, " seconds, disconnecting it");
+
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // The write fails either way
+            }
+        }, Settings.workerTimeoutSeconds, TimeUnit.SECONDS);
+
+        try {
+            write.run();
+        }
+        finally {
+            timeout.cancel(false);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriteAction {
+        void run() throws IOException;
+    }
+}
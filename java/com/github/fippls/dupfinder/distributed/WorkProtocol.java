@@ -0,0 +1,48 @@
+package com.github.fippls.dupfinder.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Messages between the coordinator and its workers, written with {@link DataOutputStream}.
+ * <pre>
+ *   Worker:      int magic, int version, UTF worker name
+ *   Coordinator: int magic, int version, UTF partial hash algorithm, UTF full hash algorithm, UTF read engine
+ *   Then the coordinator sends WORK and DONE, the worker sends RESULT and HEARTBEAT:
+ *   WORK:      long unit id, UTF stage id, int number of files, and for each file: UTF path, long size, long modified
+ *   RESULT:    long unit id, int number of files, and for each file: boolean ok, then long hash high, long hash low,
+ *              boolean completely hashed if ok, or UTF error message if not
+ *   HEARTBEAT: nothing, sent regularly while the worker is hashing
+ *   DONE:      nothing, the worker disconnects
+ * </pre>
+ * @author github.com/fippls
+ */
+final class WorkProtocol {
+    static final int MAGIC = 0x44465750;        // "DFWP"
+    static final int VERSION = 1;
+
+    static final byte WORK = 1;
+    static final byte DONE = 2;
+    static final byte RESULT = 3;
+    static final byte HEARTBEAT = 4;
+
+    private WorkProtocol() {
+        // Only constants
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void readHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        int version = in.readInt();
+
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("not a DupFinder " + VERSION + " peer (protocol " + Integer.toHexString(magic) + ' ' +
+                    version + ')');
+        }
+    }
+}
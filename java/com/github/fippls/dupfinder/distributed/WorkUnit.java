@@ -0,0 +1,84 @@
+package com.github.fippls.dupfinder.distributed;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Files that one worker hashes for one stage, files from the same size or hash group are kept together unless the
+ * group is larger than a unit.
+ * @author github.com/fippls
+ */
+class WorkUnit {
+    private final long id;
+    private final HashStage stage;
+    private final List<FileInfo> files;
+
+    WorkUnit(long id, HashStage stage, List<FileInfo> files) {
+        this.id = id;
+        this.stage = stage;
+        this.files = files;
+    }
+
+    long id() {
+        return id;
+    }
+
+    List<FileInfo> files() {
+        return files;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(WorkProtocol.WORK);
+        out.writeLong(id);
+        out.writeUTF(stage.id());
+        out.writeInt(files.size());
+
+        for (FileInfo fileInfo : files) {
+            out.writeUTF(fileInfo.path().toString());
+            out.writeLong(fileInfo.fileSize());
+            out.writeLong(fileInfo.lastModified());
+        }
+    }
+
+    /**
+     * Reads the hashes that the worker calculated and sets them on the files, once the whole result has been read.
+     */
+    void readResults(DataInputStream in) throws IOException {
+        int numFiles = in.readInt();
+
+        if (numFiles != files.size()) {
+            throw new IOException("result for work unit " + id + " has " + numFiles + " files, expected " + files.size());
+        }
+
+        var hashes = new long[numFiles * 2];
+        var isComplete = new boolean[numFiles];
+        var errors = new String[numFiles];
+
+        for (int i = 0; i < numFiles; i++) {
+            if (in.readBoolean()) {
+                hashes[i * 2] = in.readLong();
+                hashes[i * 2 + 1] = in.readLong();
+                isComplete[i] = in.readBoolean();
+            }
+            else {
+                errors[i] = in.readUTF();
+            }
+        }
+
+        for (int i = 0; i < numFiles; i++) {
+            var fileInfo = files.get(i);
+
+            if (errors[i] == null) {
+                fileInfo.setCachedHash(hashes[i * 2], hashes[i * 2 + 1], isComplete[i] ? fileInfo.fileSize() : 0);
+            }
+            else {
+                fileInfo.setError(errors[i]);
+            }
+        }
+    }
+}
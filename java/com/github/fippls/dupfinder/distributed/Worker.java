@@ -0,0 +1,152 @@
+package com.github.fippls.dupfinder.distributed;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.HashStageRunner;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.ReadEngine;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes files for a {@link Coordinator} on another host. The files are read from the same paths as on the coordinator,
+ * so the worker has to see the same mounts. Work units are hashed with the per-device read queues of this host, and a
+ * heartbeat tells the coordinator that the worker is still alive while a large unit is being hashed.
+ * @see Settings#coordinatorAddress
+ * @author github.com/fippls
+ */
+public class Worker {
+    private final String host;
+    private final int port;
+    private DataOutputStream out;
+
+    /**
+     * @param address Host and port of the coordinator, such as "server:7070".
+     */
+    public Worker(String address) {
+        int separator = address.lastIndexOf(':');
+
+        if (separator < 1) {
+            throw new IllegalArgumentException("expected HOST:PORT, got " + address);
+        }
+
+        this.host = address.substring(0, separator);
+        this.port = Integer.parseInt(address.substring(separator + 1));
+    }
+
+    /**
+     * Hashes work units until the coordinator is done.
+     */
+    public void run() throws IOException {
+        ScheduledExecutorService heartbeat = null;
+
+        try (var socket = new Socket(host, port);
+             var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            handshake(in);
+            Log.info("Worker: connected to coordinator ", host, ':', port);
+
+            heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeat.scheduleAtFixedRate(this::sendHeartbeat, Settings.workerHeartbeatSeconds,
+                    Settings.workerHeartbeatSeconds, TimeUnit.SECONDS);
+
+            long numUnits = 0;
+            byte messageType;
+
+            while ((messageType = in.readByte()) == WorkProtocol.WORK) {
+                long unitId = in.readLong();
+                var stage = HashStage.fromId(in.readUTF());
+                var files = readFiles(in);
+                HashStageRunner.hashAll(stage, files);
+                sendResult(unitId, files);
+                numUnits++;
+            }
+
+            if (messageType != WorkProtocol.DONE) {
+                throw new IOException("unknown message type " + messageType);
+            }
+
+            Log.info("Worker: coordinator is done, hashed ", numUnits, " work units");
+        }
+        finally {
+            if (heartbeat != null) {
+                heartbeat.shutdownNow();
+            }
+        }
+    }
+
+    private void handshake(DataInputStream in) throws IOException {
+        WorkProtocol.writeHeader(out);
+        out.writeUTF(InetAddress.getLocalHost().getHostName() + '/' + ProcessHandle.current().pid());
+        out.flush();
+
+        // The coordinator decides how files are hashed, so that all hashes of a stage can be compared:
+        WorkProtocol.readHeader(in);
+        Settings.partialHashAlgorithm = HashAlgorithms.of(in.readUTF());
+        Settings.fullHashAlgorithm = HashAlgorithms.of(in.readUTF());
+        Settings.readEngine = ReadEngine.valueOf(in.readUTF());
+    }
+
+    private static List<FileInfo> readFiles(DataInputStream in) throws IOException {
+        int numFiles = in.readInt();
+        var files = new ArrayList<FileInfo>(numFiles);
+
+        for (int i = 0; i < numFiles; i++) {
+            var path = Paths.get(in.readUTF());
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            files.add(new FileInfo(path, fileSize, lastModified, null));
+        }
+
+        return files;
+    }
+
+    private synchronized void sendResult(long unitId, List<FileInfo> files) throws IOException {
+        out.writeByte(WorkProtocol.RESULT);
+        out.writeLong(unitId);
+        out.writeInt(files.size());
+
+        for (FileInfo fileInfo : files) {
+            out.writeBoolean(!fileInfo.hasError());
+
+            if (fileInfo.hasError()) {
+                out.writeUTF(String.valueOf(fileInfo.errorMessage()));
+            }
+            else {
+                out.writeLong(fileInfo.hashHigh());
+                out.writeLong(fileInfo.hashLow());
+                out.writeBoolean(fileInfo.isCompletelyHashed());
+            }
+        }
+
+        out.flush();
+    }
+
+    private synchronized void sendHeartbeat() {
+        try {
+            out.writeByte(WorkProtocol.HEARTBEAT);
+            out.flush();
+        }
+        catch (IOException e) {
+            // The main loop finds out when it reads or sends the next message
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.hash.FastCdcChunker;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
+import com.github.fippls.dupfinder.util.FileOperationStatistics.Operation;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.ReadStatistics;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a whole file and cuts it into content-defined chunks, see {@link FastCdcChunker}.
+ * Files are read with the selected {@link ReadEngine} and the read buffers of {@link MD5SumFileReader}, so chunking
+ * reads files the same way as hashing them.
+ * @author github.com/fippls
+ */
+public class ChunkingFileReader {
+    private final FileInfo fileInfo;
+    private final FastCdcChunker chunker;
+
+    public ChunkingFileReader(FileInfo fileInfo, FastCdcChunker.ChunkConsumer consumer) {
+        this.fileInfo = fileInfo;
+        this.chunker = new FastCdcChunker(Settings.averageChunkSize, consumer);
+    }
+
+    /**
+     * @return The number of bytes read, errors are set on the file.
+     */
+    public long read() {
+        long totalBytesRead = 0;
+
+        try {
+            switch (Settings.readEngine) {
+                case MAPPED:
+                    // Small files are faster to read than to map:
+                    totalBytesRead = fileInfo.fileSize() >= Settings.minFileSizeForMappedReads ? readMapped() : readChannel();
+                    break;
+
+                case CHANNEL:
+                    totalBytesRead = readChannel();
+                    break;
+
+                default:
+                    totalBytesRead = readStream();
+                    break;
+            }
+
+            chunker.finish();
+        }
+        catch (FileNotFoundException | NoSuchFileException | AccessDeniedException e) {
+            fileInfo.setError(e.getMessage());
+        }
+        catch (IOException e) {
+            fileInfo.setError(e.getMessage());
+            ReadStatistics.addReadError();
+            Log.error("I/O exception for ", fileInfo, ": ", e.getMessage());
+        }
+
+        return totalBytesRead;
+    }
+
+    private long readStream() throws IOException {
+        long totalBytesRead = 0;
+        var readBuffer = MD5SumFileReader.heapBuffers.acquire(Settings.readBufferSize);
+
+        FileOperationStatistics.count(Operation.FILE_OPEN);
+
+        try (FileInputStream fileInputStream = new FileInputStream(fileInfo.toFile())) {
+            int bytesRead;
+
+            while ((bytesRead = fileInputStream.readNBytes(readBuffer, 0, Settings.readBufferSize)) > 0) {
+                chunker.update(readBuffer, 0, bytesRead);
+                totalBytesRead += bytesRead;
+                ReadStatistics.addBytesRead(bytesRead);
+            }
+        }
+        finally {
+            MD5SumFileReader.heapBuffers.release(readBuffer);
+        }
+
+        return totalBytesRead;
+    }
+
+    private long readChannel() throws IOException {
+        long totalBytesRead = 0;
+        var buffer = MD5SumFileReader.directBuffers.acquire(Settings.readBufferSize);
+
+        FileOperationStatistics.count(Operation.FILE_OPEN);
+
+        try (var channel = FileChannel.open(fileInfo.path(), StandardOpenOption.READ)) {
+            boolean endOfFile = false;
+
+            while (!endOfFile) {
+                buffer.clear().limit(Settings.readBufferSize);
+
+                // Fill the whole buffer before chunking, fewer and larger updates:
+                while (buffer.hasRemaining() && !endOfFile) {
+                    endOfFile = channel.read(buffer, totalBytesRead + buffer.position()) == -1;
+                }
+
+                buffer.flip();
+                int bytesRead = buffer.remaining();
+                chunker.update(buffer);
+                totalBytesRead += bytesRead;
+                ReadStatistics.addBytesRead(bytesRead);
+            }
+        }
+        finally {
+            MD5SumFileReader.directBuffers.release(buffer);
+        }
+
+        return totalBytesRead;
+    }
+
+    private long readMapped() throws IOException {
+        long totalBytesRead = 0;
+
+        FileOperationStatistics.count(Operation.FILE_OPEN);
+
+        try (var channel = FileChannel.open(fileInfo.path(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            while (totalBytesRead < fileSize) {
+                long regionSize = Math.min(Settings.mappedRegionSize, fileSize - totalBytesRead);
+                var region = channel.map(FileChannel.MapMode.READ_ONLY, totalBytesRead, regionSize);
+
+                // Chunk in read buffer sized slices so that progress is reported continuously:
+                while (region.hasRemaining()) {
+                    int sliceSize = Math.min(Settings.readBufferSize, region.remaining());
+                    var slice = region.slice();
+                    slice.limit(sliceSize);
+                    chunker.update(slice);
+                    region.position(region.position() + sliceSize);
+                    ReadStatistics.addBytesRead(sliceSize);
+                }
+
+                totalBytesRead += regionSize;
+            }
+        }
+
+        return totalBytesRead;
+    }
+}
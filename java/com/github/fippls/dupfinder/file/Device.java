@@ -0,0 +1,119 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.data.ReadType;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
+import com.github.fippls.dupfinder.util.FileOperationStatistics.Operation;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Storage device that files are read from, such as a disk partition or a network share.
+ * Files are read with separate concurrency limits for each device, so a slow device doesn't hold back the others.
+ * @author github.com/fippls
+ */
+public class Device {
+    /** Unix file keys look like "(dev=803,ino=1234)", reusing them avoids an extra file system call per file */
+    private static final Pattern UNIX_DEVICE_ID = Pattern.compile("\\(dev=([0-9a-fA-F]+),");
+    private static final Map<Object, Device> devices = new ConcurrentHashMap<>();
+
+    private final Object id;
+    private final String name;
+    private final int[] readLimits = new int[ReadType.values().length];
+
+    private Device(Object id, Path path) {
+        this.id = id;
+        this.name = storeName(path);
+
+        for (ReadType readType : ReadType.values()) {
+            readLimits[readType.ordinal()] = readType.defaultLimit();
+        }
+
+        for (var limits : Settings.readLimitsPerDevice.entrySet()) {
+            if (id.equals(deviceId(limits.getKey()))) {
+                System.arraycopy(limits.getValue(), 0, readLimits, 0, readLimits.length);
+            }
+        }
+
+        Log.debug("Reading from device ", name, ", max simultaneous reads: ", readLimits[ReadType.SMALL.ordinal()],
+                " (small), ", readLimits[ReadType.LARGE.ordinal()], " (large)");
+    }
+
+    public static Device of(FileInfo fileInfo) {
+        var id = deviceId(fileInfo.path(), fileInfo.fileKey());
+        return devices.computeIfAbsent(id, __ -> new Device(id, fileInfo.path()));
+    }
+
+    public static int numDevices() {
+        return devices.size();
+    }
+
+    /**
+     * Maximum number of files on this device that are read at the same time.
+     */
+    public int readLimit(ReadType readType) {
+        return readLimits[readType.ordinal()];
+    }
+
+    private static Object deviceId(Path path) {
+        try {
+            FileOperationStatistics.count(Operation.ATTRIBUTE_READ);
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return deviceId(path, attributes.fileKey());
+        }
+        catch (IOException e) {
+            Log.error("Unable to find device for ", path, ": ", e.getMessage());
+            return path;
+        }
+    }
+
+    /**
+     * Device number on Unix, otherwise the root of the path (drive letter or network share).
+     */
+    private static Object deviceId(Path path, Object fileKey) {
+        if (fileKey != null) {
+            var matcher = UNIX_DEVICE_ID.matcher(fileKey.toString());
+
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+
+        var root = path.toAbsolutePath().getRoot();
+        return root != null ? root.toString() : "";
+    }
+
+    private static String storeName(Path path) {
+        try {
+            FileOperationStatistics.count(Operation.ATTRIBUTE_READ);
+            return Files.getFileStore(path).toString();
+        }
+        catch (IOException e) {
+            return String.valueOf(path.toAbsolutePath().getRoot());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Device && id.equals(((Device) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.fippls.dupfinder.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reuses direct byte buffers between file reads, since they are expensive to allocate and are only freed by the GC.
+ * The pool never holds more buffers than the highest number of simultaneous file reads. Releasing a buffer allocates
+ * nothing, unlike a linked concurrent queue that needs a node for each element.
+ * @author github.com/fippls
+ */
+class DirectBufferPool {
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    /**
+     * Fetch a cleared buffer with at least the given capacity.
+     */
+    ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer;
+
+        synchronized (this) {
+            buffer = buffers.poll();
+        }
+
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        buffers.push(buffer);
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.util.Log;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directories for files that are created, modified or deleted.
+ * Events are only used to find out which paths changed, the paths themselves are checked again afterwards. When events
+ * were lost (too many at once) a complete walk is needed to catch up. Directories that can't be watched are left to the
+ * regular walks, since a walk doesn't make them watchable.
+ * Directories can be registered from several threads.
+ * @author github.com/fippls
+ */
+public class DirectoryWatcher {
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Set<Path> unwatchedDirectories = ConcurrentHashMap.newKeySet();
+    private volatile boolean eventsLost = false;
+
+    public DirectoryWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Start watching a directory, its subdirectories have to be registered on their own.
+     */
+    public void register(Path directory) {
+        try {
+            var key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, directory);
+            unwatchedDirectories.remove(directory);
+        }
+        catch (IOException e) {
+            // Usually the limit of watched directories (fs.inotify.max_user_watches on Linux):
+            if (unwatchedDirectories.isEmpty()) {
+                Log.error("Unable to watch ", directory, ": ", e.getMessage(),
+                        ", changes in it and other directories that can't be watched are only found by the regular walks");
+            }
+
+            unwatchedDirectories.add(directory);
+        }
+    }
+
+    /**
+     * Waits for changes, and keeps collecting them until no new changes have come for a while.
+     * @param timeoutMillis Maximum time to wait for the first change.
+     * @param settleMillis How long it has to be quiet before the changes are returned.
+     * @return Changed paths, they may no longer exist. Empty if nothing changed before the timeout.
+     */
+    public Set<Path> awaitChanges(long timeoutMillis, long settleMillis) throws InterruptedException {
+        var changedPaths = new LinkedHashSet<Path>();
+        var key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        while (key != null) {
+            collect(key, changedPaths);
+            key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return changedPaths;
+    }
+
+    /**
+     * If events were lost since the last call, in that case all paths have to be walked again.
+     */
+    public boolean takeEventsLost() {
+        boolean result = eventsLost;
+        eventsLost = false;
+        return result;
+    }
+
+    public int numWatchedDirectories() {
+        return directories.size();
+    }
+
+    /**
+     * Directories that couldn't be watched the last time they were registered, some of them may be gone by now.
+     */
+    public int numUnwatchedDirectories() {
+        return unwatchedDirectories.size();
+    }
+
+    private void collect(WatchKey key, Set<Path> changedPaths) {
+        var directory = directories.get(key);
+
+        for (var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                eventsLost = true;
+            }
+            else if (directory != null) {
+                changedPaths.add(directory.resolve((Path) event.context()));
+            }
+        }
+
+        // The key is no longer valid when the directory has been deleted:
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+}
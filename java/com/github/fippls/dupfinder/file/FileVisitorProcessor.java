@@ -2,8 +2,12 @@ package com.github.fippls.dupfinder.file;
 
 import com.github.fippls.dupfinder.data.Settings;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
-import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.index.IndexExporter;
+import com.github.fippls.dupfinder.metrics.Counter;
+import com.github.fippls.dupfinder.metrics.Metrics;
 import com.github.fippls.dupfinder.util.ErrorUtil;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
+import com.github.fippls.dupfinder.util.FileOperationStatistics.Operation;
 import com.github.fippls.dupfinder.util.IntervalTimer;
 import com.github.fippls.dupfinder.util.Log;
 import com.github.fippls.dupfinder.util.StringUtil;
@@ -11,55 +15,88 @@ import com.github.fippls.dupfinder.util.StringUtil;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
- * Processes files and directories.
+ * Processes files and directories. Thread-safe, so the same instance can be used by a {@link ParallelDirectoryWalker},
+ * in that case the file and directory consumers are called from several threads.
+ * Everything is decided from the attributes that the walker already fetched, so files cost no extra file system calls.
+ * Access rights are not checked here, files that can't be read are dropped when they are opened for hashing.
  * @author github.com/fippls
  */
 class FileVisitorProcessor implements FileVisitor<Path> {
+    private static final Counter filesScannedMetric = Metrics.counter("walk_files_scanned_total",
+            "Files found by the walk, before any rules are applied");
+    private static final Counter filesAddedMetric = Metrics.counter("walk_files_added_total",
+            "Files found by the walk that are checked for duplicates");
+    private static final Counter bytesAddedMetric = Metrics.counter("walk_bytes_added_total",
+            "Size of the files found by the walk that are checked for duplicates");
+
     private final IntervalTimer timer = new IntervalTimer(Settings.millisecondsBetweenProgressUpdates);
-    private final PotentialDuplicateCollection checkSumCollection;
+    private final Consumer<FileInfo> fileConsumer;
+    private final Consumer<Path> directoryConsumer;
     /** The number of files that got excluded because of rules */
-    private long numRuleBasedExclusions = 0;
+    private final LongAdder numRuleBasedExclusions = new LongAdder();
+
+    private final LongAdder totalDirectoriesScanned = new LongAdder();
+    private final LongAdder totalFilesScanned = new LongAdder();
+    private final LongAdder totalFilesAdded = new LongAdder();
+    private final LongAdder totalSizeAdded = new LongAdder();
+    private final LongAdder numHardLinks = new LongAdder();
 
-    private long totalDirectoriesScanned = 0;
-    private long totalFilesScanned = 0;
-    private long totalFilesAdded = 0;
+    /** Files by their file key (device and inode), to find hard links and files that are reached through several roots */
+    private final Map<Object, FileInfo> filesByKey = new ConcurrentHashMap<>();
 
-    FileVisitorProcessor(PotentialDuplicateCollection checkSumCollection) {
-        this.checkSumCollection = checkSumCollection;
+    FileVisitorProcessor(Consumer<FileInfo> fileConsumer, Consumer<Path> directoryConsumer) {
+        this.fileConsumer = fileConsumer;
+        this.directoryConsumer = directoryConsumer;
     }
 
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        FileOperationStatistics.count(Operation.ATTRIBUTE_READ);
+
         if (StringUtil.containsAny(dir, Settings.directoriesToExclude)) {
-            numRuleBasedExclusions++;
+            numRuleBasedExclusions.increment();
             return FileVisitResult.SKIP_SUBTREE;
         }
 
-        totalDirectoriesScanned++;
+        FileOperationStatistics.count(Operation.DIRECTORY_LISTING);
+        directoryConsumer.accept(dir);
+        totalDirectoriesScanned.increment();
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
-        if (isFileValid(path)) {
-            var fileInfo = new FileInfo(path);
+        FileOperationStatistics.count(Operation.ATTRIBUTE_READ);
+        var attributes = isFileValid(path) ? regularFileAttributes(path, attrs) : null;
 
-            if (fileInfo.isValid()) {
-                checkSumCollection.add(fileInfo);
-                totalFilesAdded++;
+        if (attributes != null) {
+            var fileInfo = new FileInfo(path, attributes);
+
+            if (fileInfo.isValid() && (collapsesLinksAfterWalk() || !isKnownFile(fileInfo))) {
+                fileConsumer.accept(fileInfo);
+                HashCache.instance().markSeen(fileInfo);
+                IndexExporter.instance().add(fileInfo);
+                totalFilesAdded.increment();
+                totalSizeAdded.add(fileInfo.fileSize());
+                filesAddedMetric.increment();
+                bytesAddedMetric.add(fileInfo.fileSize());
             }
         }
 
-        totalFilesScanned++;
+        totalFilesScanned.increment();
+        filesScannedMetric.increment();
 
         if (Settings.showProgressUpdates && timer.done()) {
-            Log.info("  Files added/scanned: ", totalFilesAdded, " / ", totalFilesScanned,
-                    " (directories scanned: ", totalDirectoriesScanned, ")");
-            timer.reset();
+            printProgress();
         }
 
         return FileVisitResult.CONTINUE;
@@ -67,6 +104,8 @@ class FileVisitorProcessor implements FileVisitor<Path> {
 
     @Override
     public FileVisitResult visitFileFailed(Path path, IOException exception) {
+        FileOperationStatistics.count(Operation.ATTRIBUTE_READ);
+
         // The "System Volume Information" in Windows somehow is never traversed as either file nor directory, but
         // still ends up causing access denied exceptions, so if that happens just don't print redundant errors:
         if (Settings.logPathErrors && !StringUtil.containsAny(path, Settings.directoriesToExclude)) {
@@ -91,21 +130,95 @@ class FileVisitorProcessor implements FileVisitor<Path> {
     }
 
     public long getNumRuleBasedExclusions() {
-        return numRuleBasedExclusions;
+        return numRuleBasedExclusions.sum();
+    }
+
+    /**
+     * The number of paths that lead to a file that was already added, not including the same path seen twice.
+     */
+    public long getNumHardLinks() {
+        return numHardLinks.sum();
+    }
+
+    public long getNumFilesAdded() {
+        return totalFilesAdded.sum();
+    }
+
+    public long getTotalSizeAdded() {
+        return totalSizeAdded.sum();
+    }
+
+    private void printProgress() {
+        synchronized (timer) {
+            // Another thread may have printed while we waited:
+            if (timer.done()) {
+                Log.info("  Files added/scanned: ", totalFilesAdded.sum(), " / ", totalFilesScanned.sum(),
+                        " (directories scanned: ", totalDirectoriesScanned.sum(), ")");
+                timer.reset();
+            }
+        }
+    }
+
+    /**
+     * Files with the same file key are the same file, so only the first path is read and hashed.
+     * Other paths are kept as links to it, and the same path reached through overlapping roots is just ignored.
+     * Not used for the compact file table or spilled size grouping, see {@link #collapsesLinksAfterWalk()}.
+     */
+    private boolean isKnownFile(FileInfo fileInfo) {
+        if (fileInfo.fileKey() == null) {
+            return false;
+        }
+
+        var knownFile = filesByKey.putIfAbsent(fileInfo.fileKey(), fileInfo);
+
+        if (knownFile == null) {
+            return false;
+        }
+
+        if (knownFile.addLink(fileInfo.path())) {
+            numHardLinks.increment();
+        }
+
+        return true;
+    }
+
+    /**
+     * The compact file table and spilled size grouping collapse links themselves once files are grouped by size, which
+     * doesn't need a map of every walked file.
+     */
+    private static boolean collapsesLinksAfterWalk() {
+        return Settings.compactFileTable || Settings.sizeGroupingMemoryBudget > 0;
     }
 
     private boolean isFileValid(Path path) {
         return excludeAllBut(path) &&
                 hasExcludedFileEnding(path) &&
-                containsAnyExcludedTerm(path) &&
-                isReadableFile(path);
+                containsAnyExcludedTerm(path);
     }
 
-    private boolean isReadableFile(Path path) {
-        var file = path.toFile();
+    /**
+     * Attributes of the file itself if it's a regular file, or of the file a symbolic link points to when links are
+     * followed. That is the only case that needs another file system call.
+     * @return Null if this is not a regular file.
+     */
+    private BasicFileAttributes regularFileAttributes(Path path, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+            return attrs;
+        }
+
+        if (!attrs.isSymbolicLink() || !Settings.followSymlinks) {
+            return null;
+        }
 
-        // This is no guarantee that we can actually read the file:
-        return file.isFile() && file.canRead();
+        try {
+            FileOperationStatistics.count(Operation.ATTRIBUTE_READ);
+            var target = Files.readAttributes(path, BasicFileAttributes.class);
+            return target.isRegularFile() ? target : null;
+        }
+        catch (IOException e) {
+            Log.pathError("Unable to follow link ", path, ": ", e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -123,14 +236,14 @@ class FileVisitorProcessor implements FileVisitor<Path> {
             return true;
         }
 
-        numRuleBasedExclusions++;
+        numRuleBasedExclusions.increment();
         return false;
     }
 
     private boolean hasExcludedFileEnding(Path path) {
         for (String term : Settings.fileEndingsToExclude) {
             if (path.toString().endsWith(term)) {
-                numRuleBasedExclusions++;
+                numRuleBasedExclusions.increment();
                 return false;
             }
         }
@@ -140,7 +253,7 @@ class FileVisitorProcessor implements FileVisitor<Path> {
 
     private boolean containsAnyExcludedTerm(Path path) {
         if (StringUtil.containsAny(path, Settings.stringsToExclude)) {
-            numRuleBasedExclusions++;
+            numRuleBasedExclusions.increment();
             return false;
         }
 
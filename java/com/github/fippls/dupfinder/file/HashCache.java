@@ -0,0 +1,296 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent on-disk cache of calculated hashes, so that repeated scans can skip reading files that haven't changed.
+ * A cached hash is only used if path, file size, modification time and file key all match the file on disk.
+ * Entries for files that no longer exist below the scanned paths are evicted when the cache is saved.
+ * @author github.com/fippls
+ */
+public class HashCache {
+    private static final int MAGIC = 0x44464843;        // "DFHC"
+    private static final int FILE_FORMAT_VERSION = 2;
+
+    /** Disabled until {@link HashCache#load(Path)} or {@link HashCache#enableInMemory()} is called */
+    private static HashCache instance = new HashCache(null, false);
+
+    /** Null if the cache is only kept in memory */
+    private final Path cacheFile;
+    private final boolean isEnabled;
+    /** Map from absolute path to cached file data */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /** Absolute paths of all files encountered during this run */
+    private final Set<String> seenPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private HashCache(Path cacheFile, boolean isEnabled) {
+        this.cacheFile = cacheFile;
+        this.isEnabled = isEnabled;
+    }
+
+    public static HashCache instance() {
+        return instance;
+    }
+
+    /**
+     * Reads the cache file and makes it the active cache.
+     * @param cacheFile Cache file, or null to disable caching. The file does not have to exist.
+     */
+    public static void load(Path cacheFile) {
+        instance = new HashCache(cacheFile, cacheFile != null);
+
+        if (cacheFile != null) {
+            instance.read();
+        }
+    }
+
+    /**
+     * Makes sure hashes are cached at least for the rest of this run, for example when the same files are hashed over and
+     * over again. Does nothing if a cache file is already used.
+     */
+    public static void enableInMemory() {
+        if (!instance.isEnabled()) {
+            instance = new HashCache(null, true);
+        }
+    }
+
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Drops the cached hashes of a file that no longer exists.
+     */
+    public void forget(Path path) {
+        if (isEnabled()) {
+            var key = path.toAbsolutePath().toString();
+            entries.remove(key);
+            seenPaths.remove(key);
+        }
+    }
+
+    /**
+     * Register that a file still exists, so it doesn't get evicted when saving.
+     */
+    public void markSeen(FileInfo fileInfo) {
+        if (isEnabled()) {
+            seenPaths.add(key(fileInfo));
+        }
+    }
+
+    /**
+     * Fetches a cached hash for a file.
+     * @param stage Identifies the type of hash, for example a partial hash of a specific length.
+     * @return The hash as high and low long, empty if there is no hash or if the file has changed since it was cached.
+     */
+    public Optional<long[]> lookup(FileInfo fileInfo, String stage) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+
+        var hash = peek(fileInfo, stage);
+        (hash.isPresent() ? hits : misses).incrementAndGet();
+        return hash;
+    }
+
+    /**
+     * Same as {@link HashCache#lookup}, without counting it as a hit or miss.
+     */
+    public Optional<long[]> peek(FileInfo fileInfo, String stage) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+
+        var entry = entries.get(key(fileInfo));
+        return Optional.ofNullable(entry != null && entry.matches(fileInfo) ? entry.hash(stage) : null);
+    }
+
+    /**
+     * Stores the current hash of a file, replacing the entry if the file has changed.
+     */
+    public void store(FileInfo fileInfo, String stage) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        entries.compute(key(fileInfo), (__, entry) -> entry != null && entry.matches(fileInfo) ? entry :
+                new Entry(fileInfo.fileSize(), fileInfo.lastModified(), fileKeyString(fileInfo)))
+                .setHash(stage, new long[] { fileInfo.hashHigh(), fileInfo.hashLow() });
+    }
+
+    /**
+     * Writes the cache to disk, dropping files below any of the scanned paths that weren't encountered this run.
+     * @param scannedPaths The paths that were completely scanned during this run.
+     */
+    public void save(List<Path> scannedPaths) {
+        if (cacheFile == null) {
+            return;
+        }
+
+        var scannedRoots = scannedPaths.stream()
+                .map(path -> path.toAbsolutePath().normalize())
+                .toArray(Path[]::new);
+        int numEvicted = 0;
+
+        for (String path : entries.keySet()) {
+            if (!seenPaths.contains(path) && isBelowAny(Paths.get(path), scannedRoots)) {
+                entries.remove(path);
+                numEvicted++;
+            }
+        }
+
+        var tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for (var mapEntry : entries.entrySet()) {
+                out.writeUTF(mapEntry.getKey());
+                mapEntry.getValue().write(out);
+            }
+        }
+        catch (IOException e) {
+            Log.error("Unable to write hash cache ", tempFile, ": ", e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            Log.error("Unable to replace hash cache ", cacheFile, ": ", e.getMessage());
+            return;
+        }
+
+        Log.debug("Hash cache: ", hits.get(), " hits, ", misses.get(), " misses (",
+                StringUtil.percentage(hits.get(), hits.get() + misses.get()), " hit rate), ",
+                numEvicted, " evicted, ", entries.size(), " entries saved to ", cacheFile);
+    }
+
+    private void read() {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FILE_FORMAT_VERSION) {
+                Log.error("Hash cache ", cacheFile, " has an unknown format, starting with an empty cache");
+                return;
+            }
+
+            int numEntries = in.readInt();
+
+            for (int i = 0; i < numEntries; i++) {
+                var path = in.readUTF();
+                entries.put(path, Entry.read(in));
+            }
+
+            Log.info("Hash cache: loaded ", numEntries, " entries from ", cacheFile);
+        }
+        catch (NoSuchFileException e) {
+            Log.info("Hash cache: ", cacheFile, " does not exist yet, it will be created");
+        }
+        catch (EOFException e) {
+            entries.clear();
+            Log.error("Hash cache ", cacheFile, " is truncated, starting with an empty cache");
+        }
+        catch (IOException e) {
+            entries.clear();
+            Log.error("Unable to read hash cache ", cacheFile, ": ", e.getMessage(), ", starting with an empty cache");
+        }
+    }
+
+    private static boolean isBelowAny(Path path, Path[] roots) {
+        for (Path root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String key(FileInfo fileInfo) {
+        return fileInfo.path().toAbsolutePath().toString();
+    }
+
+    private static String fileKeyString(FileInfo fileInfo) {
+        return String.valueOf(fileInfo.fileKey());
+    }
+
+    /**
+     * Cached data for one file.
+     */
+    private static class Entry {
+        private final long fileSize;
+        private final long lastModified;
+        private final String fileKey;
+        /** Map from hash stage to hash */
+        private final Map<String, long[]> hashes = new HashMap<>(4);
+
+        Entry(long fileSize, long lastModified, String fileKey) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        boolean matches(FileInfo fileInfo) {
+            return fileSize == fileInfo.fileSize() &&
+                    lastModified == fileInfo.lastModified() &&
+                    fileKey.equals(fileKeyString(fileInfo));
+        }
+
+        synchronized long[] hash(String stage) {
+            return hashes.get(stage);
+        }
+
+        synchronized void setHash(String stage, long[] hash) {
+            hashes.put(stage, hash);
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException {
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeUTF(fileKey);
+            out.writeByte(hashes.size());
+
+            for (var hash : hashes.entrySet()) {
+                out.writeUTF(hash.getKey());
+                out.writeLong(hash.getValue()[0]);
+                out.writeLong(hash.getValue()[1]);
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            var entry = new Entry(in.readLong(), in.readLong(), in.readUTF());
+            int numHashes = in.readUnsignedByte();
+
+            for (int i = 0; i < numHashes; i++) {
+                entry.hashes.put(in.readUTF(), new long[] { in.readLong(), in.readLong() });
+            }
+
+            return entry;
+        }
+    }
+}
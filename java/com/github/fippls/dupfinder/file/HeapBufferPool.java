@@ -0,0 +1,32 @@
+package com.github.fippls.dupfinder.file;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reuses the read buffers of the stream read engine between files. Without it every file read allocates a buffer of
+ * {@link com.github.fippls.dupfinder.data.Settings#readBufferSize}, which for millions of small files is gigabytes of
+ * short-lived garbage. The pool never holds more buffers than the highest number of simultaneous file reads.
+ * Buffers of different sizes are best kept in separate pools, since a buffer that is too small is replaced.
+ * @author github.com/fippls
+ */
+public class HeapBufferPool {
+    private final Deque<byte[]> buffers = new ArrayDeque<>();
+
+    /**
+     * Fetch a buffer with at least the given length, its content is whatever the previous read left in it.
+     */
+    public byte[] acquire(int length) {
+        byte[] buffer;
+
+        synchronized (this) {
+            buffer = buffers.poll();
+        }
+
+        return buffer != null && buffer.length >= length ? buffer : new byte[length];
+    }
+
+    public synchronized void release(byte[] buffer) {
+        buffers.push(buffer);
+    }
+}
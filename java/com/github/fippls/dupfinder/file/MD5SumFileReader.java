@@ -1,80 +1,211 @@
 package com.github.fippls.dupfinder.file;
 
+import com.github.fippls.dupfinder.data.HashStage;
 import com.github.fippls.dupfinder.data.Settings;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
-import com.github.fippls.dupfinder.detection.result.UndigestedMd5;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.hash.Hasher;
+import com.github.fippls.dupfinder.hash.HasherPool;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
+import com.github.fippls.dupfinder.util.FileOperationStatistics.Operation;
 import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.ReadStatistics;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 /**
- * Calculates MD5 sum for files.
+ * Calculates hash sums for files, MD5 unless another {@link HashAlgorithm} is selected.
+ * Read buffers and hashers come from pools and are handed back as soon as the file is hashed, so hashing a file
+ * allocates next to nothing apart from what opening the file takes.
  * @author github.com/fippls
  */
 public class MD5SumFileReader {
-    private final MessageDigest md5;
+    /** Read buffers of {@link Settings#readBufferSize}, shared with {@link ChunkingFileReader} */
+    static final DirectBufferPool directBuffers = new DirectBufferPool();
+    static final HeapBufferPool heapBuffers = new HeapBufferPool();
+    private static final HasherPool hashers = new HasherPool();
+    private static final long[] ENTIRE_FILE = { 0, Long.MAX_VALUE };
+
     private final FileInfo fileInfo;
-    private final byte[] readBuffer;
-    private final boolean simpleHashCheck;
-    private long totalBytesReadSinceLastFetch = 0;
+    private final HashStage stage;
+    private final HashAlgorithm algorithm;
+    private Hasher hasher;
 
-    public MD5SumFileReader(FileInfo fileInfo, boolean simpleHashCheck) {
-        this.md5 = createMD5();
+    public MD5SumFileReader(FileInfo fileInfo, HashStage stage, HashAlgorithm algorithm) {
         this.fileInfo = fileInfo;
-        this.simpleHashCheck = simpleHashCheck;
-
-        int bufferSize = simpleHashCheck ? Settings.numBytesForShortMD5Check : Settings.readBufferSize;
-        this.readBuffer = new byte[bufferSize];
+        this.stage = stage;
+        this.algorithm = algorithm;
     }
 
-    public UndigestedMd5 primeMd5() {
+    /**
+     * Reads the parts of the file that the stage covers and sets the hash on the file, or an error if it can't be read.
+     */
+    public void hash() {
         long totalBytesRead = 0;
+        hasher = hashers.acquire(algorithm);
 
-        try (FileInputStream fileInputStream = new FileInputStream(fileInfo.toFile())) {
-            int bytesRead;
+        try {
+            switch (Settings.readEngine) {
+                case MAPPED:
+                    if (stage.isFull() && fileInfo.fileSize() >= Settings.minFileSizeForMappedReads) {
+                        totalBytesRead = readMapped();
+                        break;
+                    }
 
-            while ((bytesRead = fileInputStream.read(readBuffer)) != -1) {
-                md5.update(readBuffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
-                totalBytesReadSinceLastFetch += bytesRead;
+                    // Small files and samples are faster to read than to map:
+                    totalBytesRead = readChannel();
+                    break;
 
-                if (simpleHashCheck) {
-                    break;      // Read only once
-                }
+                case CHANNEL:
+                    totalBytesRead = readChannel();
+                    break;
+
+                default:
+                    totalBytesRead = readStream();
+                    break;
             }
         }
-        catch (FileNotFoundException e) {
+        catch (FileNotFoundException | NoSuchFileException | AccessDeniedException e) {
             fileInfo.setError(e.getMessage());
         }
         catch (IOException e) {
             fileInfo.setError(e.getMessage());
+            ReadStatistics.addReadError();
             var cause = e.getCause();
             Log.error("I/O exception for ", fileInfo, ": ", e.getMessage(),
                     cause != null ? ", caused by: " + cause + ')' : "");
         }
 
-        // Return the undigested value so we can close the file handle and calculate the MD5 sum separately:
-        return new UndigestedMd5(totalBytesRead, md5);
+        // The file is closed before the hash is finished, and the hasher is reused once the result is read from it:
+        hasher.finish();
+        fileInfo.setHash(hasher.high(), hasher.low(), totalBytesRead);
+        hashers.release(algorithm, hasher);
+        hasher = null;
     }
 
-    public long getBytesReadAndReset() {
-        long result = totalBytesReadSinceLastFetch;
-        totalBytesReadSinceLastFetch = 0;
-        return result;
+    /**
+     * Offset/length pairs to read, the full stage reads until end of file even if the file has grown.
+     */
+    private long[] ranges() {
+        return stage.isFull() ? ENTIRE_FILE : stage.ranges(fileInfo.fileSize());
     }
 
-    private static MessageDigest createMD5() {
-        try {
-            return MessageDigest.getInstance("MD5");
+    /**
+     * Bytes to read in one go, pooled buffers are all allocated with the full read buffer size so they fit every stage.
+     */
+    private int bufferSize() {
+        return (int) Math.min(Settings.readBufferSize, stage.maxRangeLength());
+    }
+
+    private long readStream() throws IOException {
+        long totalBytesRead = 0;
+        long position = 0;
+        var ranges = ranges();
+        int bufferSize = bufferSize();
+        var readBuffer = heapBuffers.acquire(Settings.readBufferSize);
+
+        FileOperationStatistics.count(Operation.FILE_OPEN);
+
+        try (FileInputStream fileInputStream = new FileInputStream(fileInfo.toFile())) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                // The channel is only created for stages that skip parts of the file:
+                if (ranges[i] != position) {
+                    fileInputStream.getChannel().position(ranges[i]);
+                    position = ranges[i];
+                }
+
+                long remaining = ranges[i + 1];
+                int bytesRead;
+
+                // readNBytes() fills the buffer unless end of file is reached, so the ranges are always read completely
+                while (remaining > 0 &&
+                        (bytesRead = fileInputStream.readNBytes(readBuffer, 0, (int) Math.min(bufferSize, remaining))) > 0) {
+                    hasher.update(readBuffer, 0, bytesRead);
+                    totalBytesRead += bytesRead;
+                    ReadStatistics.addBytesRead(bytesRead);
+                    remaining -= bytesRead;
+                    position += bytesRead;
+                }
+            }
+        }
+        finally {
+            heapBuffers.release(readBuffer);
+        }
+
+        return totalBytesRead;
+    }
+
+    private long readChannel() throws IOException {
+        long totalBytesRead = 0;
+        var ranges = ranges();
+        int bufferSize = bufferSize();
+        var buffer = directBuffers.acquire(Settings.readBufferSize);
+
+        FileOperationStatistics.count(Operation.FILE_OPEN);
+
+        try (var channel = FileChannel.open(fileInfo.path(), StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                long position = ranges[i];
+                long end = ranges[i] + ranges[i + 1];
+                boolean endOfFile = false;
+
+                while (position < end && !endOfFile) {
+                    buffer.clear().limit((int) Math.min(bufferSize, end - position));
+
+                    // Fill the whole buffer before hashing, fewer and larger hash updates:
+                    while (buffer.hasRemaining() && !endOfFile) {
+                        int bytesRead = channel.read(buffer, position + buffer.position());
+                        endOfFile = bytesRead == -1;
+                    }
+
+                    buffer.flip();
+                    int bytesRead = buffer.remaining();
+                    hasher.update(buffer);
+                    position += bytesRead;
+                    totalBytesRead += bytesRead;
+                    ReadStatistics.addBytesRead(bytesRead);
+                }
+            }
         }
-        catch (NoSuchAlgorithmException e) {
-            Log.error("Fatal error: Could not get instance for MD5 algorithm; exiting.");
-            System.exit(-10);
-            return null;
+        finally {
+            directBuffers.release(buffer);
+        }
+
+        return totalBytesRead;
+    }
+
+    private long readMapped() throws IOException {
+        long totalBytesRead = 0;
+
+        FileOperationStatistics.count(Operation.FILE_OPEN);
+
+        try (var channel = FileChannel.open(fileInfo.path(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            while (totalBytesRead < fileSize) {
+                long regionSize = Math.min(Settings.mappedRegionSize, fileSize - totalBytesRead);
+                var region = channel.map(FileChannel.MapMode.READ_ONLY, totalBytesRead, regionSize);
+
+                // Hash in read buffer sized slices so that progress is reported continuously:
+                while (region.hasRemaining()) {
+                    int sliceSize = Math.min(Settings.readBufferSize, region.remaining());
+                    var slice = region.slice();
+                    slice.limit(sliceSize);
+                    hasher.update(slice);
+                    region.position(region.position() + sliceSize);
+                    ReadStatistics.addBytesRead(sliceSize);
+                }
+
+                totalBytesRead += regionSize;
+            }
         }
+
+        return totalBytesRead;
     }
 }
@@ -0,0 +1,138 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.util.Log;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walks directory trees with several threads, each directory is listed by its own fork-join task.
+ * Useful for network mounts where every directory listing and attribute fetch is a round trip.
+ * Calls the same {@link FileVisitor} methods as {@link Files#walkFileTree}, so the visitor must be thread-safe.
+ * @author github.com/fippls
+ */
+class ParallelDirectoryWalker {
+    private final ForkJoinPool pool;
+    private final FileVisitor<Path> visitor;
+
+    ParallelDirectoryWalker(int numThreads, FileVisitor<Path> visitor) {
+        this.pool = new ForkJoinPool(numThreads);
+        this.visitor = visitor;
+    }
+
+    /**
+     * Walks all paths at the same time and returns when everything has been visited.
+     */
+    void walk(List<Path> paths) {
+        try {
+            var tasks = new ArrayList<RecursiveAction>();
+
+            for (Path path : paths) {
+                Log.info("Reading ", path, "...");
+                tasks.add(new RootTask(path));
+            }
+
+            tasks.forEach(pool::execute);
+            tasks.forEach(RecursiveAction::join);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private void visit(Path path, List<DirectoryTask> subDirectories) throws IOException {
+        BasicFileAttributes attributes;
+
+        try {
+            // Symbolic links are not followed, same as walkFileTree without FOLLOW_LINKS:
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        catch (IOException e) {
+            visitor.visitFileFailed(path, e);
+            return;
+        }
+
+        if (!attributes.isDirectory()) {
+            visitor.visitFile(path, attributes);
+        }
+        else if (visitor.preVisitDirectory(path, attributes) == FileVisitResult.CONTINUE) {
+            subDirectories.add(new DirectoryTask(path));
+        }
+    }
+
+    @SuppressWarnings("serial")     // Tasks are never serialized
+    private class RootTask extends RecursiveAction {
+        private final Path root;
+
+        RootTask(Path root) {
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            var subDirectories = new ArrayList<DirectoryTask>(1);
+
+            try {
+                visit(root, subDirectories);
+            }
+            catch (IOException e) {
+                Log.error("I/O exception when reading path: ", e.getMessage());
+            }
+
+            invokeAll(subDirectories);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+
+        DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            var subDirectories = new ArrayList<DirectoryTask>();
+            IOException failure = null;
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    visit(entry, subDirectories);
+                }
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+            catch (DirectoryIteratorException e) {
+                failure = e.getCause();
+            }
+
+            try {
+                if (failure != null) {
+                    visitor.visitFileFailed(directory, failure);
+                }
+                else {
+                    visitor.postVisitDirectory(directory, null);
+                }
+            }
+            catch (IOException e) {
+                Log.error("I/O exception when reading path: ", e.getMessage());
+            }
+
+            // Sub directories are listed in parallel by other worker threads:
+            invokeAll(subDirectories);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.github.fippls.dupfinder.file;
 
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.FileTable;
 import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.detection.result.SpillingSizeGrouper;
 import com.github.fippls.dupfinder.util.Log;
 import com.github.fippls.dupfinder.util.StringUtil;
 
@@ -9,6 +13,7 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Grabs initial set of files from command-line arguments.
@@ -16,18 +21,86 @@ import java.util.List;
  */
 public class PathWalker {
     private final List<Path> paths;
+    /** False for small walks that are done often, such as a single changed file */
+    private final boolean logProgress;
 
     public PathWalker(List<Path> paths) {
+        this(paths, true);
+    }
+
+    public PathWalker(List<Path> paths, boolean logProgress) {
         this.paths = paths;
+        this.logProgress = logProgress;
     }
 
     public PotentialDuplicateCollection getApplicableFiles() {
         // First step is to identify all files that have the same size
         var checkSumCollection = new PotentialDuplicateCollection("File size-based check");
-        var fileProcessor = new FileVisitorProcessor(checkSumCollection);
 
+        if (Settings.sizeGroupingMemoryBudget > 0) {
+            var grouper = new SpillingSizeGrouper(Settings.sizeGroupingMemoryBudget, Settings.spillDirectory);
+            walk(grouper::add);
+            grouper.addSizeGroupsTo(checkSumCollection);
+            return checkSumCollection.resolve(false);
+        }
+
+        if (Settings.compactFileTable) {
+            var fileTable = new FileTable();
+            walk(fileTable::add);
+            fileTable.addSizeGroupsTo(checkSumCollection);
+            return checkSumCollection.resolve(false);
+        }
+
+        walk(fileInfo -> {
+            synchronized (checkSumCollection) {
+                checkSumCollection.add(fileInfo);
+            }
+        });
+
+        checkSumCollection.resolve(true);
+        return checkSumCollection;
+    }
+
+    /**
+     * Walks through all paths and hands over every file that passes the rules to the consumer.
+     * The consumer is called from several threads at the same time when {@link Settings#numWalkerThreads} is above one.
+     */
+    public void walk(Consumer<FileInfo> fileConsumer) {
+        walk(fileConsumer, directory -> {});
+    }
+
+    /**
+     * Same as {@link PathWalker#walk(Consumer)}, and also hands over every directory that is walked into.
+     */
+    public void walk(Consumer<FileInfo> fileConsumer, Consumer<Path> directoryConsumer) {
+        var fileProcessor = new FileVisitorProcessor(fileConsumer, directoryConsumer);
+
+        if (Settings.numWalkerThreads > 1 && logProgress) {
+            new ParallelDirectoryWalker(Settings.numWalkerThreads, fileProcessor).walk(paths);
+        }
+        else {
+            walkSequentially(fileProcessor);
+        }
+
+        if (!logProgress) {
+            return;
+        }
+
+        Log.info("    Input: ", fileProcessor.getNumFilesAdded(), " files (",
+                fileProcessor.getNumRuleBasedExclusions(), " excluded based on rules): ",
+                StringUtil.getFileSizeString(fileProcessor.getTotalSizeAdded()));
+
+        if (fileProcessor.getNumHardLinks() > 0) {
+            Log.info("    Hard links: ", fileProcessor.getNumHardLinks(),
+                    " paths lead to files that were already found, these are only read once and are not duplicates");
+        }
+    }
+
+    private void walkSequentially(FileVisitorProcessor fileProcessor) {
         for (Path path : paths) {
-            Log.info("Reading ", path, "...");
+            if (logProgress) {
+                Log.info("Reading ", path, "...");
+            }
 
             try {
                 // Walk through all files on this path and use the file size as the initial checksum
@@ -35,15 +108,8 @@ public class PathWalker {
             }
             catch (IOException | UncheckedIOException e) {
                 Log.error("I/O exception when reading path: ", e.getMessage(), "\nPath search aborted after ",
-                        checkSumCollection.numTotalFiles(), " files were scanned, continuing...");
+                        fileProcessor.getNumFilesAdded(), " files were scanned, continuing...");
             }
         }
-
-        Log.info("    Input: ", checkSumCollection.numTotalFiles(), " files (",
-                fileProcessor.getNumRuleBasedExclusions(), " excluded based on rules): ",
-                StringUtil.getFileSizeString(checkSumCollection.totalSize()));
-
-        checkSumCollection.resolve(true);
-        return checkSumCollection;
     }
 }
@@ -0,0 +1,17 @@
+package com.github.fippls.dupfinder.file;
+
+/**
+ * How file contents are read when calculating hashes.
+ * @author github.com/fippls
+ */
+public enum ReadEngine {
+    /** Plain {@link java.io.FileInputStream} reads into a heap buffer */
+    STREAM,
+    /** {@link java.nio.channels.FileChannel} reads into reusable direct buffers, saves a copy per read */
+    CHANNEL,
+    /**
+     * Like {@link ReadEngine#CHANNEL}, but large files in the full check are memory-mapped instead of read.
+     * @see com.github.fippls.dupfinder.data.Settings#minFileSizeForMappedReads
+     */
+    MAPPED
+}
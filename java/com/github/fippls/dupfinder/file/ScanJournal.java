@@ -0,0 +1,419 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.util.IntervalTimer;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only journal of a scan, so that a scan that was interrupted can be resumed without reading files again.
+ * Records the files that share their size with another file once the walk is done, and the result of every hashed file
+ * as soon as it's done. The journal is flushed to disk at regular intervals and at the end of each step.
+ * When resuming, the journal is only used if it was written for the same paths and settings, and a hash is only used if
+ * the size and modification time of the file are still the same. It's rewritten without any torn record at the end
+ * before new records are appended.
+ * @see Settings#journalFile
+ * @author github.com/fippls
+ */
+public class ScanJournal {
+    private static final int MAGIC = 0x44464a4e;        // "DFJN"
+    private static final int FILE_FORMAT_VERSION = 2;
+
+    private static final byte RECORD_FILE = 1;
+    private static final byte RECORD_WALK_DONE = 2;
+    private static final byte RECORD_HASH = 3;
+
+    /** Disabled until {@link ScanJournal#open(Path, boolean, List)} is called */
+    private static ScanJournal instance = new ScanJournal(null, null);
+
+    private final Path journalFile;
+    /** Identifies the paths and settings of the scan, a journal for anything else can't be resumed */
+    private final String scanId;
+    private final IntervalTimer syncTimer = new IntervalTimer(Settings.journalSyncMilliseconds);
+
+    private FileOutputStream fileStream;
+    private DataOutputStream out;
+
+    /** Files from the resumed journal, null if the walk has to be done */
+    private List<FileInfo> restoredFiles;
+    /** Hashes from the resumed journal, by hash stage and path */
+    private final Map<String, Map<String, RestoredHash>> restoredHashes = new HashMap<>();
+
+    private ScanJournal(Path journalFile, String scanId) {
+        this.journalFile = journalFile;
+        this.scanId = scanId;
+    }
+
+    public static ScanJournal instance() {
+        return instance;
+    }
+
+    /**
+     * Makes a journal the active one, and makes sure the last records are on disk if the program is shut down.
+     * @param journalFile Journal file, or null to disable the journal.
+     * @param resume Continue from the journal if it's there, otherwise any existing journal is replaced.
+     * @param scannedPaths The paths that are scanned, a journal for other paths is never resumed.
+     */
+    public static void open(Path journalFile, boolean resume, List<Path> scannedPaths) {
+        if (journalFile == null) {
+            return;
+        }
+
+        instance = new ScanJournal(journalFile, scanId(scannedPaths));
+
+        if (resume) {
+            instance.read();
+        }
+
+        instance.create();
+        Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "journal"));
+    }
+
+    public boolean isEnabled() {
+        return out != null;
+    }
+
+    /**
+     * The files that share their size with another file, if the walk was finished in the resumed journal.
+     */
+    public synchronized Optional<PotentialDuplicateCollection> restoredWalk() {
+        if (restoredFiles == null) {
+            return Optional.empty();
+        }
+
+        var collection = new PotentialDuplicateCollection("File size-based check");
+        restoredFiles.forEach(collection::add);
+        Log.info("Journal: restored ", restoredFiles.size(), " files from the walk, skipping the walk");
+        restoredFiles = null;
+        return Optional.of(collection.resolve(false));
+    }
+
+    /**
+     * Records the files that remain after the walk, including the links to each file.
+     */
+    public synchronized void recordWalk(PotentialDuplicateCollection potentialDuplicates) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        try {
+            for (FileInfo fileInfo : potentialDuplicates.mapAllFiles(fileInfo -> fileInfo).collect(Collectors.toList())) {
+                writeFile(fileInfo);
+            }
+
+            out.writeByte(RECORD_WALK_DONE);
+            sync();
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Uses the hash from the resumed journal for a file, if the file was hashed in this stage before.
+     * @param stage Identifies the hash stage and algorithm.
+     * @return False if the file still has to be hashed.
+     */
+    public synchronized boolean restoreHash(FileInfo fileInfo, String stage) {
+        var hashes = restoredHashes.get(stage);
+        var hash = hashes != null ? hashes.remove(fileInfo.path().toString()) : null;
+
+        // A file that changed since it was hashed is hashed again:
+        if (hash == null || hash.fileSize != fileInfo.fileSize() || hash.lastModified != fileInfo.lastModified()) {
+            return false;
+        }
+
+        fileInfo.setCachedHash(hash.high, hash.low, hash.isComplete ? fileInfo.fileSize() : 0);
+        return true;
+    }
+
+    /**
+     * Records the hash of a file as soon as it's done, files with errors are hashed again when resuming.
+     */
+    public synchronized void recordHash(FileInfo fileInfo, String stage) {
+        if (!isEnabled() || fileInfo.hasError()) {
+            return;
+        }
+
+        try {
+            out.writeByte(RECORD_HASH);
+            writeString(out, stage);
+            writeString(out, fileInfo.path().toString());
+            new RestoredHash(fileInfo.fileSize(), fileInfo.lastModified(), fileInfo.hashHigh(), fileInfo.hashLow(),
+                    fileInfo.isCompletelyHashed()).write(out);
+
+            if (syncTimer.done()) {
+                sync();
+            }
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    /**
+     * Makes sure that everything recorded so far is on disk.
+     */
+    public synchronized void sync() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        try {
+            out.flush();
+            fileStream.getChannel().force(false);
+            syncTimer.reset();
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    public synchronized void close() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        sync();
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            Log.error("Unable to close journal ", journalFile, ": ", e.getMessage());
+        }
+
+        out = null;
+    }
+
+    /**
+     * Writes a new journal with everything restored from the old one, then keeps it open for appending.
+     */
+    private void create() {
+        var tempFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+
+        try {
+            fileStream = new FileOutputStream(tempFile.toFile());
+            out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_FORMAT_VERSION);
+            writeString(out, scanId);
+
+            if (restoredFiles != null) {
+                for (FileInfo fileInfo : restoredFiles) {
+                    writeFile(fileInfo);
+                }
+
+                out.writeByte(RECORD_WALK_DONE);
+            }
+
+            for (var stageHashes : restoredHashes.entrySet()) {
+                for (var pathHash : stageHashes.getValue().entrySet()) {
+                    out.writeByte(RECORD_HASH);
+                    writeString(out, stageHashes.getKey());
+                    writeString(out, pathHash.getKey());
+                    pathHash.getValue().write(out);
+                }
+            }
+
+            out.flush();
+            fileStream.getChannel().force(false);
+            out.close();
+            Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            fileStream = new FileOutputStream(journalFile.toFile(), true);
+            out = new DataOutputStream(new BufferedOutputStream(fileStream));
+        }
+        catch (IOException e) {
+            writeFailed(e);
+        }
+    }
+
+    private void read() {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FILE_FORMAT_VERSION) {
+                Log.error("Journal ", journalFile, " has an unknown format, starting over");
+                return;
+            }
+
+            if (!readString(in).equals(scanId)) {
+                Log.error("Journal ", journalFile, " is for other paths or settings, starting over");
+                return;
+            }
+
+            readRecords(in);
+        }
+        catch (NoSuchFileException e) {
+            Log.info("Journal: ", journalFile, " does not exist yet, starting a new scan");
+        }
+        catch (IOException e) {
+            restoredFiles = null;
+            restoredHashes.clear();
+            Log.error("Unable to read journal ", journalFile, ": ", e.getMessage(), ", starting over");
+        }
+    }
+
+    private void readRecords(DataInputStream in) throws IOException {
+        var files = new ArrayList<FileInfo>();
+        long numHashes = 0;
+
+        try {
+            int recordType;
+
+            while ((recordType = in.read()) != -1) {
+                switch (recordType) {
+                    case RECORD_FILE:
+                        files.add(readFile(in));
+                        break;
+
+                    case RECORD_WALK_DONE:
+                        restoredFiles = files;
+                        break;
+
+                    case RECORD_HASH:
+                        var stage = readString(in);
+                        var path = readString(in);
+                        restoredHashes.computeIfAbsent(stage, __ -> new HashMap<>()).put(path, RestoredHash.read(in));
+                        numHashes++;
+                        break;
+
+                    default:
+                        throw new IOException("unknown record type " + recordType);
+                }
+            }
+        }
+        catch (EOFException e) {
+            // The program stopped in the middle of a record, everything before it is fine
+            Log.debug("Journal ends with an incomplete record, it's left out");
+        }
+
+        Log.info("Journal: resuming from ", journalFile, " with ", restoredFiles != null ? restoredFiles.size() : 0,
+                " files and ", numHashes, " hashes");
+    }
+
+    private void writeFile(FileInfo fileInfo) throws IOException {
+        out.writeByte(RECORD_FILE);
+        writeString(out, fileInfo.path().toString());
+        out.writeLong(fileInfo.fileSize());
+        out.writeLong(fileInfo.lastModified());
+        writeString(out, fileInfo.fileKey() != null ? fileInfo.fileKey().toString() : "");
+
+        var links = fileInfo.links();
+        out.writeInt(links.size());
+
+        for (Path link : links) {
+            writeString(out, link.toString());
+        }
+    }
+
+    private static FileInfo readFile(DataInputStream in) throws IOException {
+        var path = Paths.get(readString(in));
+        long fileSize = in.readLong();
+        long lastModified = in.readLong();
+        var fileKey = readString(in);
+        var fileInfo = new FileInfo(path, fileSize, lastModified, fileKey.isEmpty() ? null : fileKey);
+        int numLinks = in.readInt();
+
+        for (int i = 0; i < numLinks; i++) {
+            fileInfo.addLink(Paths.get(readString(in)));
+        }
+
+        return fileInfo;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Not writeUTF, since that is limited to 64 kB
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeFailed(IOException e) {
+        Log.error("Unable to write journal ", journalFile, ": ", e.getMessage(), ", continuing without it");
+
+        try {
+            if (out != null) {
+                out.close();
+            }
+        }
+        catch (IOException closeException) {
+            // Already reported the first error
+        }
+
+        out = null;
+    }
+
+    /**
+     * Everything that decides which files are found and how they are hashed.
+     */
+    private static String scanId(List<Path> scannedPaths) {
+        return scannedPaths.stream().map(path -> path.toAbsolutePath().normalize().toString()).collect(Collectors.toList()) +
+                " " + Settings.hashStages.stream().map(HashStage::id).collect(Collectors.toList()) +
+                " " + Settings.partialHashAlgorithm.name() + ' ' + Settings.fullHashAlgorithm.name() +
+                " " + Settings.minFileSize + '-' + Settings.maxFileSize +
+                " " + Settings.directoriesToExclude + ' ' + Settings.followSymlinks;
+    }
+
+    /**
+     * Hash of a file, with the size and modification time that the file had when it was hashed.
+     */
+    private static class RestoredHash {
+        private final long fileSize;
+        private final long lastModified;
+        private final long high;
+        private final long low;
+        private final boolean isComplete;
+
+        RestoredHash(long fileSize, long lastModified, long high, long low, boolean isComplete) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.high = high;
+            this.low = low;
+            this.isComplete = isComplete;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(high);
+            out.writeLong(low);
+            out.writeBoolean(isComplete);
+        }
+
+        static RestoredHash read(DataInputStream in) throws IOException {
+            return new RestoredHash(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readBoolean());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.fippls.dupfinder.hash;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C, which the JDK calculates with hardware instructions on most CPUs.
+ * Only 32 bits, so it's only useful as a quick filter before a stronger hash.
+ * @author github.com/fippls
+ */
+class Crc32cAlgorithm implements HashAlgorithm {
+
+    @Override
+    public String name() {
+        return "CRC32C";
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new Crc32cHasher();
+    }
+
+    @Override
+    public boolean isCryptographic() {
+        return false;
+    }
+
+    private static class Crc32cHasher implements Hasher {
+        private final CRC32C crc = new CRC32C();
+        private long value;
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            crc.update(buffer, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            crc.update(buffer);
+        }
+
+        @Override
+        public void finish() {
+            value = crc.getValue();
+        }
+
+        @Override
+        public void reset() {
+            crc.reset();
+        }
+
+        @Override
+        public long high() {
+            return 0;
+        }
+
+        @Override
+        public long low() {
+            return value;
+        }
+    }
+}
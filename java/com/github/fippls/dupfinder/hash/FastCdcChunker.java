@@ -0,0 +1,136 @@
+package com.github.fippls.dupfinder.hash;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking with FastCDC: a Gear rolling hash over the data decides where chunks end, so a region that
+ * appears in two files is cut into the same chunks in both, even when it's at another offset. Each chunk is handed
+ * over with a 64-bit XXH64 fingerprint of its contents.
+ * Uses normalized chunking, with a harder condition before the average size and an easier one after it, which keeps
+ * chunk sizes close to the average. The first bytes of each chunk up to the minimum size are not checked at all.
+ * Data is added piece by piece, chunks may span several calls. Not thread-safe, each file needs its own chunker.
+ * @author github.com/fippls
+ */
+public class FastCdcChunker {
+    /** Random but fixed, chunk boundaries must be the same in every run */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        var random = new SplittableRandom(0x4644434443L);
+
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    public interface ChunkConsumer {
+        void chunk(long fingerprint, int length);
+    }
+
+    private final int minSize;
+    private final int averageSize;
+    private final int maxSize;
+    /** Condition before the average size, two bits more than the average needs */
+    private final long maskSmall;
+    /** Condition after the average size, two bits less than the average needs */
+    private final long maskLarge;
+    private final ChunkConsumer consumer;
+
+    private final Hasher hasher = HashAlgorithms.XXH64.newHasher();
+    private long gear = 0;
+    private int chunkLength = 0;
+
+    /**
+     * @param averageSize Average chunk size, a power of two. Chunks are at least a quarter and at most eight times this.
+     */
+    public FastCdcChunker(int averageSize, ChunkConsumer consumer) {
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        this.minSize = averageSize / 4;
+        this.averageSize = averageSize;
+        this.maxSize = averageSize * 8;
+        // The top bits of the Gear hash depend on the most bytes, so those are the ones that are checked:
+        this.maskSmall = -1L << (64 - (bits + 2));
+        this.maskLarge = -1L << (64 - (bits - 2));
+        this.consumer = consumer;
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        int chunkStart = offset;
+        int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            chunkLength++;
+
+            if (chunkLength <= minSize) {
+                continue;
+            }
+
+            gear = (gear << 1) + GEAR[buffer[i] & 0xff];
+
+            if ((gear & (chunkLength < averageSize ? maskSmall : maskLarge)) == 0 || chunkLength >= maxSize) {
+                hasher.update(buffer, chunkStart, i + 1 - chunkStart);
+                endChunk();
+                chunkStart = i + 1;
+            }
+        }
+
+        if (chunkStart < end) {
+            hasher.update(buffer, chunkStart, end - chunkStart);
+        }
+    }
+
+    /**
+     * Adds all remaining bytes in the buffer, afterwards the buffer position is at its limit. Direct and mapped buffers
+     * are chunked where they are, without copying them to the heap.
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        int chunkStart = buffer.position();
+        int end = buffer.limit();
+
+        for (int i = chunkStart; i < end; i++) {
+            chunkLength++;
+
+            if (chunkLength <= minSize) {
+                continue;
+            }
+
+            gear = (gear << 1) + GEAR[buffer.get(i) & 0xff];
+
+            if ((gear & (chunkLength < averageSize ? maskSmall : maskLarge)) == 0 || chunkLength >= maxSize) {
+                hasher.update(buffer.duplicate().limit(i + 1).position(chunkStart));
+                endChunk();
+                chunkStart = i + 1;
+            }
+        }
+
+        if (chunkStart < end) {
+            hasher.update(buffer.duplicate().limit(end).position(chunkStart));
+        }
+
+        buffer.position(end);
+    }
+
+    /**
+     * Hands over the last chunk, which may be smaller than the minimum size.
+     */
+    public void finish() {
+        if (chunkLength > 0) {
+            endChunk();
+        }
+    }
+
+    private void endChunk() {
+        hasher.finish();
+        consumer.chunk(hasher.low(), chunkLength);
+        hasher.reset();
+        gear = 0;
+        chunkLength = 0;
+    }
+}
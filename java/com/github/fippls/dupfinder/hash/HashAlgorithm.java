@@ -0,0 +1,32 @@
+package com.github.fippls.dupfinder.hash;
+
+/**
+ * A hash algorithm that can be used by one of the hash stages.
+ * @see HashAlgorithms For the built-in algorithms.
+ * @author github.com/fippls
+ */
+public interface HashAlgorithm {
+    /**
+     * Name used on the command line and in the results.
+     */
+    String name();
+
+    /**
+     * Creates a new hasher, each file needs its own hasher.
+     */
+    Hasher newHasher();
+
+    /**
+     * If the algorithm is collision resistant enough to be trusted for the final duplicate confirmation.
+     * Fast non-cryptographic hashes are fine for filtering out non-duplicates but shouldn't be used for the full check.
+     */
+    boolean isCryptographic();
+
+    /**
+     * Hashes are kept as 128 bits, longer digests are cut to their first 128 bits. These don't match the hashes that
+     * other tools print for the same file, so reports have to say so.
+     */
+    default boolean isTruncated() {
+        return false;
+    }
+}
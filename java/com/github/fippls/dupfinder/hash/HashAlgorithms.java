@@ -0,0 +1,57 @@
+package com.github.fippls.dupfinder.hash;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of all available hash algorithms.
+ * @author github.com/fippls
+ */
+public class HashAlgorithms {
+    public static final HashAlgorithm MD5 = new MessageDigestAlgorithm("MD5");
+    public static final HashAlgorithm SHA_1 = new MessageDigestAlgorithm("SHA-1");
+    public static final HashAlgorithm SHA_256 = new MessageDigestAlgorithm("SHA-256");
+    public static final HashAlgorithm SHA_512 = new MessageDigestAlgorithm("SHA-512");
+    public static final HashAlgorithm XXH64 = new XxHash64Algorithm();
+    public static final HashAlgorithm CRC32C = new Crc32cAlgorithm();
+
+    private static final Map<String, HashAlgorithm> algorithms = new LinkedHashMap<>();
+
+    static {
+        register(MD5);
+        register(SHA_1);
+        register(SHA_256);
+        register(SHA_512);
+        register(XXH64);
+        register(CRC32C);
+    }
+
+    private HashAlgorithms() {
+        // Not allowed
+    }
+
+    /**
+     * Make an additional algorithm available by name.
+     */
+    public static synchronized void register(HashAlgorithm algorithm) {
+        algorithms.put(algorithm.name().toUpperCase(), algorithm);
+    }
+
+    /**
+     * @throws IllegalArgumentException If there is no algorithm with that name.
+     */
+    public static synchronized HashAlgorithm of(String name) {
+        var algorithm = algorithms.get(name.toUpperCase());
+
+        if (algorithm == null) {
+            throw new IllegalArgumentException("unknown hash algorithm, available: " + names());
+        }
+
+        return algorithm;
+    }
+
+    public static synchronized List<String> names() {
+        return List.copyOf(algorithms.keySet());
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.fippls.dupfinder.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Calculates a hash over data that is added piece by piece.
+ * Results are always delivered as up to 128 bits, longer hashes are truncated and shorter ones are zero-padded.
+ * A hasher can be reused for the next file with {@link Hasher#reset()}, see {@link HasherPool}.
+ * @author github.com/fippls
+ */
+public interface Hasher {
+    void update(byte[] buffer, int offset, int length);
+
+    /**
+     * Hash all remaining bytes in the buffer, afterwards the buffer position is at its limit.
+     * Implementations should override this to read direct buffers without copying them to the heap.
+     */
+    default void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        var chunk = new byte[Math.min(buffer.remaining(), 8192)];
+
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), chunk.length);
+            buffer.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Finish the calculation, {@link Hasher#high()} and {@link Hasher#low()} are only valid after this call.
+     */
+    void finish();
+
+    /**
+     * Start over with nothing hashed, without allocating anything.
+     */
+    void reset();
+
+    long high();
+
+    long low();
+}
@@ -0,0 +1,36 @@
+package com.github.fippls.dupfinder.hash;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Reuses hashers between files, since creating a message digest is far more expensive than resetting one.
+ * The pool never holds more hashers of an algorithm than the highest number of files hashed at the same time, and
+ * hands out the most recently released hasher first so that its state is still in the CPU cache.
+ * @author github.com/fippls
+ */
+public class HasherPool {
+    private final Map<HashAlgorithm, Deque<Hasher>> idleHashers = new IdentityHashMap<>();
+
+    /**
+     * Fetch a hasher that has nothing hashed yet.
+     */
+    public synchronized Hasher acquire(HashAlgorithm algorithm) {
+        var idle = idleHashers.get(algorithm);
+        var hasher = idle != null ? idle.poll() : null;
+        return hasher != null ? hasher : algorithm.newHasher();
+    }
+
+    /**
+     * Hand back a hasher that was acquired for the algorithm, its result must have been read already.
+     */
+    public void release(HashAlgorithm algorithm, Hasher hasher) {
+        hasher.reset();
+
+        synchronized (this) {
+            idleHashers.computeIfAbsent(algorithm, __ -> new ArrayDeque<>()).push(hasher);
+        }
+    }
+}
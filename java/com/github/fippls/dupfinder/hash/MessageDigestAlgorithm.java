@@ -0,0 +1,107 @@
+package com.github.fippls.dupfinder.hash;
+
+import com.github.fippls.dupfinder.util.HashUtil;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Cryptographic hashes provided by the JDK, such as MD5 and SHA-256.
+ * @author github.com/fippls
+ */
+class MessageDigestAlgorithm implements HashAlgorithm {
+    private final String name;
+    private final boolean truncated;
+
+    MessageDigestAlgorithm(String name) {
+        this.name = name;
+        this.truncated = createMessageDigest().getDigestLength() > 2 * Long.BYTES;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new MessageDigestHasher(createMessageDigest());
+    }
+
+    @Override
+    public boolean isCryptographic() {
+        return true;
+    }
+
+    @Override
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(name);
+        }
+        catch (NoSuchAlgorithmException e) {
+            Log.error("Fatal error: Could not get instance for ", name, " algorithm; exiting.");
+            System.exit(-10);
+            return null;
+        }
+    }
+
+    private static class MessageDigestHasher implements Hasher {
+        private final MessageDigest messageDigest;
+        /** Reused for every digest, {@link MessageDigest#digest()} would allocate a new array each time */
+        private final byte[] digest;
+        private long high;
+        private long low;
+
+        MessageDigestHasher(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+            this.digest = new byte[messageDigest.getDigestLength()];
+        }
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            messageDigest.update(buffer, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            messageDigest.update(buffer);
+        }
+
+        @Override
+        public void finish() {
+            try {
+                messageDigest.digest(digest, 0, digest.length);
+            }
+            catch (DigestException e) {
+                // The array always fits the digest
+                throw new IllegalStateException(e);
+            }
+
+            // Digests longer than 128 bits are truncated, see HashAlgorithm#isTruncated():
+            high = HashUtil.toLong(digest, 0);
+            low = HashUtil.toLong(digest, Long.BYTES);
+        }
+
+        @Override
+        public void reset() {
+            messageDigest.reset();
+        }
+
+        @Override
+        public long high() {
+            return high;
+        }
+
+        @Override
+        public long low() {
+            return low;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.fippls.dupfinder.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Pure Java streaming implementation of the 64-bit xxHash (XXH64), seed 0.
+ * Several times faster than MD5, but not collision resistant so it should only be used for filtering.
+ * @author github.com/fippls
+ */
+class XxHash64Algorithm implements HashAlgorithm {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE_LENGTH = 32;
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public String name() {
+        return "XXH64";
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new XxHash64Hasher();
+    }
+
+    @Override
+    public boolean isCryptographic() {
+        return false;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME_1 + PRIME_4;
+    }
+
+    private static class XxHash64Hasher implements Hasher {
+        /** Bytes that didn't fill a complete stripe yet */
+        private final byte[] pending = new byte[STRIPE_LENGTH];
+        private int numPending;
+        private long totalLength;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+        private long value;
+
+        XxHash64Hasher() {
+            reset();
+        }
+
+        @Override
+        public void reset() {
+            numPending = 0;
+            totalLength = 0;
+            v1 = PRIME_1 + PRIME_2;
+            v2 = PRIME_2;
+            v3 = 0;
+            v4 = -PRIME_1;
+        }
+
+        @Override
+        public void update(byte[] buffer, int offset, int length) {
+            totalLength += length;
+            int end = offset + length;
+
+            if (numPending > 0) {
+                int toCopy = Math.min(STRIPE_LENGTH - numPending, length);
+                System.arraycopy(buffer, offset, pending, numPending, toCopy);
+                numPending += toCopy;
+                offset += toCopy;
+
+                if (numPending < STRIPE_LENGTH) {
+                    return;
+                }
+
+                processStripe(pending, 0);
+                numPending = 0;
+            }
+
+            while (offset <= end - STRIPE_LENGTH) {
+                processStripe(buffer, offset);
+                offset += STRIPE_LENGTH;
+            }
+
+            numPending = end - offset;
+            System.arraycopy(buffer, offset, pending, 0, numPending);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                Hasher.super.update(buffer);
+                return;
+            }
+
+            // Direct buffer, read the stripes straight from it instead of copying:
+            var littleEndian = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int length = buffer.remaining();
+            int offset = buffer.position();
+            int end = buffer.limit();
+            totalLength += length;
+            buffer.position(end);
+
+            if (numPending > 0) {
+                int toCopy = Math.min(STRIPE_LENGTH - numPending, length);
+                littleEndian.get(pending, numPending, toCopy);
+                numPending += toCopy;
+                offset += toCopy;
+
+                if (numPending < STRIPE_LENGTH) {
+                    return;
+                }
+
+                processStripe(pending, 0);
+                numPending = 0;
+            }
+
+            while (offset <= end - STRIPE_LENGTH) {
+                v1 = round(v1, littleEndian.getLong(offset));
+                v2 = round(v2, littleEndian.getLong(offset + 8));
+                v3 = round(v3, littleEndian.getLong(offset + 16));
+                v4 = round(v4, littleEndian.getLong(offset + 24));
+                offset += STRIPE_LENGTH;
+            }
+
+            numPending = end - offset;
+            littleEndian.position(offset);
+            littleEndian.get(pending, 0, numPending);
+        }
+
+        private void processStripe(byte[] buffer, int offset) {
+            v1 = round(v1, (long) LONG_LE.get(buffer, offset));
+            v2 = round(v2, (long) LONG_LE.get(buffer, offset + 8));
+            v3 = round(v3, (long) LONG_LE.get(buffer, offset + 16));
+            v4 = round(v4, (long) LONG_LE.get(buffer, offset + 24));
+        }
+
+        @Override
+        public void finish() {
+            long hash;
+
+            if (totalLength >= STRIPE_LENGTH) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) +
+                        Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = mergeRound(hash, v1);
+                hash = mergeRound(hash, v2);
+                hash = mergeRound(hash, v3);
+                hash = mergeRound(hash, v4);
+            }
+            else {
+                hash = PRIME_5;
+            }
+
+            hash += totalLength;
+            int offset = 0;
+
+            for (; offset + 8 <= numPending; offset += 8) {
+                hash ^= round(0, (long) LONG_LE.get(pending, offset));
+                hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+            }
+
+            if (offset + 4 <= numPending) {
+                hash ^= ((int) INT_LE.get(pending, offset) & 0xFFFFFFFFL) * PRIME_1;
+                hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+                offset += 4;
+            }
+
+            for (; offset < numPending; offset++) {
+                hash ^= (pending[offset] & 0xFF) * PRIME_5;
+                hash = Long.rotateLeft(hash, 11) * PRIME_1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME_2;
+            hash ^= hash >>> 29;
+            hash *= PRIME_3;
+            hash ^= hash >>> 32;
+            value = hash;
+        }
+
+        @Override
+        public long high() {
+            return 0;
+        }
+
+        @Override
+        public long low() {
+            return value;
+        }
+    }
+}
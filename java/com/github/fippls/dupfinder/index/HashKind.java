@@ -0,0 +1,89 @@
+package com.github.fippls.dupfinder.index;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * One type of hash in an index: the parts of the file that a hash stage reads, hashed with one algorithm.
+ * Only hashes of the same kind can be compared, also when they come from different hosts.
+ * @author github.com/fippls
+ */
+public class HashKind {
+    private final HashStage stage;
+    private final String algorithmName;
+
+    public HashKind(HashStage stage, HashAlgorithm algorithm) {
+        this(stage, algorithm.name());
+    }
+
+    private HashKind(HashStage stage, String algorithmName) {
+        this.stage = stage;
+        this.algorithmName = algorithmName;
+    }
+
+    public HashStage stage() {
+        return stage;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the algorithm isn't available in this build.
+     */
+    public HashAlgorithm algorithm() {
+        return HashAlgorithms.of(algorithmName);
+    }
+
+    /**
+     * If this kind of hash covers the entire file, in which case it's the same as every other kind with the same
+     * algorithm that covers the entire file.
+     */
+    boolean coversEntireFile(long fileSize) {
+        return stage.bytesCovered(fileSize) >= fileSize;
+    }
+
+    boolean hasSameAlgorithm(HashKind other) {
+        return algorithmName.equalsIgnoreCase(other.algorithmName);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(stage.id());
+        out.writeUTF(algorithmName);
+    }
+
+    static HashKind read(DataInputStream in) throws IOException {
+        var stageId = in.readUTF();
+        var algorithmName = in.readUTF();
+
+        try {
+            return new HashKind(HashStage.fromId(stageId), algorithmName);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("unknown hash stage " + stageId, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof HashKind)) {
+            return false;
+        }
+
+        var kind = (HashKind) other;
+        return stage.id().equals(kind.stage.id()) && hasSameAlgorithm(kind);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stage.id(), algorithmName.toUpperCase());
+    }
+
+    @Override
+    public String toString() {
+        return stage + " (" + algorithmName + ')';
+    }
+}
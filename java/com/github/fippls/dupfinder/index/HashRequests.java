@@ -0,0 +1,107 @@
+package com.github.fippls.dupfinder.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Hashes that {@link IndexMerger} needs to tell entries apart, by host and kind of hash. One file holds the requests
+ * for all hosts, and each host hashes its own entries with {@link IndexUpdater}.
+ * @see com.github.fippls.dupfinder.data.Settings#hashRequestsFile
+ * @author github.com/fippls
+ */
+public class HashRequests {
+    private static final int MAGIC = 0x44465251;        // "DFRQ"
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    /** Map from host name to the paths that need each kind of hash */
+    private final Map<String, Map<HashKind, List<String>>> pathsByHost = new TreeMap<>();
+    private long numRequests = 0;
+
+    public void add(String hostName, HashKind kind, String path) {
+        pathsByHost.computeIfAbsent(hostName, __ -> new LinkedHashMap<>())
+                .computeIfAbsent(kind, __ -> new ArrayList<>())
+                .add(path);
+        numRequests++;
+    }
+
+    public long numRequests() {
+        return numRequests;
+    }
+
+    public int numHosts() {
+        return pathsByHost.size();
+    }
+
+    /**
+     * The paths of one host that need each kind of hash, empty if the host has nothing to hash.
+     */
+    public Map<HashKind, List<String>> forHost(String hostName) {
+        return pathsByHost.getOrDefault(hostName, Map.of());
+    }
+
+    public void write(Path requestsFile) throws IOException {
+        var tempFile = requestsFile.resolveSibling(requestsFile.getFileName() + ".tmp");
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(pathsByHost.size());
+
+            for (var host : pathsByHost.entrySet()) {
+                out.writeUTF(host.getKey());
+                out.writeInt(host.getValue().size());
+
+                for (var kind : host.getValue().entrySet()) {
+                    kind.getKey().write(out);
+                    out.writeInt(kind.getValue().size());
+
+                    for (String path : kind.getValue()) {
+                        out.writeUTF(path);
+                    }
+                }
+            }
+        }
+
+        Files.move(tempFile, requestsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static HashRequests read(Path requestsFile) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(requestsFile))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FILE_FORMAT_VERSION) {
+                throw new IOException("not a hash requests file, or written by another version");
+            }
+
+            var requests = new HashRequests();
+            int numHosts = in.readInt();
+
+            for (int i = 0; i < numHosts; i++) {
+                var hostName = in.readUTF();
+                int numKinds = in.readInt();
+
+                for (int j = 0; j < numKinds; j++) {
+                    var kind = HashKind.read(in);
+                    int numPaths = in.readInt();
+
+                    for (int k = 0; k < numPaths; k++) {
+                        requests.add(hostName, kind, in.readUTF());
+                    }
+                }
+            }
+
+            return requests;
+        }
+    }
+}
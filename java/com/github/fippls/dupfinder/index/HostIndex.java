@@ -0,0 +1,288 @@
+package com.github.fippls.dupfinder.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Index of the files on one host: paths, sizes and the hashes that were calculated for them. Indexes are written by
+ * {@link IndexExporter} and combined by {@link IndexMerger}, so duplicates can be found across hosts that can't see
+ * each other's files. Entries are sorted by path and each path only stores what differs from the path before it,
+ * and the file is compressed.
+ * @author github.com/fippls
+ */
+public class HostIndex {
+    private static final int MAGIC = 0x44464958;        // "DFIX"
+    private static final int FILE_FORMAT_VERSION = 1;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private final String hostName;
+    private final List<HashKind> kinds;
+    private final List<Entry> entries;
+    /** Built when entries are looked up by path */
+    private Map<String, Entry> entriesByPath;
+
+    public HostIndex(String hostName, List<HashKind> kinds) {
+        this(hostName, new ArrayList<>(kinds), new ArrayList<>());
+    }
+
+    private HostIndex(String hostName, List<HashKind> kinds, List<Entry> entries) {
+        this.hostName = hostName;
+        this.kinds = kinds;
+        this.entries = entries;
+    }
+
+    public String hostName() {
+        return hostName;
+    }
+
+    /**
+     * The kinds of hashes that the entries may have, entries refer to them by their position in this list.
+     */
+    public List<HashKind> kinds() {
+        return List.copyOf(kinds);
+    }
+
+    /**
+     * The position of a kind of hash, it's added if the index doesn't have it yet.
+     */
+    public int addKind(HashKind kind) {
+        int index = kinds.indexOf(kind);
+
+        if (index >= 0) {
+            return index;
+        }
+
+        if (kinds.size() == Long.SIZE) {
+            throw new IllegalStateException("an index can't have more than " + Long.SIZE + " kinds of hashes");
+        }
+
+        kinds.add(kind);
+        return kinds.size() - 1;
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public void add(Entry entry) {
+        entries.add(entry);
+        entriesByPath = null;
+    }
+
+    /**
+     * @return Null if there is no file with that path.
+     */
+    public Entry entry(String path) {
+        if (entriesByPath == null) {
+            entriesByPath = new HashMap<>(entries.size() * 2);
+            entries.forEach(entry -> entriesByPath.put(entry.path(), entry));
+        }
+
+        return entriesByPath.get(path);
+    }
+
+    /**
+     * Writes the index to a temporary file first and moves it in place, so an index that is there is never half-written.
+     */
+    public void write(Path indexFile) throws IOException {
+        entries.sort(Comparator.comparing(Entry::path));
+        var tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tempFile), STREAM_BUFFER_SIZE)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeUTF(hostName);
+            out.writeByte(kinds.size());
+
+            for (HashKind kind : kinds) {
+                kind.write(out);
+            }
+
+            out.writeInt(entries.size());
+            var previousPath = "";
+
+            for (Entry entry : entries) {
+                entry.write(out, previousPath);
+                previousPath = entry.path();
+            }
+        }
+
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static HostIndex read(Path indexFile) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(indexFile), STREAM_BUFFER_SIZE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FILE_FORMAT_VERSION) {
+                throw new IOException("not an index file, or written by another version");
+            }
+
+            var hostName = in.readUTF();
+            int numKinds = in.readUnsignedByte();
+            var kinds = new ArrayList<HashKind>(numKinds);
+
+            for (int i = 0; i < numKinds; i++) {
+                kinds.add(HashKind.read(in));
+            }
+
+            int numEntries = in.readInt();
+            var entries = new ArrayList<Entry>(numEntries);
+            var previousPath = "";
+
+            for (int i = 0; i < numEntries; i++) {
+                var entry = Entry.read(in, previousPath, kinds.size());
+                entries.add(entry);
+                previousPath = entry.path();
+            }
+
+            return new HostIndex(hostName, kinds, entries);
+        }
+    }
+
+    /**
+     * One file in the index, together with the other paths that lead to it.
+     */
+    public static class Entry {
+        private final String path;
+        private final long fileSize;
+        private final long lastModified;
+        private final List<String> links = new ArrayList<>(0);
+        /** Bit for each kind of hash that the entry has */
+        private long hashMask;
+        /** High and low part of each kind of hash, grows as hashes are added */
+        private long[] hashes = new long[0];
+
+        public Entry(String path, long fileSize, long lastModified) {
+            this.path = path;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        public long fileSize() {
+            return fileSize;
+        }
+
+        public long lastModified() {
+            return lastModified;
+        }
+
+        public List<String> links() {
+            return links;
+        }
+
+        public void addLink(String link) {
+            if (!link.equals(path) && !links.contains(link)) {
+                links.add(link);
+            }
+        }
+
+        public boolean hasHash(int kind) {
+            return (hashMask & (1L << kind)) != 0;
+        }
+
+        public long hashHigh(int kind) {
+            return hashes[kind * 2];
+        }
+
+        public long hashLow(int kind) {
+            return hashes[kind * 2 + 1];
+        }
+
+        public boolean hasAnyHash() {
+            return hashMask != 0;
+        }
+
+        public void setHash(int kind, long hashHigh, long hashLow) {
+            if (hashes.length <= kind * 2) {
+                var grown = new long[kind * 2 + 2];
+                System.arraycopy(hashes, 0, grown, 0, hashes.length);
+                hashes = grown;
+            }
+
+            hashes[kind * 2] = hashHigh;
+            hashes[kind * 2 + 1] = hashLow;
+            hashMask |= 1L << kind;
+        }
+
+        void write(DataOutputStream out, String previousPath) throws IOException {
+            int commonPrefix = commonPrefixLength(previousPath, path);
+            out.writeShort(commonPrefix);
+            out.writeUTF(path.substring(commonPrefix));
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeByte(Long.bitCount(hashMask));
+
+            for (int kind = 0; kind < Long.SIZE; kind++) {
+                if (hasHash(kind)) {
+                    out.writeByte(kind);
+                    out.writeLong(hashHigh(kind));
+                    out.writeLong(hashLow(kind));
+                }
+            }
+
+            out.writeInt(links.size());
+
+            for (String link : links) {
+                out.writeUTF(link);
+            }
+        }
+
+        static Entry read(DataInputStream in, String previousPath, int numKinds) throws IOException {
+            int commonPrefix = in.readUnsignedShort();
+
+            if (commonPrefix > previousPath.length()) {
+                throw new IOException("corrupt path");
+            }
+
+            var entry = new Entry(previousPath.substring(0, commonPrefix) + in.readUTF(), in.readLong(), in.readLong());
+            int numHashes = in.readUnsignedByte();
+
+            for (int i = 0; i < numHashes; i++) {
+                int kind = in.readUnsignedByte();
+
+                if (kind >= numKinds) {
+                    throw new IOException("unknown kind of hash " + kind);
+                }
+
+                entry.setHash(kind, in.readLong(), in.readLong());
+            }
+
+            int numLinks = in.readInt();
+
+            for (int i = 0; i < numLinks; i++) {
+                entry.links.add(in.readUTF());
+            }
+
+            return entry;
+        }
+
+        private static int commonPrefixLength(String first, String second) {
+            int maxLength = Math.min(Math.min(first.length(), second.length()), 0xffff);
+            int length = 0;
+
+            while (length < maxLength && first.charAt(length) == second.charAt(length)) {
+                length++;
+            }
+
+            return length;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.fippls.dupfinder.index;
+
+import com.github.fippls.dupfinder.data.FullCheckMode;
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.HashCache;
+import com.github.fippls.dupfinder.thread.task.SimpleHashCallable;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects every walked file during the run and writes them to a {@link HostIndex} at the end, together with the hashes
+ * that the hash stages calculated for them. The hashes are taken from the {@link HashCache}, which is kept in memory
+ * for the run if no cache file is used. Files that were never hashed, because no other file had the same size, are
+ * in the index with just their size.
+ * @see Settings#exportIndexFile
+ * @author github.com/fippls
+ */
+public class IndexExporter {
+    /** Disabled until {@link IndexExporter#open(Path)} is called */
+    private static IndexExporter instance = new IndexExporter(null);
+
+    private final Path indexFile;
+    private final Queue<FileInfo> files = new ConcurrentLinkedQueue<>();
+
+    private IndexExporter(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public static IndexExporter instance() {
+        return instance;
+    }
+
+    /**
+     * Starts collecting walked files, must be called before the walk.
+     * @param indexFile Index file to write at the end, or null to disable the index.
+     */
+    public static void open(Path indexFile) {
+        instance = new IndexExporter(indexFile);
+
+        if (indexFile != null) {
+            HashCache.enableInMemory();
+        }
+    }
+
+    /**
+     * Called for every walked file, from several threads at the same time.
+     */
+    public void add(FileInfo fileInfo) {
+        if (indexFile != null) {
+            files.add(fileInfo);
+        }
+    }
+
+    /**
+     * Writes the index with the hashes that were calculated during the run.
+     */
+    public void write() {
+        if (indexFile == null) {
+            return;
+        }
+
+        var index = new HostIndex(hostName(), kinds());
+        var stageKeys = index.kinds().stream()
+                .map(kind -> SimpleHashCallable.cacheStage(kind.stage(), kind.algorithm()))
+                .toArray(String[]::new);
+
+        // Hard links may have been walked as separate files, depending on how the files were grouped. Only one of the
+        // paths was hashed, which is not necessarily the one that came first, so the hashes of all paths are merged:
+        var entriesByKey = new HashMap<String, HostIndex.Entry>();
+
+        for (FileInfo fileInfo : files) {
+            var fileKey = fileInfo.fileKey() != null ? fileInfo.fileKey().toString() : null;
+            var entry = fileKey != null ? entriesByKey.get(fileKey) : null;
+
+            if (entry != null) {
+                entry.addLink(absolute(fileInfo.path()));
+            }
+            else {
+                entry = new HostIndex.Entry(absolute(fileInfo.path()), fileInfo.fileSize(), fileInfo.lastModified());
+                index.add(entry);
+
+                if (fileKey != null) {
+                    entriesByKey.put(fileKey, entry);
+                }
+            }
+
+            for (Path link : fileInfo.links()) {
+                entry.addLink(absolute(link));
+            }
+
+            addHashes(entry, fileInfo, stageKeys);
+        }
+
+        long numHashed = index.entries().stream().filter(HostIndex.Entry::hasAnyHash).count();
+
+        try {
+            index.write(indexFile);
+            Log.info("Index: ", index.entries().size(), " files (", numHashed, " with hashes) of host ",
+                    index.hostName(), " written to ", indexFile, ", ", StringUtil.getFileSizeString(indexFile.toFile().length()));
+        }
+        catch (IOException e) {
+            Log.error("Unable to write index ", indexFile, ": ", e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the hashes that are cached for the file or one of its links, and that the entry doesn't have yet.
+     */
+    private static void addHashes(HostIndex.Entry entry, FileInfo fileInfo, String[] stageKeys) {
+        var paths = new ArrayList<Path>(fileInfo.links());
+        paths.add(0, fileInfo.path());
+
+        for (Path path : paths) {
+            var pathInfo = path.equals(fileInfo.path()) ? fileInfo :
+                    new FileInfo(path, fileInfo.fileSize(), fileInfo.lastModified(), fileInfo.fileKey());
+
+            for (int kind = 0; kind < stageKeys.length; kind++) {
+                if (entry.hasHash(kind)) {
+                    continue;
+                }
+
+                var hash = HashCache.instance().peek(pathInfo, stageKeys[kind]);
+
+                if (hash.isPresent()) {
+                    entry.setHash(kind, hash.get()[0], hash.get()[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The kinds of hashes that the hash stages calculate, files that are compared byte by byte have no full hash.
+     */
+    private static List<HashKind> kinds() {
+        var kinds = new ArrayList<HashKind>();
+
+        for (HashStage stage : Settings.hashStages) {
+            if (!stage.isFull()) {
+                kinds.add(new HashKind(stage, Settings.partialHashAlgorithm));
+            }
+            else if (Settings.fullCheckMode == FullCheckMode.HASH) {
+                kinds.add(new HashKind(stage, Settings.fullHashAlgorithm));
+            }
+        }
+
+        return kinds;
+    }
+
+    private static String hostName() {
+        if (Settings.hostName != null) {
+            return Settings.hostName;
+        }
+
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException e) {
+            Log.error("Unable to find the name of this host, use --host-name: ", e.getMessage());
+            return "localhost";
+        }
+    }
+
+    private static String absolute(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+}
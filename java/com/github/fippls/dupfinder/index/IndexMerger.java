@@ -0,0 +1,272 @@
+package com.github.fippls.dupfinder.index;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.DigestMap;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Finds duplicates across the indexes of several hosts, without reading any files. Entries are grouped by size first,
+ * and each size group is split by the hashes that all of its entries have, in the order of the hash stages, until the
+ * final hash confirms the duplicates. Groups where some entries are missing a hash that is needed to get further are
+ * ambiguous, the missing hashes are written as {@link HashRequests} so that each host can calculate just those, and
+ * the next merge gets further. Files reached through different hosts are reported as "host:path".
+ * @see Settings#mergeIndexes
+ * @author github.com/fippls
+ */
+public class IndexMerger {
+    private final List<Path> indexFiles;
+    private final List<HostIndex> indexes = new ArrayList<>();
+    /** All kinds of hashes in the indexes, in the order of the stages of the first index */
+    private final List<HashKind> kinds = new ArrayList<>();
+    /** Position of each kind of hash in each index, -1 if the index doesn't have that kind */
+    private int[][] localKinds;
+    /** The kind of hash that confirms duplicates, a full hash */
+    private int confirmingKind;
+    private final HashRequests requests = new HashRequests();
+    private long numAmbiguousGroups = 0;
+
+    public IndexMerger(List<Path> indexFiles) {
+        this.indexFiles = indexFiles;
+    }
+
+    /**
+     * @return The files that are duplicates of each other, grouped by their final hash.
+     */
+    public PotentialDuplicateCollection merge() {
+        readIndexes();
+        mapKinds();
+
+        var result = new PotentialDuplicateCollection("Merged indexes", kinds.get(confirmingKind).algorithm());
+        var sizeGroups = groupBySize();
+        Log.info("Checking ", sizeGroups.size(), " sizes that more than one file has, confirming duplicates with the ",
+                kinds.get(confirmingKind), " hash");
+
+        for (List<Candidate> group : sizeGroups) {
+            refine(group, 0, result);
+        }
+
+        if (numAmbiguousGroups == 0) {
+            Log.info("All duplicates are confirmed by the indexes");
+        }
+        else if (Settings.hashRequestsFile == null) {
+            Log.info(numAmbiguousGroups, " groups need more hashing to tell them apart, use --hash-requests FILE ",
+                    "to find out which files to hash");
+        }
+
+        // Also written when there is nothing left to hash, so the hosts don't hash the requests of an earlier merge again:
+        if (Settings.hashRequestsFile != null) {
+            writeRequests();
+        }
+
+        return result;
+    }
+
+    private void readIndexes() {
+        var hostNames = new HashSet<String>();
+
+        for (Path indexFile : indexFiles) {
+            try {
+                var index = HostIndex.read(indexFile);
+
+                if (!hostNames.add(index.hostName())) {
+                    Log.error("Warning: ", indexFile, " is from host ", index.hostName(),
+                            " like an earlier index, it's skipped (use --host-name when exporting)");
+                    continue;
+                }
+
+                indexes.add(index);
+                Log.info("Index ", indexFile, ": ", index.entries().size(), " files of host ", index.hostName());
+            }
+            catch (IOException e) {
+                Log.error("Unable to read index ", indexFile, ": ", e.getMessage());
+            }
+        }
+    }
+
+    private void mapKinds() {
+        for (HostIndex index : indexes) {
+            index.kinds().stream()
+                    .filter(kind -> !kinds.contains(kind))
+                    .limit(Long.SIZE - 1 - kinds.size())
+                    .forEach(kinds::add);
+        }
+
+        confirmingKind = -1;
+
+        for (int kind = 0; kind < kinds.size() && confirmingKind < 0; kind++) {
+            confirmingKind = kinds.get(kind).stage().isFull() ? kind : -1;
+        }
+
+        // The indexes were written by scans that compared files byte by byte:
+        if (confirmingKind < 0) {
+            kinds.add(new HashKind(HashStage.full(), Settings.fullHashAlgorithm));
+            confirmingKind = kinds.size() - 1;
+        }
+
+        localKinds = new int[indexes.size()][];
+
+        for (int host = 0; host < indexes.size(); host++) {
+            var hostKinds = indexes.get(host).kinds();
+            localKinds[host] = kinds.stream().mapToInt(hostKinds::indexOf).toArray();
+        }
+    }
+
+    private Collection<List<Candidate>> groupBySize() {
+        var filesBySize = new HashMap<Long, List<Candidate>>();
+        long numFiles = 0;
+
+        for (int host = 0; host < indexes.size(); host++) {
+            for (HostIndex.Entry entry : indexes.get(host).entries()) {
+                filesBySize.computeIfAbsent(entry.fileSize(), __ -> new ArrayList<>(2)).add(new Candidate(host, entry));
+                numFiles++;
+            }
+        }
+
+        filesBySize.values().removeIf(group -> group.size() < 2);
+        Log.info("Merged ", indexes.size(), " indexes: ", numFiles, " files");
+        return filesBySize.values();
+    }
+
+    /**
+     * Splits a group by the first kind of hash that all of its entries have and that hasn't been used on it yet.
+     * @param usedKinds Bit for each kind that the group has already been split by.
+     */
+    private void refine(List<Candidate> group, long usedKinds, PotentialDuplicateCollection result) {
+        if (hasAll(group, confirmingKind)) {
+            for (List<Candidate> duplicates : split(group, confirmingKind)) {
+                if (duplicates.size() > 1) {
+                    duplicates.forEach(candidate -> result.add(toFileInfo(candidate)));
+                }
+            }
+
+            return;
+        }
+
+        for (int kind = 0; kind < kinds.size(); kind++) {
+            if (kind != confirmingKind && (usedKinds & (1L << kind)) == 0 && hasAll(group, kind)) {
+                for (List<Candidate> part : split(group, kind)) {
+                    if (part.size() > 1) {
+                        refine(part, usedKinds | (1L << kind), result);
+                    }
+                }
+
+                return;
+            }
+        }
+
+        // The group is ambiguous, the hosts are asked for the first hash in the order of the stages that would get it
+        // further, at the latest the confirming hash which some entries don't have:
+        int missingKind = 0;
+
+        while ((usedKinds & (1L << missingKind)) != 0 || hasAll(group, missingKind)) {
+            missingKind++;
+        }
+
+        for (Candidate candidate : group) {
+            if (localKind(candidate, missingKind) < 0) {
+                requests.add(indexes.get(candidate.host).hostName(), kinds.get(missingKind), candidate.entry.path());
+            }
+        }
+
+        numAmbiguousGroups++;
+    }
+
+    private boolean hasAll(List<Candidate> group, int kind) {
+        return group.stream().allMatch(candidate -> localKind(candidate, kind) >= 0);
+    }
+
+    private Collection<List<Candidate>> split(List<Candidate> group, int kind) {
+        var parts = new DigestMap<List<Candidate>>();
+
+        for (Candidate candidate : group) {
+            int local = localKind(candidate, kind);
+            parts.computeIfAbsent(candidate.entry.hashHigh(local), candidate.entry.hashLow(local), ArrayList::new)
+                    .add(candidate);
+        }
+
+        return parts.values();
+    }
+
+    /**
+     * Position of a kind of hash in the entry's own index, -1 if the entry doesn't have that hash.
+     */
+    private int localKind(Candidate candidate, int kind) {
+        int local = localKinds[candidate.host][kind];
+
+        if (local >= 0 && candidate.entry.hasHash(local)) {
+            return local;
+        }
+
+        // A hash of an entire file is the same whichever stage calculated it, for example the head of a small file:
+        long fileSize = candidate.entry.fileSize();
+
+        if (!kinds.get(kind).coversEntireFile(fileSize)) {
+            return -1;
+        }
+
+        for (int other = 0; other < kinds.size(); other++) {
+            int otherLocal = localKinds[candidate.host][other];
+
+            if (otherLocal >= 0 && candidate.entry.hasHash(otherLocal) && kinds.get(other).coversEntireFile(fileSize) &&
+                    kinds.get(other).hasSameAlgorithm(kinds.get(kind))) {
+                return otherLocal;
+            }
+        }
+
+        return -1;
+    }
+
+    private FileInfo toFileInfo(Candidate candidate) {
+        var hostName = indexes.get(candidate.host).hostName();
+        var entry = candidate.entry;
+        int local = localKind(candidate, confirmingKind);
+
+        var fileInfo = new FileInfo(Paths.get(hostName + ':' + entry.path()), entry.fileSize(), entry.lastModified(), null);
+        fileInfo.setCachedHash(entry.hashHigh(local), entry.hashLow(local), entry.fileSize());
+        entry.links().forEach(link -> fileInfo.addLink(Paths.get(hostName + ':' + link)));
+        return fileInfo;
+    }
+
+    private void writeRequests() {
+        try {
+            requests.write(Settings.hashRequestsFile);
+
+            if (numAmbiguousGroups == 0) {
+                return;
+            }
+
+            Log.info(numAmbiguousGroups, " groups need more hashing to tell them apart, ", requests.numRequests(),
+                    " files on ", requests.numHosts(), " hosts written to ", Settings.hashRequestsFile, " (",
+                    StringUtil.getFileSizeString(Settings.hashRequestsFile.toFile().length()), ')');
+        }
+        catch (IOException e) {
+            Log.error("Unable to write hash requests ", Settings.hashRequestsFile, ": ", e.getMessage());
+        }
+    }
+
+    /**
+     * An entry together with the index it came from.
+     */
+    private static class Candidate {
+        private final int host;
+        private final HostIndex.Entry entry;
+
+        Candidate(int host, HostIndex.Entry entry) {
+            this.host = host;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.fippls.dupfinder.index;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.HashStageRunner;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.util.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates the hashes that {@link IndexMerger} asked this host for, and adds them to the index of this host.
+ * Only the requested files are read, and only the parts that the requested hash stages cover. Files that changed
+ * since the index was written are skipped, they are picked up when the index is exported again.
+ * @see Settings#hashRequestsFile
+ * @author github.com/fippls
+ */
+public class IndexUpdater {
+    private final Path indexFile;
+    private final Path requestsFile;
+
+    public IndexUpdater(Path indexFile, Path requestsFile) {
+        this.indexFile = indexFile;
+        this.requestsFile = requestsFile;
+    }
+
+    public void run() {
+        HostIndex index;
+        HashRequests requests;
+
+        try {
+            index = HostIndex.read(indexFile);
+            requests = HashRequests.read(requestsFile);
+        }
+        catch (IOException e) {
+            Log.error("Unable to read index ", indexFile, " or hash requests ", requestsFile, ": ", e.getMessage());
+            return;
+        }
+
+        var requestsForHost = requests.forHost(index.hostName());
+
+        if (requestsForHost.isEmpty()) {
+            Log.info("No hashes requested from host ", index.hostName(), " in ", requestsFile);
+            return;
+        }
+
+        for (var kindAndPaths : requestsForHost.entrySet()) {
+            hash(index, kindAndPaths.getKey(), kindAndPaths.getValue());
+        }
+
+        try {
+            index.write(indexFile);
+            Log.info("Index ", indexFile, " updated");
+        }
+        catch (IOException e) {
+            Log.error("Unable to write index ", indexFile, ": ", e.getMessage());
+        }
+    }
+
+    private void hash(HostIndex index, HashKind kind, List<String> paths) {
+        // The hash callables use the algorithms from the settings:
+        if (kind.stage().isFull()) {
+            Settings.fullHashAlgorithm = kind.algorithm();
+        }
+        else {
+            Settings.partialHashAlgorithm = kind.algorithm();
+        }
+
+        var entries = new ArrayList<HostIndex.Entry>();
+        var files = new ArrayList<FileInfo>();
+
+        for (String path : paths) {
+            var entry = index.entry(path);
+            var fileInfo = entry != null ? unchangedFile(entry) : null;
+
+            if (fileInfo != null) {
+                entries.add(entry);
+                files.add(fileInfo);
+            }
+        }
+
+        Log.info("Hashing ", files.size(), " files for the ", kind, " hash");
+
+        if (files.size() < paths.size()) {
+            Log.info("    ", paths.size() - files.size(), " requested files changed or were removed since the index ",
+                    "was written, export the index again to include them");
+        }
+
+        HashStageRunner.hashAll(kind.stage(), files);
+        int localKind = index.addKind(kind);
+
+        for (int i = 0; i < files.size(); i++) {
+            var fileInfo = files.get(i);
+
+            if (fileInfo.hasError()) {
+                Log.pathError("Unable to hash ", fileInfo.path(), ": ", fileInfo.errorMessage());
+            }
+            else {
+                entries.get(i).setHash(localKind, fileInfo.hashHigh(), fileInfo.hashLow());
+            }
+        }
+    }
+
+    /**
+     * @return The file as it is now, null if it has changed since the index was written.
+     */
+    private static FileInfo unchangedFile(HostIndex.Entry entry) {
+        try {
+            var path = Paths.get(entry.path());
+            var fileInfo = new FileInfo(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+            return fileInfo.fileSize() == entry.fileSize() && fileInfo.lastModified() == entry.lastModified() ? fileInfo : null;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+}
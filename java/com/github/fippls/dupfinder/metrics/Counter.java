@@ -0,0 +1,37 @@
+package com.github.fippls.dupfinder.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Value that only goes up, such as a number of files or bytes. Cheap to update from many threads at the same time.
+ * @author github.com/fippls
+ */
+public class Counter extends Metric {
+    private final LongAdder value = new LongAdder();
+
+    Counter(String labels) {
+        super(labels);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    void writePrometheus(String name, StringBuilder out) {
+        sample(out, name, labels(), get());
+    }
+
+    @Override
+    void writeJson(StringBuilder out) {
+        out.append("\"value\":").append(get());
+    }
+}
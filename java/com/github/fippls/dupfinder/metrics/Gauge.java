@@ -0,0 +1,30 @@
+package com.github.fippls.dupfinder.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Value that is read when the metrics are exported, such as a queue length or the heap size.
+ * @author github.com/fippls
+ */
+class Gauge extends Metric {
+    private volatile DoubleSupplier value;
+
+    Gauge(String labels, DoubleSupplier value) {
+        super(labels);
+        this.value = value;
+    }
+
+    void set(DoubleSupplier value) {
+        this.value = value;
+    }
+
+    @Override
+    void writePrometheus(String name, StringBuilder out) {
+        sample(out, name, labels(), value.getAsDouble());
+    }
+
+    @Override
+    void writeJson(StringBuilder out) {
+        out.append("\"value\":").append(jsonNumber(value.getAsDouble()));
+    }
+}
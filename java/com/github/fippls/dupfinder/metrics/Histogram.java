@@ -0,0 +1,78 @@
+package com.github.fippls.dupfinder.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations, in buckets that double in size from 16 microseconds up to about a minute. The smallest
+ * buckets tell cached and SSD reads apart, the largest ones cover reads of large files from slow disks and shares.
+ * Recording a value is a few comparisons and two counter updates, so it can be done for every file.
+ * @author github.com/fippls
+ */
+public class Histogram extends Metric {
+    private static final int NUM_BUCKETS = 23;
+    /** Upper bound of each bucket, in nanoseconds */
+    private static final long[] BUCKET_BOUNDS = new long[NUM_BUCKETS];
+
+    static {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            BUCKET_BOUNDS[i] = TimeUnit.MICROSECONDS.toNanos(16L << i);
+        }
+    }
+
+    /** One counter per bucket and a last one for values above all bounds */
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(String labels) {
+        super(labels);
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        int bucket = 0;
+
+        while (bucket < NUM_BUCKETS && nanos > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    @Override
+    void writePrometheus(String name, StringBuilder out) {
+        long cumulative = 0;
+
+        // Prometheus buckets are cumulative, each one counts all values up to its bound:
+        for (int i = 0; i <= NUM_BUCKETS; i++) {
+            cumulative += buckets[i].sum();
+            var bound = i < NUM_BUCKETS ? jsonNumber(seconds(BUCKET_BOUNDS[i])) : "+Inf";
+            sample(out, name + "_bucket", withLabel(labels(), "le", bound), cumulative);
+        }
+
+        sample(out, name + "_sum", labels(), seconds(sumNanos.sum()));
+        sample(out, name + "_count", labels(), cumulative);
+    }
+
+    @Override
+    void writeJson(StringBuilder out) {
+        long count = 0;
+        out.append("\"buckets\":{");
+
+        for (int i = 0; i <= NUM_BUCKETS; i++) {
+            count += buckets[i].sum();
+            var bound = i < NUM_BUCKETS ? jsonNumber(seconds(BUCKET_BOUNDS[i])) : "+Inf";
+            out.append(i > 0 ? "," : "").append('"').append(bound).append("\":").append(buckets[i].sum());
+        }
+
+        out.append("},\"count\":").append(count).append(",\"sumSeconds\":").append(jsonNumber(seconds(sumNanos.sum())));
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
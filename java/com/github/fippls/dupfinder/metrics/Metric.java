@@ -0,0 +1,45 @@
+package com.github.fippls.dupfinder.metrics;
+
+/**
+ * One time series: a metric with one set of label values.
+ * @author github.com/fippls
+ */
+abstract class Metric {
+    /** Labels in Prometheus format, such as {device="sda",read_type="large"}, or an empty string */
+    private final String labels;
+
+    Metric(String labels) {
+        this.labels = labels;
+    }
+
+    String labels() {
+        return labels;
+    }
+
+    abstract void writePrometheus(String name, StringBuilder out);
+
+    /**
+     * Writes the value fields of a JSON object, without braces.
+     */
+    abstract void writeJson(StringBuilder out);
+
+    static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(jsonNumber(value)).append('\n');
+    }
+
+    static String withLabel(String labels, String name, String value) {
+        var label = name + "=\"" + value + '"';
+        return labels.isEmpty() ? '{' + label + '}' : labels.substring(0, labels.length() - 1) + ',' + label + '}';
+    }
+
+    /**
+     * Whole numbers without decimals, NaN and infinity (which JSON doesn't support) as zero.
+     */
+    static String jsonNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "0";
+        }
+
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+}
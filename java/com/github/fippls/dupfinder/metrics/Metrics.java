@@ -0,0 +1,142 @@
+package com.github.fippls.dupfinder.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Registry of all metrics, exported by {@link MetricsExporter}. Metrics are looked up once and kept by the code that
+ * updates them, so updating a metric is never more than updating a counter.
+ * Asking for a metric that already exists, with the same name and labels, returns the existing one.
+ * Thread-safe.
+ * @author github.com/fippls
+ */
+public class Metrics {
+    public static final String PREFIX = "dupfinder_";
+
+    /** Metric families by name, sorted so the output is stable */
+    private static final Map<String, Family> families = new TreeMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels Label names and values, one after the other.
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return family(name, help, "counter").series(labels(labels), Counter::new);
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return family(name, help, "histogram").series(labels(labels), Histogram::new);
+    }
+
+    /**
+     * Registers a value that is read when the metrics are exported, replacing any earlier one with the same labels.
+     */
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series(labels(labels), seriesLabels -> new Gauge(seriesLabels, value)).set(value);
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format.
+     */
+    public static synchronized String prometheusText() {
+        var out = new StringBuilder();
+
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            family.series.values().forEach(metric -> metric.writePrometheus(family.name, out));
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * All metrics as a JSON object, with one entry for each metric and set of labels.
+     * @param durationSeconds How long the program has been running.
+     */
+    public static synchronized String jsonSummary(double durationSeconds) {
+        var out = new StringBuilder("{\n  \"durationSeconds\": ").append(Metric.jsonNumber(durationSeconds))
+                .append(",\n  \"metrics\": [");
+        boolean first = true;
+
+        for (Family family : families.values()) {
+            for (Metric metric : family.series.values()) {
+                out.append(first ? "\n" : ",\n").append("    {\"name\":\"").append(family.name)
+                        .append("\",\"type\":\"").append(family.type).append("\",\"labels\":{")
+                        .append(jsonLabels(metric.labels())).append("},");
+                metric.writeJson(out);
+                out.append('}');
+                first = false;
+            }
+        }
+
+        return out.append("\n  ]\n}\n").toString();
+    }
+
+    private static synchronized Family family(String name, String help, String type) {
+        var family = families.computeIfAbsent(PREFIX + name, fullName -> new Family(fullName, help, type));
+
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+
+        return family;
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as names and values");
+        }
+
+        if (labels.length == 0) {
+            return "";
+        }
+
+        var result = new StringBuilder("{");
+
+        for (int i = 0; i < labels.length; i += 2) {
+            result.append(i > 0 ? "," : "").append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+
+        return result.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Turns {a="1",b="2"} into "a":"1","b":"2". Values are already escaped the same way for JSON as for Prometheus.
+     */
+    private static String jsonLabels(String labels) {
+        if (labels.isEmpty()) {
+            return "";
+        }
+
+        return labels.substring(1, labels.length() - 1).replaceAll("(^|,)([a-z_]+)=\"", "$1\"$2\":\"");
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        /** Series by their labels, sorted like the families */
+        private final Map<String, Metric> series = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T extends Metric> T series(String labels, Function<String, T> factory) {
+            return (T) series.computeIfAbsent(labels, factory);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.fippls.dupfinder.metrics;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
+import com.github.fippls.dupfinder.util.Log;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the {@link Metrics} while the program runs, as a Prometheus textfile that is rewritten at regular intervals
+ * and as an HTTP endpoint for Prometheus to scrape, and as a JSON summary when the program is done.
+ * Files are written to a temporary file first and then moved in place, so a reader never sees half a file.
+ * @see Settings#metricsFile
+ * @see Settings#metricsPort
+ * @see Settings#metricsJsonFile
+ * @author github.com/fippls
+ */
+public class MetricsExporter {
+    private static final long startNanos = System.nanoTime();
+
+    private static ScheduledExecutorService textFileWriter;
+    private static HttpServer httpServer;
+    private static boolean isStarted = false;
+
+    private MetricsExporter() {
+        // Util class
+    }
+
+    /**
+     * Starts the exports that are enabled in the settings, does nothing if none of them are.
+     */
+    public static synchronized void start() {
+        if (Settings.metricsFile == null && Settings.metricsPort == 0 && Settings.metricsJsonFile == null) {
+            return;
+        }
+
+        registerProcessMetrics();
+
+        if (Settings.metricsFile != null) {
+            textFileWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            textFileWriter.scheduleAtFixedRate(MetricsExporter::writeTextFile,
+                    Settings.metricsIntervalSeconds, Settings.metricsIntervalSeconds, TimeUnit.SECONDS);
+        }
+
+        if (Settings.metricsPort != 0) {
+            startHttpServer();
+        }
+
+        isStarted = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(MetricsExporter::stop, "metrics"));
+    }
+
+    /**
+     * Writes the files a last time and stops the HTTP endpoint. Also called when the program is shut down.
+     */
+    public static synchronized void stop() {
+        if (!isStarted) {
+            return;
+        }
+
+        isStarted = false;
+
+        if (textFileWriter != null) {
+            textFileWriter.shutdownNow();
+            writeTextFile();
+        }
+
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+
+        if (Settings.metricsJsonFile != null) {
+            write(Settings.metricsJsonFile, Metrics.jsonSummary((System.nanoTime() - startNanos) / 1e9));
+        }
+    }
+
+    private static void registerProcessMetrics() {
+        var runtime = Runtime.getRuntime();
+        Metrics.gauge("heap_used_bytes", "Heap in use, including garbage that hasn't been collected yet",
+                () -> runtime.totalMemory() - runtime.freeMemory());
+        Metrics.gauge("heap_max_bytes", "Maximum heap size", runtime::maxMemory);
+        Metrics.gauge("uptime_seconds", "Time since the program was started",
+                () -> (System.nanoTime() - startNanos) / 1e9);
+
+        for (FileOperationStatistics.Operation operation : FileOperationStatistics.Operation.values()) {
+            Metrics.gauge("file_operations_total", "File system operations, each one is a system call",
+                    () -> FileOperationStatistics.get(operation), "operation", operation.name().toLowerCase());
+        }
+    }
+
+    private static void startHttpServer() {
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(Settings.metricsPort), 0);
+            httpServer.createContext("/metrics", exchange -> {
+                var body = Metrics.prometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+
+                try (var out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            httpServer.start();
+            Log.info("Metrics: serving http://localhost:", Settings.metricsPort, "/metrics");
+        }
+        catch (IOException e) {
+            Log.error("Unable to serve metrics on port ", Settings.metricsPort, ": ", e.getMessage());
+            httpServer = null;
+        }
+    }
+
+    private static void writeTextFile() {
+        write(Settings.metricsFile, Metrics.prometheusText());
+    }
+
+    private static void write(Path file, String content) {
+        var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            Files.writeString(tempFile, content);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            Log.error("Unable to write metrics to ", file, ": ", e.getMessage());
+        }
+    }
+}
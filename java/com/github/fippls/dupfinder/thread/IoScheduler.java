@@ -0,0 +1,236 @@
+package com.github.fippls.dupfinder.thread;
+
+import com.github.fippls.dupfinder.data.ReadType;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.file.Device;
+import com.github.fippls.dupfinder.metrics.Counter;
+import com.github.fippls.dupfinder.metrics.Histogram;
+import com.github.fippls.dupfinder.metrics.Metrics;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.ReadStatistics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Queues file reading tasks per device and read type, and only hands them to the worker threads when the device has a
+ * free slot. Workers never sit waiting for a busy device while tasks for other devices are queued behind them.
+ * The lane limits are the only bound on reads in flight when reads run on virtual threads.
+ * @author github.com/fippls
+ */
+public class IoScheduler {
+    private static final Map<Device, Lane[]> lanes = new ConcurrentHashMap<>();
+
+    private IoScheduler() {
+        // Only static access
+    }
+
+    /**
+     * Queue a task, it runs as soon as the device has a free slot.
+     */
+    static void execute(Device device, ReadType readType, Runnable task) {
+        var lane = lane(device, readType);
+        lane.enqueue(task);
+        dispatch(lane);
+    }
+
+    /**
+     * Let the device pull tasks from a source whenever it has a free slot, so tasks are created as late as possible.
+     * @param onExhausted Called when the source has no more tasks.
+     */
+    static void addSource(Device device, ReadType readType, Iterator<Runnable> source, Runnable onExhausted) {
+        var lane = lane(device, readType);
+        lane.addSource(source, onExhausted);
+        dispatch(lane);
+    }
+
+    /**
+     * Print the read limit of every device, mostly of interest when they were tuned during the run.
+     */
+    public static void logReadLimits() {
+        lanes.forEach((device, deviceLanes) -> {
+            for (Lane lane : deviceLanes) {
+                Log.info("  ", lane.name, ": ", lane.limit(), " simultaneous reads");
+            }
+        });
+    }
+
+    private static Lane lane(Device device, ReadType readType) {
+        return lanes.computeIfAbsent(device, IoScheduler::createLanes)[readType.ordinal()];
+    }
+
+    private static Lane[] createLanes(Device device) {
+        var result = new Lane[ReadType.values().length];
+
+        for (ReadType readType : ReadType.values()) {
+            result[readType.ordinal()] = new Lane(device, readType);
+        }
+
+        // A slow device can keep all its reads busy for a long time, so every device gets its own share of threads:
+        ThreadPool.ensurePoolSize(Settings.threadPoolSize * (lanes.size() + 1));
+        return result;
+    }
+
+    private static int totalReadLimit() {
+        int total = 0;
+
+        for (Lane[] deviceLanes : lanes.values()) {
+            for (Lane lane : deviceLanes) {
+                total += lane.limit();
+            }
+        }
+
+        return total;
+    }
+
+    private static void dispatch(Lane lane) {
+        Runnable task;
+
+        while ((task = lane.next()) != null) {
+            var laneTask = task;
+            long dispatchTime = System.nanoTime();
+
+            ThreadPool.executeRead(() -> {
+                lane.threadWait.recordNanos(System.nanoTime() - dispatchTime);
+                long startBytes = ReadStatistics.bytesReadByCurrentThread();
+                long startErrors = ReadStatistics.readErrorsByCurrentThread();
+                long startTime = System.nanoTime();
+
+                try {
+                    laneTask.run();
+                }
+                finally {
+                    lane.finished(ReadStatistics.bytesReadByCurrentThread() - startBytes,
+                            ReadStatistics.readErrorsByCurrentThread() - startErrors,
+                            System.nanoTime() - startTime);
+                    dispatch(lane);
+                }
+            });
+        }
+    }
+
+    /**
+     * Tasks for one device and read type.
+     */
+    private static class Lane {
+        private final String name;
+        private final Deque<Runnable> queue = new ArrayDeque<>();
+        private final Deque<Source> sources = new ArrayDeque<>();
+        /** Null unless read limits are tuned during the run */
+        private final ReadConcurrencyController controller;
+        private int limit;
+        private int numRunning = 0;
+
+        private final Counter bytesRead;
+        private final Counter readErrors;
+        private final Histogram readTime;
+        /** Time from when a task is handed to the thread pool until a thread starts it */
+        private final Histogram threadWait;
+
+        Lane(Device device, ReadType readType) {
+            this.name = device + " " + readType.name().toLowerCase() + " reads";
+            this.limit = device.readLimit(readType);
+            this.controller = Settings.adaptiveReadLimits ? new ReadConcurrencyController(name) : null;
+
+            String[] labels = {"device", device.toString(), "read_type", readType.name().toLowerCase()};
+            bytesRead = Metrics.counter("read_bytes_total", "Bytes read from each device", labels);
+            readErrors = Metrics.counter("read_errors_total", "Files that couldn't be read", labels);
+            readTime = Metrics.histogram("read_task_seconds", "Time to read and hash one file", labels);
+            threadWait = Metrics.histogram("read_thread_wait_seconds",
+                    "Time a read waited for a thread after the device had a free slot for it", labels);
+            Metrics.gauge("read_queue_tasks", "Reads queued for a free slot on the device", this::numQueued, labels);
+            Metrics.gauge("reads_running", "Reads in progress on the device", this::numRunning, labels);
+            Metrics.gauge("read_limit", "Maximum number of simultaneous reads on the device", this::limit, labels);
+        }
+
+        synchronized int limit() {
+            return limit;
+        }
+
+        synchronized int numQueued() {
+            return queue.size();
+        }
+
+        synchronized int numRunning() {
+            return numRunning;
+        }
+
+        synchronized void enqueue(Runnable task) {
+            queue.add(task);
+        }
+
+        synchronized void addSource(Iterator<Runnable> tasks, Runnable onExhausted) {
+            sources.add(new Source(tasks, onExhausted));
+        }
+
+        /**
+         * Takes the next task if there is a free slot, queued tasks go before tasks from sources.
+         */
+        synchronized Runnable next() {
+            if (numRunning >= limit) {
+                if (controller != null && (!queue.isEmpty() || !sources.isEmpty())) {
+                    controller.saturated();
+                }
+
+                return null;
+            }
+
+            var task = queue.poll();
+
+            while (task == null && !sources.isEmpty()) {
+                var source = sources.peek();
+
+                if (source.tasks.hasNext()) {
+                    task = source.tasks.next();
+                }
+                else {
+                    sources.poll();
+                    source.onExhausted.run();
+                }
+            }
+
+            if (task != null) {
+                numRunning++;
+            }
+
+            return task;
+        }
+
+        void finished(long bytesRead, long readErrors, long taskNanos) {
+            this.bytesRead.add(bytesRead);
+            this.readErrors.add(readErrors);
+            readTime.recordNanos(taskNanos);
+            boolean limitRaised;
+
+            synchronized (this) {
+                numRunning--;
+
+                if (controller == null) {
+                    return;
+                }
+
+                int oldLimit = limit;
+                limit = controller.taskFinished(limit, bytesRead, readErrors, taskNanos);
+                limitRaised = limit > oldLimit;
+            }
+
+            if (limitRaised) {
+                // Reads mostly wait for the device, make sure there is a thread for every allowed read:
+                ThreadPool.ensurePoolSize(totalReadLimit());
+            }
+        }
+    }
+
+    private static class Source {
+        private final Iterator<Runnable> tasks;
+        private final Runnable onExhausted;
+
+        Source(Iterator<Runnable> tasks, Runnable onExhausted) {
+            this.tasks = tasks;
+            this.onExhausted = onExhausted;
+        }
+    }
+}
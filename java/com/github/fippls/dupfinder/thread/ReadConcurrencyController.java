@@ -0,0 +1,111 @@
+package com.github.fippls.dupfinder.thread;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the read limit of one device and read type during the run, from the throughput measured over short windows.
+ * The limit climbs one step at a time while throughput improves and turns around when it gets worse. Read errors and
+ * latency spikes halve the limit right away (additive increase, multiplicative decrease).
+ * Not thread-safe, owned by a lane in the {@link IoScheduler}.
+ * @see Settings#adaptiveReadLimits
+ * @author github.com/fippls
+ */
+class ReadConcurrencyController {
+    /** Throughput changes smaller than this are treated as noise */
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+    /** A window is a latency spike when reading a byte takes this many times longer than the moving average */
+    private static final double LATENCY_SPIKE_FACTOR = 4.0;
+    private static final double LATENCY_AVERAGE_WEIGHT = 0.3;
+
+    private final String name;
+    private long windowStart = System.nanoTime();
+    private long windowBytes = 0;
+    private long windowErrors = 0;
+    private long windowTaskNanos = 0;
+    /** If the limit stopped tasks from running during the window, raising the limit is pointless otherwise */
+    private boolean windowSaturated = false;
+
+    private double lastThroughput = -1;
+    private double averageNanosPerByte = -1;
+    /** Direction of the next step, +1 or -1 */
+    private int direction = 1;
+
+    ReadConcurrencyController(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The lane had more tasks waiting than the limit allowed to run.
+     */
+    void saturated() {
+        windowSaturated = true;
+    }
+
+    /**
+     * Register a finished task.
+     * @return The new limit, changed once each adjustment window.
+     */
+    int taskFinished(int limit, long bytesRead, long readErrors, long taskNanos) {
+        windowBytes += bytesRead;
+        windowErrors += readErrors;
+        windowTaskNanos += taskNanos;
+
+        long elapsedNanos = System.nanoTime() - windowStart;
+
+        if (elapsedNanos < TimeUnit.MILLISECONDS.toNanos(Settings.readLimitAdjustmentMillis)) {
+            return limit;
+        }
+
+        double throughput = windowBytes * 1e9 / elapsedNanos;
+        double nanosPerByte = windowBytes > 0 ? (double) windowTaskNanos / windowBytes : -1;
+        int newLimit = limit;
+        String reason = null;
+
+        if (windowErrors > 0) {
+            newLimit = limit / 2;
+            direction = 1;
+            reason = windowErrors + " read errors";
+        }
+        else if (nanosPerByte > 0 && averageNanosPerByte > 0 && nanosPerByte > averageNanosPerByte * LATENCY_SPIKE_FACTOR) {
+            newLimit = limit / 2;
+            direction = 1;
+            reason = "latency spike";
+        }
+        else if (windowSaturated) {
+            if (lastThroughput >= 0 && throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+                // The last step made things worse, go back the other way:
+                direction = -direction;
+                newLimit = limit + direction;
+                reason = "throughput dropped";
+            }
+            else if (lastThroughput < 0 || throughput > lastThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+                newLimit = limit + direction;
+                reason = lastThroughput < 0 ? "probing" : "throughput improved";
+            }
+        }
+
+        newLimit = Math.max(1, Math.min(Settings.maxAdaptiveReadLimit, newLimit));
+
+        if (newLimit != limit) {
+            Log.debug("Read limit for ", name, ": ", limit, " -> ", newLimit, " (", reason, ", ",
+                    StringUtil.doubleToString1Decimal(throughput / 1_000_000), " MB/s)");
+        }
+
+        if (nanosPerByte > 0) {
+            averageNanosPerByte = averageNanosPerByte < 0 ? nanosPerByte :
+                    averageNanosPerByte + (nanosPerByte - averageNanosPerByte) * LATENCY_AVERAGE_WEIGHT;
+        }
+
+        lastThroughput = throughput;
+        windowStart = System.nanoTime();
+        windowBytes = 0;
+        windowErrors = 0;
+        windowTaskNanos = 0;
+        windowSaturated = false;
+        return newLimit;
+    }
+}
@@ -0,0 +1,234 @@
+package com.github.fippls.dupfinder.thread;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.metrics.Histogram;
+import com.github.fippls.dupfinder.metrics.Metrics;
+import com.github.fippls.dupfinder.thread.task.IoTask;
+import com.github.fippls.dupfinder.util.IntervalTimer;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.ReadStatistics;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs tasks on the {@link ThreadPool} with a limited number of tasks in flight.
+ * A new task is only taken when an earlier one has finished, so tasks can be created lazily and results are handed over
+ * as soon as each task is done. Progress is printed by the thread that waits for tasks to finish.
+ * An {@link IoTask} also waits for a free slot on the device it reads from.
+ * @see Settings#maxTasksInFlight
+ * @author github.com/fippls
+ */
+public class TaskRunner {
+    /** Used as number of tasks when it isn't known up front */
+    public static final long UNKNOWN = -1;
+
+    private static final Histogram admissionWait = Metrics.histogram("task_admission_wait_seconds",
+            "Time spent waiting for a free slot before a task could be submitted");
+
+    private final String taskType;
+    private final long numTasks;
+    private final Semaphore admission = new Semaphore(Settings.maxTasksInFlight);
+    private final AtomicLong numPending = new AtomicLong();
+    /** Number of per-device task sources that still have tasks left */
+    private final AtomicInteger numOpenSources = new AtomicInteger();
+    private final LongAdder numDone = new LongAdder();
+    private final Object resultLock = new Object();
+    private final Object completionLock = new Object();
+    private final IntervalTimer timer = new IntervalTimer(Settings.millisecondsBetweenProgressUpdates);
+
+    /**
+     * @param taskType What a task is called in progress updates, for example "Task" or "Group".
+     * @param numTasks The total number of tasks, or {@link TaskRunner#UNKNOWN}.
+     */
+    public TaskRunner(String taskType, long numTasks) {
+        this.taskType = taskType;
+        this.numTasks = numTasks;
+    }
+
+    /**
+     * Runs all tasks and waits for them to finish.
+     * @param resultConsumer Receives the result of each task, called by one thread at a time.
+     */
+    public <T> void runAll(Iterator<? extends Callable<T>> tasks, Consumer<T> resultConsumer) {
+        while (tasks.hasNext()) {
+            submit(tasks.next(), resultConsumer);
+        }
+
+        awaitCompletion();
+    }
+
+    /**
+     * Runs all tasks and waits for them to finish, with one source per device.
+     * Each device takes new tasks from its own source whenever it has a free slot, so there is no limit on tasks in
+     * flight and a slow device never holds back tasks for the others.
+     * @param sources Sources where all tasks in each source read from the same device with the same read type.
+     * @param resultConsumer Receives the result of each task, called by one thread at a time.
+     */
+    public <T> void runAllPerDevice(Collection<? extends Iterator<? extends IoTask<T>>> sources,
+                                    Consumer<T> resultConsumer) {
+        for (var source : sources) {
+            if (!source.hasNext()) {
+                continue;
+            }
+
+            var first = source.next();
+            numOpenSources.incrementAndGet();
+            IoScheduler.addSource(first.device(), first.readType(), new Iterator<>() {
+                private IoTask<T> next = first;
+
+                @Override
+                public boolean hasNext() {
+                    return next != null || source.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    var task = next != null ? next : source.next();
+                    next = null;
+                    numPending.incrementAndGet();
+                    return wrap(task, resultConsumer, false);
+                }
+            }, this::sourceExhausted);
+        }
+
+        awaitCompletion();
+    }
+
+    /**
+     * Submits a task, waiting for an earlier task to finish first if the limit of tasks in flight is reached.
+     * @param resultConsumer Receives the result, called by one thread at a time.
+     */
+    public <T> void submit(Callable<T> task, Consumer<T> resultConsumer) {
+        long waitStart = System.nanoTime();
+
+        try {
+            while (!admission.tryAcquire(Settings.millisecondsBetweenProgressUpdates, TimeUnit.MILLISECONDS)) {
+                printProgress();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.error("Interrupted while waiting to submit task: ", e.getMessage());
+            return;
+        }
+
+        admissionWait.recordNanos(System.nanoTime() - waitStart);
+        execute(task, resultConsumer, true);
+        printProgress();
+    }
+
+    /**
+     * Submits a task from a result consumer. Never waits, since the worker threads would otherwise wait for themselves,
+     * so these tasks don't count towards the limit.
+     */
+    public <T> void submitFollowUp(Callable<T> task, Consumer<T> resultConsumer) {
+        execute(task, resultConsumer, false);
+    }
+
+    /**
+     * Waits until all submitted tasks (and their follow-up tasks) are done.
+     */
+    public void awaitCompletion() {
+        synchronized (completionLock) {
+            while (numPending.get() > 0 || numOpenSources.get() > 0) {
+                try {
+                    completionLock.wait(Settings.millisecondsBetweenProgressUpdates);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Log.error("Interrupted while waiting for tasks: ", e.getMessage());
+                    return;
+                }
+
+                printProgress();
+            }
+        }
+    }
+
+    public long numPending() {
+        return numPending.get();
+    }
+
+    private <T> void execute(Callable<T> task, Consumer<T> resultConsumer, boolean admitted) {
+        numPending.incrementAndGet();
+        var runnable = wrap(task, resultConsumer, admitted);
+
+        if (task instanceof IoTask) {
+            var ioTask = (IoTask<T>) task;
+            IoScheduler.execute(ioTask.device(), ioTask.readType(), runnable);
+        }
+        else {
+            ThreadPool.execute(runnable);
+        }
+    }
+
+    private void sourceExhausted() {
+        numOpenSources.decrementAndGet();
+        wakeUpWaitingThread();
+    }
+
+    private void wakeUpWaitingThread() {
+        synchronized (completionLock) {
+            completionLock.notifyAll();
+        }
+    }
+
+    private <T> Runnable wrap(Callable<T> task, Consumer<T> resultConsumer, boolean admitted) {
+        return () -> {
+            try {
+                var result = task.call();
+
+                synchronized (resultLock) {
+                    resultConsumer.accept(result);
+                }
+            }
+            catch (Exception e) {
+                // TODO: Check if the file was deleted, NoSuchFileException
+                Log.error("Execution exception: ", e.getMessage());
+            }
+            finally {
+                numDone.increment();
+
+                if (admitted) {
+                    admission.release();
+                }
+
+                if (numPending.decrementAndGet() == 0) {
+                    wakeUpWaitingThread();
+                }
+            }
+        };
+    }
+
+    private void printProgress() {
+        if (!Settings.showProgressUpdates) {
+            return;
+        }
+
+        synchronized (timer) {
+            if (!timer.done()) {
+                return;
+            }
+
+            var mbPerSecond = ReadStatistics.bytesReadSinceLastCall() / 1000.0 / Settings.millisecondsBetweenProgressUpdates;
+
+            var progress = numTasks == UNKNOWN ?
+                    numDone.sum() + " done, " + numPending.get() + " pending" :
+                    numDone.sum() + " / " + numTasks;
+
+            Log.info("  ", taskType, ' ', progress,
+                    " (free memory: ", StringUtil.getFileSizeString(Runtime.getRuntime().freeMemory()), ')',
+                    ", speed: ", StringUtil.doubleToString1Decimal(mbPerSecond), " MB/s");
+            timer.reset();
+        }
+    }
+}
@@ -1,84 +1,116 @@
 package com.github.fippls.dupfinder.thread;
 
 import com.github.fippls.dupfinder.data.Settings;
-import com.github.fippls.dupfinder.detection.result.FileInfo;
-import com.github.fippls.dupfinder.thread.task.AbstractHashCallable;
 import com.github.fippls.dupfinder.util.Log;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 /**
  * Thread pool for hash calculations.
+ * @see TaskRunner For running a large number of tasks.
  * @author github.com/fippls
  */
 public class ThreadPool {
     private static final AtomicInteger workerCount = new AtomicInteger(0);
-    private static final ExecutorService service;
-
-    private final List<Task> enqueuedTasks = new LinkedList<>();
+    private static final ThreadPoolExecutor service;
+    /** Runs file reading tasks when {@link Settings#virtualThreads} is set and supported, null otherwise */
+    private static final ExecutorService virtualThreads;
 
     static {
-        service = Executors.newFixedThreadPool(
+        service = (ThreadPoolExecutor) Executors.newFixedThreadPool(
                 Settings.threadPoolSize, getThreadFactory("WRK"));
+        virtualThreads = Settings.virtualThreads ? createVirtualThreadExecutor() : null;
     }
 
-    public void addTask(AbstractHashCallable callable) {
-        var task = new Task(callable, service.submit(callable));
-        enqueuedTasks.add(task);
-    }
-
-    public int getNumTasks() {
-        return enqueuedTasks.size();
+    private ThreadPool() {
+        // Only static access
     }
 
-    public long numDone() {
-        return enqueuedTasks.stream()
-                .map(Task::future)
-                .filter(Future::isDone)
-                .count();
+    /**
+     * Run a task on the shared worker threads without waiting for it, the task has to report its own result.
+     */
+    public static void execute(Runnable runnable) {
+        service.execute(() -> {
+            try {
+                runnable.run();
+            }
+            catch (OutOfMemoryError e) {
+                outOfMemory(e);
+            }
+        });
     }
 
-    public List<FileInfo> fetchResult() {
-        var result = enqueuedTasks.stream()
-                .map(Task::future)
-                .map(this::getWorkResult)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+    /**
+     * Run a task that reads a file, on a virtual thread of its own if they are used, otherwise like
+     * {@link ThreadPool#execute(Runnable)}. The caller limits how many of these run at the same time.
+     */
+    public static void executeRead(Runnable runnable) {
+        if (virtualThreads == null) {
+            execute(runnable);
+            return;
+        }
 
-        // Remove for next run:
-        enqueuedTasks.clear();
+        virtualThreads.execute(() -> {
+            try {
+                runnable.run();
+            }
+            catch (OutOfMemoryError e) {
+                outOfMemory(e);
+            }
+        });
+    }
 
-        return result;
+    public static boolean usesVirtualThreads() {
+        return virtualThreads != null;
     }
 
-    private Optional<FileInfo> getWorkResult(Future<FileInfo> future) {
-        try {
-            return Optional.of(future.get());
+    /**
+     * Grow the pool to at least the given number of threads, the pool never shrinks.
+     * Not needed for file reads on virtual threads, since each read gets its own thread.
+     */
+    public static synchronized void ensurePoolSize(int numThreads) {
+        if (virtualThreads != null) {
+            return;
         }
-        catch (InterruptedException | ExecutionException e) {
-            if (e.getCause() instanceof OutOfMemoryError) {
-                long currentMemory = Runtime.getRuntime().totalMemory();
-                System.err.println("Severe error: " + e.getMessage());
-                System.err.println("Out of memory (used: " + (currentMemory / 1_000_000) +
-                        " MiB), try increasing memory amount with the -Xmx VM option. Shutting down.");
-                System.exit(-5);
-            }
 
-            // TODO: Check if the file was deleted, NoSuchFileException
-            Log.error("Interrupted or execution exception: ", e.getMessage());
+        if (numThreads > service.getMaximumPoolSize()) {
+            service.setMaximumPoolSize(numThreads);
+            service.setCorePoolSize(numThreads);
         }
+    }
 
-        return Optional.empty();
+    private static void outOfMemory(Throwable e) {
+        long currentMemory = Runtime.getRuntime().totalMemory();
+        System.err.println("Severe error: " + e.getMessage());
+        System.err.println("Out of memory (used: " + (currentMemory / 1_000_000) +
+                " MiB), try increasing memory amount with the -Xmx VM option. Shutting down.");
+        System.exit(-5);
     }
 
     public static void shutDown() {
         service.shutdown();
+
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+    }
+
+    /**
+     * Virtual threads are only available from Java 21, so the executor is looked up by name to keep running on Java 11.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            Log.error("Warning: virtual threads need Java 21 or later (running ", System.getProperty("java.version"),
+                    "), file reads use the thread pool instead");
+            return null;
+        }
     }
 
     @SuppressWarnings("SameParameterValue")
@@ -90,35 +122,4 @@ public class ThreadPool {
             }
         };
     }
-
-    public long totalNumBytesProcessedSinceLastCall() {
-        long totalBytesRead = 0;
-        var callables = enqueuedTasks.stream()
-                .map(Task::callable)
-                .collect(Collectors.toList());
-
-        for (AbstractHashCallable callable : callables) {
-            totalBytesRead += callable.getAndClearBytesRead();
-        }
-
-        return totalBytesRead;
-    }
-
-    private static class Task {
-        private final AbstractHashCallable callable;
-        private final Future<FileInfo> future;
-
-        Task(AbstractHashCallable callable, Future<FileInfo> future) {
-            this.callable = callable;
-            this.future = future;
-        }
-
-        Future<FileInfo> future() {
-            return future;
-        }
-
-        AbstractHashCallable callable() {
-            return callable;
-        }
-    }
 }
@@ -0,0 +1,41 @@
+package com.github.fippls.dupfinder.thread.task;
+
+import com.github.fippls.dupfinder.data.ReadType;
+import com.github.fippls.dupfinder.detection.result.ChunkIndex;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.ChunkingFileReader;
+import com.github.fippls.dupfinder.file.Device;
+
+/**
+ * Threaded operation for cutting a file into chunks and adding them to a {@link ChunkIndex}.
+ * @author github.com/fippls
+ */
+public class ChunkingCallable implements IoTask<FileInfo> {
+    private final FileInfo fileInfo;
+    private final int fileId;
+    private final ChunkIndex chunkIndex;
+
+    public ChunkingCallable(FileInfo fileInfo, int fileId, ChunkIndex chunkIndex) {
+        this.fileInfo = fileInfo;
+        this.fileId = fileId;
+        this.chunkIndex = chunkIndex;
+    }
+
+    @Override
+    public Device device() {
+        return Device.of(fileInfo);
+    }
+
+    @Override
+    public ReadType readType() {
+        return ReadType.LARGE;
+    }
+
+    @Override
+    public FileInfo call() {
+        var batch = chunkIndex.batch(fileId);
+        new ChunkingFileReader(fileInfo, batch::add).read();
+        batch.flush();
+        return fileInfo;
+    }
+}
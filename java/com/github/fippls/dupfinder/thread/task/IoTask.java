@@ -0,0 +1,16 @@
+package com.github.fippls.dupfinder.thread.task;
+
+import com.github.fippls.dupfinder.data.ReadType;
+import com.github.fippls.dupfinder.file.Device;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Task that reads files, run with the concurrency limit of the device it reads from.
+ * @author github.com/fippls
+ */
+public interface IoTask<T> extends Callable<T> {
+    Device device();
+
+    ReadType readType();
+}
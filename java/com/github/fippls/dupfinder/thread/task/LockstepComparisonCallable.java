@@ -0,0 +1,310 @@
+package com.github.fippls.dupfinder.thread.task;
+
+import com.github.fippls.dupfinder.data.ReadType;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.Device;
+import com.github.fippls.dupfinder.file.HeapBufferPool;
+import com.github.fippls.dupfinder.util.FileOperationStatistics;
+import com.github.fippls.dupfinder.util.FileOperationStatistics.Operation;
+import com.github.fippls.dupfinder.util.Log;
+import com.github.fippls.dupfinder.util.ReadStatistics;
+import com.github.fippls.dupfinder.util.StringUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Threaded operation that compares all files in a group of potential duplicates byte by byte.
+ * The files are read chunk by chunk in lockstep, and the group is split as soon as the contents diverge.
+ * All files in the group are expected to have the same size, files are only identical if they end at the same offset.
+ * Groups with more files than can be open at the same time are compared in batches.
+ * @author github.com/fippls
+ */
+public class LockstepComparisonCallable implements IoTask<List<List<FileInfo>>> {
+    /** Chunk buffers of all comparisons, one for each open file */
+    private static final HeapBufferPool chunkBuffers = new HeapBufferPool();
+    private final List<FileInfo> group;
+
+    public LockstepComparisonCallable(List<FileInfo> group) {
+        this.group = group;
+    }
+
+    /**
+     * @return All sets of identical files, each set containing at least two files.
+     */
+    @Override
+    public List<List<FileInfo>> call() {
+        var sets = group.size() > Settings.maxLockstepOpenFiles ? compareInBatches() : compareInLockstep(group);
+        sets.removeIf(files -> files.size() < 2);
+        return sets;
+    }
+
+    /**
+     * Files in a group can be on different devices, the device of the first file decides when the group is read.
+     */
+    @Override
+    public Device device() {
+        return Device.of(group.get(0));
+    }
+
+    @Override
+    public ReadType readType() {
+        return ReadType.LARGE;
+    }
+
+    /**
+     * Compares all files at the same time, each file is open until it is known to be unique.
+     * @return All sets of identical files, including the files that are unique. Files that can't be read are left out.
+     */
+    private static List<List<FileInfo>> compareInLockstep(List<FileInfo> files) {
+        var members = new ArrayList<Member>(files.size());
+
+        try {
+            for (FileInfo fileInfo : files) {
+                open(fileInfo, members);
+            }
+
+            var active = new ArrayList<List<Member>>();
+            var identical = new ArrayList<List<FileInfo>>();
+            long position = 0;
+
+            if (!members.isEmpty()) {
+                active.add(members);
+            }
+
+            while (!active.isEmpty()) {
+                var stillActive = new ArrayList<List<Member>>();
+
+                for (List<Member> candidates : active) {
+                    for (Member member : candidates) {
+                        member.readChunk(position);
+                    }
+
+                    for (List<Member> subGroup : splitByContent(candidates)) {
+                        if (subGroup.size() < 2) {
+                            subGroup.forEach(Member::close);     // Unique, no need to read it any further
+                            identical.add(toFileInfos(subGroup));
+                        }
+                        else if (subGroup.stream().allMatch(member -> member.endOfFile)) {
+                            identical.add(toFileInfos(subGroup));
+                        }
+                        else {
+                            stillActive.add(subGroup);
+                        }
+                    }
+                }
+
+                active = stillActive;
+                position += Settings.lockstepChunkSize;
+            }
+
+            return identical;
+        }
+        finally {
+            members.forEach(Member::close);
+        }
+    }
+
+    /**
+     * Compares a group that is too large to have all files open at the same time. Each round takes one set of
+     * identical files as representative, and compares its first file in lockstep with the first file of every other
+     * set, in batches that keep at most {@link Settings#maxLockstepOpenFiles} files open. Sets that match the
+     * representative join it, sets that turn out identical to each other in a batch are merged, and the rest wait for
+     * the next round. Since the hash stages leave few different contents in a group, there are only a few rounds.
+     * @return All sets of identical files, including the files that are unique. Files that can't be read are left out.
+     */
+    private List<List<FileInfo>> compareInBatches() {
+        int batchSize = Math.max(1, Settings.maxLockstepOpenFiles - 1);
+        var pending = new ArrayList<List<FileInfo>>();
+        var identical = new ArrayList<List<FileInfo>>();
+        group.forEach(fileInfo -> pending.add(new ArrayList<>(List.of(fileInfo))));
+
+        while (!pending.isEmpty()) {
+            var representative = pending.remove(0);
+            var unmatched = new ArrayList<List<FileInfo>>();
+
+            for (int start = 0; start < pending.size(); start += batchSize) {
+                var batch = pending.subList(start, Math.min(start + batchSize, pending.size()));
+                var setsByFirstFile = new IdentityHashMap<FileInfo, List<FileInfo>>();
+                var files = new ArrayList<FileInfo>(batch.size() + 1);
+                files.add(representative.get(0));
+
+                for (List<FileInfo> set : batch) {
+                    setsByFirstFile.put(set.get(0), set);
+                    files.add(set.get(0));
+                }
+
+                for (List<FileInfo> identicalFirstFiles : compareInLockstep(files)) {
+                    var merged = identicalFirstFiles.get(0) == representative.get(0) ? representative : new ArrayList<FileInfo>();
+
+                    for (FileInfo fileInfo : identicalFirstFiles) {
+                        var set = setsByFirstFile.remove(fileInfo);
+
+                        if (set != null) {
+                            merged.addAll(set);
+                        }
+                    }
+
+                    if (merged != representative) {
+                        unmatched.add(merged);
+                    }
+                }
+
+                // The first file of these sets couldn't be read, the rest of them are still identical to each other:
+                setsByFirstFile.values().forEach(set -> keepReadable(set, unmatched));
+
+                if (representative.get(0).hasError()) {
+                    keepReadable(representative, unmatched);
+                    pending.subList(start + batch.size(), pending.size()).forEach(unmatched::add);
+                    representative = List.of();
+                    break;
+                }
+            }
+
+            if (!representative.isEmpty()) {
+                identical.add(representative);
+            }
+
+            pending.clear();
+            pending.addAll(unmatched);
+        }
+
+        return identical;
+    }
+
+    /**
+     * Adds the files of a set that can still be read to the given sets.
+     */
+    private static void keepReadable(List<FileInfo> set, List<List<FileInfo>> sets) {
+        var readable = new ArrayList<FileInfo>(set.size());
+        set.stream().filter(fileInfo -> !fileInfo.hasError()).forEach(readable::add);
+
+        if (!readable.isEmpty()) {
+            sets.add(readable);
+        }
+    }
+
+    private static void open(FileInfo fileInfo, List<Member> members) {
+        try {
+            FileOperationStatistics.count(Operation.FILE_OPEN);
+            members.add(new Member(fileInfo, FileChannel.open(fileInfo.path(), StandardOpenOption.READ)));
+        }
+        catch (NoSuchFileException | AccessDeniedException e) {
+            fileInfo.setError(e.getMessage());
+        }
+        catch (IOException e) {
+            fileInfo.setError(e.getMessage());
+            ReadStatistics.addReadError();
+            Log.error("I/O exception for ", fileInfo, StringUtil.skipRedundantExceptionMessage(fileInfo.path(), e));
+        }
+    }
+
+    /**
+     * Splits files with identical chunk contents into the same sub group, files with read errors are left out.
+     */
+    private static List<List<Member>> splitByContent(List<Member> candidates) {
+        var subGroups = new ArrayList<List<Member>>();
+
+        for (Member member : candidates) {
+            if (member.fileInfo.hasError()) {
+                continue;
+            }
+
+            List<Member> matchingSubGroup = null;
+
+            for (List<Member> subGroup : subGroups) {
+                if (subGroup.get(0).chunk.equals(member.chunk)) {
+                    matchingSubGroup = subGroup;
+                    break;
+                }
+            }
+
+            if (matchingSubGroup == null) {
+                matchingSubGroup = new ArrayList<>();
+                subGroups.add(matchingSubGroup);
+            }
+
+            matchingSubGroup.add(member);
+        }
+
+        return subGroups;
+    }
+
+    private static List<FileInfo> toFileInfos(List<Member> members) {
+        var result = new ArrayList<FileInfo>(members.size());
+        members.forEach(member -> result.add(member.fileInfo));
+        return result;
+    }
+
+    /**
+     * One file in the group, with its channel and the most recently read chunk.
+     */
+    private static class Member {
+        private final FileInfo fileInfo;
+        private final FileChannel channel;
+        private final byte[] buffer = chunkBuffers.acquire(Settings.lockstepChunkSize);
+        private final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, Settings.lockstepChunkSize).slice();
+        /** Set when the most recent chunk reached the end of the file, files with equal chunks all end there */
+        private boolean endOfFile = false;
+        private boolean isClosed = false;
+
+        Member(FileInfo fileInfo, FileChannel channel) {
+            this.fileInfo = fileInfo;
+            this.channel = channel;
+        }
+
+        /**
+         * Reads a full chunk (or until end of file), afterwards the chunk is ready to be compared.
+         */
+        void readChunk(long position) {
+            chunk.clear();
+
+            try {
+                while (chunk.hasRemaining()) {
+                    int read = channel.read(chunk, position + chunk.position());
+
+                    if (read == -1) {
+                        endOfFile = true;
+                        break;
+                    }
+
+                    ReadStatistics.addBytesRead(read);
+                }
+            }
+            catch (IOException e) {
+                fileInfo.setError(e.getMessage());
+                ReadStatistics.addReadError();
+                Log.error("I/O exception for ", fileInfo, StringUtil.skipRedundantExceptionMessage(fileInfo.path(), e));
+            }
+
+            chunk.flip();
+        }
+
+        /**
+         * Closes the file and returns the chunk buffer to the pool, only the first call does anything.
+         */
+        void close() {
+            if (isClosed) {
+                return;
+            }
+
+            isClosed = true;
+            chunkBuffers.release(buffer);
+
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                Log.error("Unable to close ", fileInfo, StringUtil.skipRedundantExceptionMessage(fileInfo.path(), e));
+            }
+        }
+    }
+}
@@ -1,51 +1,81 @@
 package com.github.fippls.dupfinder.thread.task;
 
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.ReadType;
 import com.github.fippls.dupfinder.data.Settings;
 import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.HashCache;
 import com.github.fippls.dupfinder.file.MD5SumFileReader;
-
-import java.util.concurrent.Semaphore;
+import com.github.fippls.dupfinder.hash.HashAlgorithm;
 
 /**
- * Threaded operation for calculating partial hash of a file.
+ * Threaded operation for calculating partial hash of a file, from the parts selected by a {@link HashStage}.
  * @author github.com/fippls
  */
 public class SimpleHashCallable extends AbstractHashCallable {
-    private static final Semaphore fileHandleSemaphore = new Semaphore(Settings.maxSimultaneousFileReadsSimple);
-    private MD5SumFileReader md5;
+    protected final HashStage stage;
 
-    public SimpleHashCallable(FileInfo fileInfo) {
+    public SimpleHashCallable(FileInfo fileInfo, HashStage stage) {
         super(fileInfo);
+        this.stage = stage;
     }
 
     @Override
-    protected Semaphore fileHandleSemaphore() {
-        return fileHandleSemaphore;
+    public ReadType readType() {
+        return ReadType.SMALL;
     }
 
     @Override
-    public Long getAndClearBytesRead() {
-        if (md5 == null) {
-            return 0L;
+    public FileInfo call() {
+        // If file is small and an earlier stage already hashed all of it with the same algorithm, just return it right away:
+        if (fileInfo.isCompletelyHashed() && Settings.partialHashAlgorithm == hashAlgorithm()) {
+            return fileInfo;
         }
 
-        return md5.getBytesReadAndReset();
-    }
+        // The cache key is only built when there is a cache, otherwise it would be garbage for every file:
+        var cache = HashCache.instance();
+        var cacheStage = cache.isEnabled() ? cacheStage() : null;
 
-    @Override
-    public FileInfo call() {
-        startFileOperation();
-        this.md5 = new MD5SumFileReader(fileInfo, runSimpleHashCheck());
-        var result = md5.primeMd5();
-        stopFileOperation();
+        if (cacheStage != null) {
+            var cachedHash = cache.lookup(fileInfo, cacheStage);
+
+            if (cachedHash.isPresent()) {
+                fileInfo.setCachedHash(cachedHash.get()[0], cachedHash.get()[1], bytesHashed());
+                return fileInfo;
+            }
+        }
 
-        // A very minimal time is spent here compared to reading, but leave it outside the read lock anyway
-        fileInfo.setHash(result);
+        new MD5SumFileReader(fileInfo, stage, hashAlgorithm()).hash();
+
+        if (cacheStage != null && !fileInfo.hasError()) {
+            cache.store(fileInfo, cacheStage);
+        }
 
         return fileInfo;
     }
 
-    protected boolean runSimpleHashCheck() {
-        return true;
+    protected HashAlgorithm hashAlgorithm() {
+        return Settings.partialHashAlgorithm;
+    }
+
+    /**
+     * Identifies this type of hash in the {@link HashCache}.
+     */
+    protected String cacheStage() {
+        return cacheStage(stage, hashAlgorithm());
+    }
+
+    /**
+     * Identifies the hash of a stage calculated with an algorithm in the {@link HashCache}.
+     */
+    public static String cacheStage(HashStage stage, HashAlgorithm hashAlgorithm) {
+        return stage.id() + '-' + hashAlgorithm.name();
+    }
+
+    /**
+     * The number of bytes that this type of hash is calculated from.
+     */
+    protected long bytesHashed() {
+        return stage.bytesCovered(fileInfo.fileSize());
     }
 }
@@ -0,0 +1,100 @@
+package com.github.fippls.dupfinder.util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Minimal parser for "--option VALUE" and "--flag" style command-line arguments.
+ * Everything that isn't an option is returned as a plain argument.
+ * @author github.com/fippls
+ */
+public class CommandLineParser {
+    private final Map<String, Option> options = new LinkedHashMap<>();
+
+    /**
+     * Register an option that takes a value.
+     * @param handler Called with the value, may throw {@link IllegalArgumentException} if the value is invalid.
+     */
+    public CommandLineParser option(String name, String valueName, String description, Consumer<String> handler) {
+        options.put(name, new Option(name, valueName, description, handler));
+        return this;
+    }
+
+    /**
+     * Register an option without a value.
+     */
+    public CommandLineParser flag(String name, String description, Runnable handler) {
+        options.put(name, new Option(name, null, description, __ -> handler.run()));
+        return this;
+    }
+
+    /**
+     * Applies all options and returns the remaining plain arguments.
+     * @throws IllegalArgumentException If an option is unknown, is missing its value or has an invalid value.
+     */
+    public List<String> parse(String[] args) {
+        var plainArguments = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            var arg = args[i];
+
+            if (!arg.startsWith("--")) {
+                plainArguments.add(arg);
+                continue;
+            }
+
+            var option = options.get(arg);
+
+            if (option == null) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+
+            if (option.valueName == null) {
+                option.handler.accept(null);
+                continue;
+            }
+
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for option " + arg);
+            }
+
+            var value = args[++i];
+
+            try {
+                option.handler.accept(value);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid value for option " + arg + ": " + value +
+                        (e.getMessage() != null ? " (" + e.getMessage() + ')' : ""), e);
+            }
+        }
+
+        return plainArguments;
+    }
+
+    public void printOptions(PrintStream stream) {
+        for (Option option : options.values()) {
+            var usage = option.valueName == null ? option.name : option.name + ' ' + option.valueName;
+            stream.println("   " + usage);
+            stream.println("      " + option.description);
+        }
+    }
+
+    private static class Option {
+        private final String name;
+        private final String valueName;
+        private final String description;
+        private final Consumer<String> handler;
+
+        Option(String name, String valueName, String description, Consumer<String> handler) {
+            this.name = name;
+            this.valueName = valueName;
+            this.description = description;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.fippls.dupfinder.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts file system operations during a run. Each one is a system call, and a network round trip on network mounts,
+ * so this shows what a scan actually costs apart from the bytes read.
+ * @author github.com/fippls
+ */
+public class FileOperationStatistics {
+    public enum Operation {
+        DIRECTORY_LISTING("directory listings"),
+        ATTRIBUTE_READ("attribute reads"),
+        FILE_OPEN("file opens");
+
+        private final String description;
+
+        Operation(String description) {
+            this.description = description;
+        }
+    }
+
+    private static final LongAdder[] counters = new LongAdder[Operation.values().length];
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    private FileOperationStatistics() {
+        // Util class
+    }
+
+    public static void count(Operation operation) {
+        counters[operation.ordinal()].increment();
+    }
+
+    public static long get(Operation operation) {
+        return counters[operation.ordinal()].sum();
+    }
+
+    /**
+     * All counters, for example "12 directory listings, 3400 attribute reads, 120 file opens".
+     */
+    public static String summary() {
+        var result = new StringBuilder();
+
+        for (Operation operation : Operation.values()) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+
+            result.append(get(operation)).append(' ').append(operation.description);
+        }
+
+        return result.toString();
+    }
+}
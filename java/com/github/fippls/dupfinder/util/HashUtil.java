@@ -0,0 +1,43 @@
+package com.github.fippls.dupfinder.util;
+
+/**
+ * Conversions for 128-bit hash values stored as two longs.
+ * @author github.com/fippls
+ */
+public class HashUtil {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private HashUtil() {
+        // Util class
+    }
+
+    /**
+     * Reads 8 bytes as a big-endian long, missing bytes at the end of the array count as zero.
+     */
+    public static long toLong(byte[] bytes, int offset) {
+        long result = 0;
+
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            result = (result << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Formats a 128-bit hash value as upper case hex, only intended for output.
+     */
+    public static String toHexString(long high, long low) {
+        var chars = new char[32];
+        writeHex(chars, 0, high);
+        writeHex(chars, 16, low);
+        return new String(chars);
+    }
+
+    private static void writeHex(char[] chars, int offset, long value) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
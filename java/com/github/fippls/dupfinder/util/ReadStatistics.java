@@ -0,0 +1,45 @@
+package com.github.fippls.dupfinder.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of bytes read from files, shared by all tasks so progress updates don't have to ask every task.
+ * Also counted per thread, so the bytes read and errors of a single task can be measured by the thread running it.
+ * @author github.com/fippls
+ */
+public class ReadStatistics {
+    private static final LongAdder bytesRead = new LongAdder();
+    /** Bytes read and read errors by the current thread */
+    private static final ThreadLocal<long[]> threadCounters = ThreadLocal.withInitial(() -> new long[2]);
+
+    private ReadStatistics() {
+        // Util class
+    }
+
+    public static void addBytesRead(long numBytes) {
+        bytesRead.add(numBytes);
+        threadCounters.get()[0] += numBytes;
+    }
+
+    /**
+     * Register an unexpected read error, not counting missing files or access denied.
+     */
+    public static void addReadError() {
+        threadCounters.get()[1]++;
+    }
+
+    /**
+     * Fetch the total number of bytes read since last call, and reset the value.
+     */
+    public static long bytesReadSinceLastCall() {
+        return bytesRead.sumThenReset();
+    }
+
+    public static long bytesReadByCurrentThread() {
+        return threadCounters.get()[0];
+    }
+
+    public static long readErrorsByCurrentThread() {
+        return threadCounters.get()[1];
+    }
+}
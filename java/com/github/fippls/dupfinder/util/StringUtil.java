@@ -93,6 +93,45 @@ public class StringUtil {
         return fileSize + " bytes";
     }
 
+    /**
+     * Parses a byte count such as "4096", "64k" or "1m" (binary units).
+     * @throws NumberFormatException If the value can't be parsed or doesn't fit in an int.
+     */
+    public static int parseByteSize(String size) {
+        long bytes = parseLongByteSize(size);
+
+        if (bytes > Integer.MAX_VALUE) {
+            throw new NumberFormatException("too large: " + size);
+        }
+
+        return (int) bytes;
+    }
+
+    /**
+     * Parses a byte count such as "4096", "64k", "1m" or "4g" (binary units).
+     * @throws NumberFormatException If the value can't be parsed.
+     */
+    public static long parseLongByteSize(String size) {
+        var trimmed = size.trim().toLowerCase();
+        long multiplier = 1;
+
+        if (trimmed.endsWith("k")) {
+            multiplier = 1024;
+        }
+        else if (trimmed.endsWith("m")) {
+            multiplier = 1024 * 1024;
+        }
+        else if (trimmed.endsWith("g")) {
+            multiplier = 1024 * 1024 * 1024;
+        }
+
+        if (multiplier != 1) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+
+        return Math.multiplyExact(Long.parseLong(trimmed), multiplier);
+    }
+
     public static String doubleToString1Decimal(double dbl) {
         synchronized(ONE_DECIMAL) {
             return doubleToString(ONE_DECIMAL, dbl);
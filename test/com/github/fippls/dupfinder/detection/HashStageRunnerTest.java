@@ -0,0 +1,109 @@
+package com.github.fippls.dupfinder.detection;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Files with the same header and trailer but different sizes, as many file formats have.
+ * @author github.com/fippls
+ */
+class HashStageRunnerTest {
+    private static final int HEAD_SIZE = 4 * 1024;
+    private static final int TAIL_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private List<HashStage> originalStages;
+    private final Random random = new Random(1);
+    private final byte[] head = randomBytes(HEAD_SIZE);
+    private final byte[] tail = randomBytes(TAIL_SIZE);
+
+    @BeforeEach
+    void setStages() {
+        originalStages = Settings.hashStages;
+        Settings.hashStages = HashStage.parseList("head:4k,tail:64k,full");
+    }
+
+    @AfterEach
+    void restoreStages() {
+        Settings.hashStages = originalStages;
+    }
+
+    @Test
+    void partialStagesKeepFilesOfDifferentSizesApart() throws IOException {
+        var middle = randomBytes(200_000 - HEAD_SIZE - TAIL_SIZE);
+        var files = List.of(
+                write("small1", middle), write("small2", middle),
+                write("large1", randomBytes(300_000 - HEAD_SIZE - TAIL_SIZE)),
+                write("large2", randomBytes(300_000 - HEAD_SIZE - TAIL_SIZE)));
+
+        var afterHead = new SimpleHashChecker(Settings.hashStages.get(0)).scan(groupBySize(files));
+        assertEquals(2, afterHead.checkSums().size());
+
+        for (List<FileInfo> group : afterHead.checkSums().values()) {
+            assertEquals(1, group.stream().map(FileInfo::fileSize).distinct().count(), "sizes in " + group);
+        }
+
+        var duplicates = HashStageRunner.scan(groupBySize(files));
+        assertEquals(1, duplicates.checkSums().size());
+        assertEquals(Set.of("small1", "small2"), duplicates.mapAllFiles(file -> file.path().getFileName().toString())
+                .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void noDuplicatesWhenOnlyHeadAndTailMatch() throws IOException {
+        var files = List.of(
+                write("small1", randomBytes(200_000 - HEAD_SIZE - TAIL_SIZE)),
+                write("small2", randomBytes(200_000 - HEAD_SIZE - TAIL_SIZE)),
+                write("large1", randomBytes(300_000 - HEAD_SIZE - TAIL_SIZE)),
+                write("large2", randomBytes(300_000 - HEAD_SIZE - TAIL_SIZE)));
+
+        var afterTail = new SimpleHashChecker(Settings.hashStages.get(1))
+                .scan(new SimpleHashChecker(Settings.hashStages.get(0)).scan(groupBySize(files)));
+        assertEquals(2, afterTail.checkSums().size());
+        assertEquals(0, HashStageRunner.scan(groupBySize(files)).numTotalFiles());
+    }
+
+    private Path write(String name, byte[] middle) throws IOException {
+        var file = directory.resolve(name);
+        var contents = Arrays.copyOf(head, HEAD_SIZE + middle.length + TAIL_SIZE);
+        System.arraycopy(middle, 0, contents, HEAD_SIZE, middle.length);
+        System.arraycopy(tail, 0, contents, HEAD_SIZE + middle.length, TAIL_SIZE);
+        return Files.write(file, contents);
+    }
+
+    private static PotentialDuplicateCollection groupBySize(List<Path> files) throws IOException {
+        var collection = new PotentialDuplicateCollection("File size-based check");
+
+        for (Path file : files) {
+            collection.add(new FileInfo(file, Files.readAttributes(file, BasicFileAttributes.class)));
+        }
+
+        return collection.resolve(false);
+    }
+
+    private byte[] randomBytes(int length) {
+        var bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
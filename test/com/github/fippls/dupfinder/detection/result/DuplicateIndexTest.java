@@ -0,0 +1,42 @@
+package com.github.fippls.dupfinder.detection.result;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Removing files and directories from the index, among paths that start with the same characters.
+ * @author github.com/fippls
+ */
+class DuplicateIndexTest {
+    private final DuplicateIndex index = new DuplicateIndex();
+
+    @Test
+    void removesAllFilesBelowDirectory() {
+        add("/data/a/1", "/data/a/sub/2", "/data/a-b/3", "/data/a.txt", "/data/ab/4", "/data/b/5");
+
+        assertEquals(2, index.removeBelow(Paths.get("/data/a")));
+        assertEquals(4, index.numFiles());
+        assertEquals(0, index.removeBelow(Paths.get("/data/a")));
+        assertEquals(0, index.removeBelow(Paths.get("/data/a/1")));
+    }
+
+    @Test
+    void removesSingleFile() {
+        add("/data/a", "/data/a.txt", "/data/a/1");
+
+        assertEquals(1, index.removeBelow(Paths.get("/data/a.txt")));
+        assertEquals(2, index.numFiles());
+    }
+
+    private void add(String... paths) {
+        long size = 10_000;
+
+        for (String path : paths) {
+            index.add(new FileInfo(Path.of(path), size++, 0, null));
+        }
+    }
+}
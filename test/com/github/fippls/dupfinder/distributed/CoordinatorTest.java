@@ -0,0 +1,140 @@
+package com.github.fippls.dupfinder.distributed;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import com.github.fippls.dupfinder.hash.HashAlgorithms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Work units of groups that are larger than a unit, and workers that stop reading what the coordinator sends them.
+ * @author github.com/fippls
+ */
+class CoordinatorTest {
+    private static final int NUM_FILES = 20_000;
+
+    @TempDir
+    Path directory;
+
+    private List<HashStage> originalStages;
+    private int originalMaxFiles;
+    private int originalHeartbeat;
+    private int originalTimeout;
+
+    @BeforeEach
+    void setSettings() {
+        originalStages = Settings.hashStages;
+        originalMaxFiles = Settings.workUnitMaxFiles;
+        originalHeartbeat = Settings.workerHeartbeatSeconds;
+        originalTimeout = Settings.workerTimeoutSeconds;
+        Settings.hashStages = HashStage.parseList("full");
+        Settings.workUnitMaxFiles = 5_000;
+        Settings.workerHeartbeatSeconds = 1;
+        Settings.workerTimeoutSeconds = 2;
+    }
+
+    @AfterEach
+    void restoreSettings() {
+        Settings.hashStages = originalStages;
+        Settings.workUnitMaxFiles = originalMaxFiles;
+        Settings.workerHeartbeatSeconds = originalHeartbeat;
+        Settings.workerTimeoutSeconds = originalTimeout;
+    }
+
+    @Test
+    void oversizeGroupsAreSplit() throws IOException {
+        try (var coordinator = new Coordinator(freePort())) {
+            var units = coordinator.createUnits(oneLargeGroup(), Settings.hashStages.get(0), HashAlgorithms.MD5,
+                    new PotentialDuplicateCollection("result", HashAlgorithms.MD5));
+
+            assertEquals(NUM_FILES / Settings.workUnitMaxFiles, units.size());
+            assertTrue(units.stream().allMatch(unit -> unit.files().size() == Settings.workUnitMaxFiles));
+        }
+    }
+
+    @Test
+    void unitsOfStalledWorkersAreHandedOutAgain() throws IOException {
+        int port = freePort();
+
+        try (var coordinator = new Coordinator(port); var stalledWorker = new Socket()) {
+            // A receive buffer that fills up long before a work unit has been sent:
+            stalledWorker.setReceiveBufferSize(4096);
+            stalledWorker.connect(new InetSocketAddress("localhost", port));
+            handshake(stalledWorker);
+
+            var potentialDuplicates = oneLargeGroup();
+            var worker = new Thread(() -> {
+                try {
+                    Thread.sleep(500);
+                    new Worker("localhost:" + port).run();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "worker");
+            worker.setDaemon(true);
+            worker.start();
+
+            var duplicates = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> coordinator.scan(potentialDuplicates));
+            assertEquals(NUM_FILES, duplicates.numTotalFiles());
+        }
+    }
+
+    /**
+     * The same file under many long paths, so that the work units are several megabytes.
+     */
+    private PotentialDuplicateCollection oneLargeGroup() throws IOException {
+        var file = Files.write(directory.resolve("file"), new byte[(int) Settings.minFileSize]);
+        var longPath = directory.resolve("./".repeat(500) + "file");
+        var collection = new PotentialDuplicateCollection("File size-based check");
+
+        for (int i = 0; i < NUM_FILES; i++) {
+            collection.add(new FileInfo(longPath, Files.size(file), 0, null));
+        }
+
+        return collection.resolve(false);
+    }
+
+    private static void handshake(Socket socket) throws IOException {
+        var out = new DataOutputStream(socket.getOutputStream());
+        WorkProtocol.writeHeader(out);
+        out.writeUTF("stalled");
+        out.flush();
+
+        var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        WorkProtocol.readHeader(in);
+        in.readUTF();
+        in.readUTF();
+        in.readUTF();
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every read engine cuts a file into the same chunks, also when chunks span several reads or mapped regions.
+ * @author github.com/fippls
+ */
+class ChunkingFileReaderTest {
+    private static final int FILE_SIZE = 1_000_000;
+
+    @TempDir
+    Path directory;
+
+    private ReadEngine originalEngine;
+    private int originalBufferSize;
+    private int originalRegionSize;
+    private long originalMinMappedSize;
+
+    @BeforeEach
+    void setSettings() {
+        originalEngine = Settings.readEngine;
+        originalBufferSize = Settings.readBufferSize;
+        originalRegionSize = Settings.mappedRegionSize;
+        originalMinMappedSize = Settings.minFileSizeForMappedReads;
+        Settings.readBufferSize = 10_000;
+        Settings.mappedRegionSize = 300_000;
+        Settings.minFileSizeForMappedReads = 0;
+    }
+
+    @AfterEach
+    void restoreSettings() {
+        Settings.readEngine = originalEngine;
+        Settings.readBufferSize = originalBufferSize;
+        Settings.mappedRegionSize = originalRegionSize;
+        Settings.minFileSizeForMappedReads = originalMinMappedSize;
+    }
+
+    @Test
+    void allReadEnginesCutTheSameChunks() throws IOException {
+        var contents = new byte[FILE_SIZE];
+        new Random(1).nextBytes(contents);
+        var file = Files.write(directory.resolve("file"), contents);
+        var fileInfo = new FileInfo(file, Files.readAttributes(file, BasicFileAttributes.class));
+
+        Settings.readEngine = ReadEngine.STREAM;
+        var expected = chunks(fileInfo);
+        assertTrue(expected.size() > 10, "chunks: " + expected.size());
+        assertEquals(FILE_SIZE, expected.stream().mapToLong(chunk -> chunk[1]).sum());
+
+        for (ReadEngine engine : List.of(ReadEngine.CHANNEL, ReadEngine.MAPPED)) {
+            Settings.readEngine = engine;
+            var chunks = chunks(fileInfo);
+            assertEquals(expected.size(), chunks.size(), engine.name());
+
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i)[0], chunks.get(i)[0], engine + " chunk " + i);
+                assertEquals(expected.get(i)[1], chunks.get(i)[1], engine + " chunk " + i);
+            }
+        }
+    }
+
+    private static List<long[]> chunks(FileInfo fileInfo) {
+        var chunks = new ArrayList<long[]>();
+        long bytesRead = new ChunkingFileReader(fileInfo, (fingerprint, length) -> chunks.add(new long[] { fingerprint, length }))
+                .read();
+        assertEquals(FILE_SIZE, bytesRead);
+        return chunks;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.fippls.dupfinder.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Directories that can't be watched are left to the regular walks, they don't count as lost events.
+ * @author github.com/fippls
+ */
+class DirectoryWatcherTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void unwatchableDirectoriesAreNotLostEvents() throws IOException {
+        var watcher = new DirectoryWatcher();
+        watcher.register(directory);
+        watcher.register(directory.resolve("missing"));
+
+        assertEquals(1, watcher.numWatchedDirectories());
+        assertEquals(1, watcher.numUnwatchedDirectories());
+        assertFalse(watcher.takeEventsLost());
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.fippls.dupfinder.file;
+
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.detection.result.PotentialDuplicateCollection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Resuming from a journal with paths longer than 64 kB, and with files that changed after they were hashed.
+ * @author github.com/fippls
+ */
+class ScanJournalTest {
+    private static final String STAGE = "full-MD5";
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeJournal() {
+        ScanJournal.instance().close();
+    }
+
+    @Test
+    void resumesWithLongPathsAndSkipsChangedFiles() {
+        var journalFile = directory.resolve("journal");
+        var scannedPaths = List.of(directory);
+        var longPath = directory.resolve("d/".repeat(40_000) + "file");
+        var files = List.of(new FileInfo(longPath, 20_000, 1000, null), new FileInfo(directory.resolve("other"), 20_000, 1000, null));
+
+        ScanJournal.open(journalFile, false, scannedPaths);
+        var walk = new PotentialDuplicateCollection("File size-based check");
+        files.forEach(walk::add);
+        ScanJournal.instance().recordWalk(walk.resolve(false));
+
+        for (FileInfo fileInfo : files) {
+            fileInfo.setHash(12, 34, fileInfo.fileSize());
+            ScanJournal.instance().recordHash(fileInfo, STAGE);
+        }
+
+        ScanJournal.instance().close();
+        ScanJournal.open(journalFile, true, scannedPaths);
+
+        var restoredWalk = ScanJournal.instance().restoredWalk().orElseThrow();
+        assertEquals(2, restoredWalk.numTotalFiles());
+        assertTrue(restoredWalk.mapAllFiles(FileInfo::path).anyMatch(longPath::equals));
+
+        var unchanged = new FileInfo(longPath, 20_000, 1000, null);
+        assertTrue(ScanJournal.instance().restoreHash(unchanged, STAGE));
+        assertEquals(12, unchanged.hashHigh());
+        assertEquals(34, unchanged.hashLow());
+        assertTrue(unchanged.isCompletelyHashed());
+
+        var modified = new FileInfo(directory.resolve("other"), 20_000, 2000, null);
+        assertFalse(ScanJournal.instance().restoreHash(modified, STAGE));
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.fippls.dupfinder.index;
+
+import com.github.fippls.dupfinder.data.HashStage;
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import com.github.fippls.dupfinder.file.HashCache;
+import com.github.fippls.dupfinder.thread.task.SimpleHashCallable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hard links that were walked as separate files, as in compact mode, where another path than the first one was hashed.
+ * @author github.com/fippls
+ */
+class IndexExporterTest {
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void closeExporter() {
+        IndexExporter.open(null);
+        HashCache.load(null);
+    }
+
+    @Test
+    void hardLinksGetTheHashesOfTheHashedPath() throws IOException {
+        var hashed = Files.write(directory.resolve("hashed"), new byte[20_000]);
+        var link = Files.createLink(directory.resolve("link"), hashed);
+        var indexFile = directory.resolve("index");
+        IndexExporter.open(indexFile);
+
+        var hashedInfo = new FileInfo(hashed, Files.readAttributes(hashed, BasicFileAttributes.class));
+        var attributes = Files.readAttributes(link, BasicFileAttributes.class);
+        // The compact table keeps file keys as strings:
+        var linkInfo = new FileInfo(link, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                String.valueOf(attributes.fileKey()));
+
+        hashedInfo.setHash(12, 34, hashedInfo.fileSize());
+        HashCache.instance().store(hashedInfo, SimpleHashCallable.cacheStage(HashStage.full(), Settings.fullHashAlgorithm));
+
+        // The path that wasn't hashed comes first:
+        IndexExporter.instance().add(linkInfo);
+        IndexExporter.instance().add(hashedInfo);
+        IndexExporter.instance().write();
+
+        var index = HostIndex.read(indexFile);
+        assertEquals(1, index.entries().size());
+
+        var entry = index.entries().get(0);
+        int fullKind = fullKind(index.kinds());
+        assertEquals(List.of(hashed.toAbsolutePath().toString()), entry.links());
+        assertTrue(entry.hasHash(fullKind));
+        assertEquals(12, entry.hashHigh(fullKind));
+        assertEquals(34, entry.hashLow(fullKind));
+    }
+
+    private static int fullKind(List<HashKind> kinds) {
+        for (int kind = 0; kind < kinds.size(); kind++) {
+            if (kinds.get(kind).stage().isFull()) {
+                return kind;
+            }
+        }
+
+        throw new AssertionError("no full hash in " + kinds);
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.fippls.dupfinder.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bucket bounds from reads out of the page cache up to reads that take longer than a minute.
+ * @author github.com/fippls
+ */
+class HistogramTest {
+    @Test
+    void bucketsCoverMicrosecondsToMinutes() {
+        var histogram = new Histogram("");
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(10));
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        histogram.recordNanos(TimeUnit.SECONDS.toNanos(20));
+        histogram.recordNanos(TimeUnit.MINUTES.toNanos(2));
+
+        var out = new StringBuilder();
+        histogram.writeJson(out);
+        var json = out.toString();
+
+        assertTrue(json.contains("\"1.6E-5\":1"), json);
+        assertTrue(json.contains("\"1.28E-4\":1"), json);
+        assertTrue(json.contains("\"33.554432\":1"), json);
+        assertTrue(json.contains("\"67.108864\":0,\"+Inf\":1"), json);
+    }
+}
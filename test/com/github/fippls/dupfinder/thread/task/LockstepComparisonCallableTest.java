@@ -0,0 +1,98 @@
+package com.github.fippls.dupfinder.thread.task;
+
+import com.github.fippls.dupfinder.data.Settings;
+import com.github.fippls.dupfinder.detection.result.FileInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Groups with more files than can be open at the same time, which are compared in batches.
+ * @author github.com/fippls
+ */
+class LockstepComparisonCallableTest {
+    private static final int FILE_SIZE = 20_000;
+
+    @TempDir
+    Path directory;
+
+    private int originalChunkSize;
+    private int originalMaxOpenFiles;
+    private final Random random = new Random(1);
+    private final byte[] firstChunk = new byte[4096];
+
+    @BeforeEach
+    void setSettings() {
+        random.nextBytes(firstChunk);
+        originalChunkSize = Settings.lockstepChunkSize;
+        originalMaxOpenFiles = Settings.maxLockstepOpenFiles;
+        Settings.lockstepChunkSize = firstChunk.length;
+        Settings.maxLockstepOpenFiles = 3;
+    }
+
+    @AfterEach
+    void restoreSettings() {
+        Settings.lockstepChunkSize = originalChunkSize;
+        Settings.maxLockstepOpenFiles = originalMaxOpenFiles;
+    }
+
+    @Test
+    void largeGroupsAreComparedInBatches() throws IOException {
+        // All files start the same, so they only differ after the first chunk:
+        var contents = List.of(randomBytes(), randomBytes(), randomBytes(), randomBytes());
+        var group = new ArrayList<FileInfo>();
+        group.add(write("unique", contents.get(3)));
+
+        for (String copy : List.of("a1", "b1", "c1", "a2", "c2", "b2", "a3", "c3")) {
+            group.add(write(copy, contents.get(copy.charAt(0) - 'a')));
+        }
+
+        var identical = new LockstepComparisonCallable(group).call().stream()
+                .map(files -> files.stream().map(file -> file.path().getFileName().toString()).collect(Collectors.toSet()))
+                .collect(Collectors.toSet());
+
+        assertEquals(Set.of(Set.of("a1", "a2", "a3"), Set.of("b1", "b2"), Set.of("c1", "c2", "c3")), identical);
+    }
+
+    @Test
+    void unreadableFilesAreLeftOut() throws IOException {
+        var contents = randomBytes();
+        var group = new ArrayList<FileInfo>();
+
+        for (String copy : List.of("1", "2", "3", "4", "5")) {
+            group.add(write(copy, contents));
+        }
+
+        Files.delete(group.get(0).path());
+        Files.delete(group.get(3).path());
+
+        var identical = new LockstepComparisonCallable(group).call();
+        assertEquals(1, identical.size());
+        assertEquals(List.of(group.get(1), group.get(2), group.get(4)), identical.get(0));
+    }
+
+    private FileInfo write(String name, byte[] contents) throws IOException {
+        var file = Files.write(directory.resolve(name), contents);
+        return new FileInfo(file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    private byte[] randomBytes() {
+        var bytes = new byte[FILE_SIZE];
+        random.nextBytes(bytes);
+        System.arraycopy(firstChunk, 0, bytes, 0, firstChunk.length);
+        return bytes;
+    }
+}